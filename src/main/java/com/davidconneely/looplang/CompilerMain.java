@@ -0,0 +1,64 @@
+package com.davidconneely.looplang;
+
+import com.davidconneely.looplang.compiler.JavaTranspiler;
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * The `looplangc` ahead-of-time compiler: translates a source file to a Java class (see {@link
+ * JavaTranspiler}), writes its source under the output directory and, when running on a JDK,
+ * compiles it to a class file there too, ready to be packaged as a jar.
+ */
+public final class CompilerMain {
+  public static void main(final String[] args) throws IOException {
+    if (args.length < 2 || args.length > 3) {
+      IO.println("Usage: looplangc source-file class-name [output-dir]");
+      System.exit(1);
+    }
+
+    final Path filePath = Path.of(args[0]);
+    final String className = args[1];
+    final Path outputDir = Path.of(args.length == 3 ? args[2] : ".");
+
+    final Location location = Location.newFile(filePath.toString());
+    final ParserContext parserContext = ParserFactory.newContext(location);
+    final JavaTranspiler transpiler = new JavaTranspiler(parserContext, className);
+    try (Lexer lexer =
+        LexerFactory.newLexer(location, LexerFactory.newCodepointIterator(filePath))) {
+      final Parser parser = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF);
+      Statement statement = parser.next();
+      while (statement != null) {
+        transpiler.add(statement);
+        statement = parser.next();
+      }
+    }
+
+    final Path sourcePath = outputDir.resolve(className.replace('.', '/') + ".java");
+    Files.createDirectories(sourcePath.getParent());
+    Files.writeString(sourcePath, transpiler.toSource());
+    IO.println("wrote " + sourcePath);
+
+    final JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+    if (javac == null) {
+      IO.println("no Java compiler available, so the source has not been compiled");
+      return;
+    }
+    final int status =
+        javac.run(null, null, null, "-d", outputDir.toString(), sourcePath.toString());
+    if (status != 0) {
+      System.exit(status);
+    }
+    IO.println("compiled " + className + " to " + outputDir);
+  }
+}
@@ -1,5 +1,7 @@
 package com.davidconneely.looplang;
 
+import com.davidconneely.looplang.compiler.CostEstimator;
+import com.davidconneely.looplang.compiler.Program;
 import com.davidconneely.looplang.interpreter.Interpreter;
 import com.davidconneely.looplang.interpreter.InterpreterContext;
 import com.davidconneely.looplang.interpreter.InterpreterFactory;
@@ -14,21 +16,43 @@ import com.davidconneely.looplang.statement.Statement;
 import com.davidconneely.looplang.token.Token;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 public final class Main {
   private static final String DEFAULT_RESOURCE = "/Main.loop";
 
   public static void main(final String[] args) throws IOException {
-    if (args.length > 1) {
-      IO.println("Usage: looplang [source-file]");
-      System.exit(1);
+    Path profilePath = null;
+    long maxCost = -1;
+    Integer maxInput = null;
+    int next = 0;
+    try {
+      for (; args.length - next >= 2 && args[next].startsWith("--"); next += 2) {
+        switch (args[next]) {
+          case "--profile" -> profilePath = Path.of(args[next + 1]);
+          case "--max-cost" -> maxCost = Long.parseLong(args[next + 1]);
+          case "--max-input" -> maxInput = Integer.parseInt(args[next + 1]);
+          default -> usage();
+        }
+      }
+    } catch (NumberFormatException e) {
+      usage();
+    }
+    if (args.length - next > 1 || (maxInput != null && maxInput < 0)) {
+      usage();
+    }
+    if (maxInput != null && maxCost < 0) {
+      IO.println("--max-input only bounds the INPUTs assumed by --max-cost, so needs it.");
+      usage();
     }
 
     final String sourceName;
     final CodepointIterator codepoints;
 
-    if (args.length == 1) {
-      Path filePath = Path.of(args[0]);
+    if (args.length - next == 1) {
+      Path filePath = Path.of(args[next]);
       sourceName = filePath.toString();
       codepoints = LexerFactory.newCodepointIterator(filePath);
     } else {
@@ -41,14 +65,70 @@ public final class Main {
     try (Lexer lexer = LexerFactory.newLexer(location, codepoints)) {
       final ParserContext parserContext = ParserFactory.newContext(location);
       final Parser parser = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF);
+      final List<Statement> statements = new ArrayList<>();
+      final Map<String, Program> programs =
+          maxCost >= 0 ? estimate(parser, parserContext, maxCost, maxInput, statements) : Map.of();
       final InterpreterContext interpreterContext =
-          InterpreterFactory.newGlobalContext(parserContext);
-      final Interpreter interpreter = InterpreterFactory.newInterpreter(interpreterContext);
-      Statement statement = parser.next();
-      while (statement != null) {
-        interpreter.interpret(statement);
-        statement = parser.next();
+          InterpreterFactory.newGlobalContext(parserContext, programs);
+      try (Interpreter interpreter =
+          profilePath != null
+              ? InterpreterFactory.newProfilingInterpreter(interpreterContext, profilePath)
+              : InterpreterFactory.newInterpreter(interpreterContext)) {
+        if (maxCost >= 0) {
+          for (Statement statement : statements) {
+            interpreter.interpret(statement);
+          }
+        } else {
+          Statement statement = parser.next();
+          while (statement != null) {
+            interpreter.interpret(statement);
+            statement = parser.next();
+          }
+        }
       }
     }
   }
+
+  /**
+   * Parses the whole script into `statements` up front, so that none of it runs if it is estimated
+   * to take more than `maxCost` steps, and returns the programs resolved in estimating it.
+   */
+  private static Map<String, Program> estimate(
+      final Parser parser,
+      final ParserContext parserContext,
+      final long maxCost,
+      final Integer maxInput,
+      final List<Statement> statements)
+      throws IOException {
+    final int inputBound = maxInput != null ? maxInput : Integer.MAX_VALUE;
+    final CostEstimator estimator = new CostEstimator(parserContext, inputBound);
+    Statement statement = parser.next();
+    while (statement != null) {
+      estimator.add(statement);
+      statements.add(statement);
+      statement = parser.next();
+    }
+    final CostEstimator.Cost cost = estimator.estimate();
+    if (cost.steps() > maxCost) {
+      IO.println(
+          "Rejected: estimated at "
+              + cost
+              + ", over --max-cost "
+              + maxCost
+              + ", assuming each INPUT is at most "
+              + inputBound
+              + " (see --max-input)");
+      System.exit(1);
+    }
+    return estimator.programs();
+  }
+
+  private static void usage() {
+    IO.println(
+        "Usage: looplang [--profile profile-file] [--max-cost steps [--max-input value]]"
+            + " [source-file]\n"
+            + "  --max-cost rejects a script estimated to take more steps, before it runs; the\n"
+            + "  estimate assumes each INPUT is at most --max-input (by default, any int).");
+    System.exit(1);
+  }
 }
@@ -0,0 +1,721 @@
+package com.davidconneely.looplang.compiler;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * What a `PROGRAM` returns, as an expression of its arguments that is evaluated in constant time
+ * (logarithmic, for powers) instead of running the body: `MULTIPLY(x1, x2)` is `x1 * x2`, for
+ * example, and `DIFF(x1, x2)` is `monus(x1, x2)` (the difference, or `0` if it would be negative).
+ *
+ * <p>The body is evaluated symbolically, with each variable an {@link Expr} of the arguments. A
+ * call substitutes the arguments into the callee's closed form, so it must have one itself. A loop
+ * is solved as a recurrence: each variable it changes must be updated as `x + g`, `x * g`,
+ * `monus(x, g)` or `g`, for some `g` that the loop does not change, or be set from such variables
+ * alone (as `PRED` sets `x0` from its counter). Anything else (I/O, a definition, a variable that
+ * might be read before it is defined) means there is no closed form, and calls run the body as
+ * usual.
+ *
+ * <p>The result must be the same as running the body, errors included. Alongside the value, the
+ * analysis derives a bound on every value the body holds while running; a call for which that bound
+ * does not fit in an `int` (so that running the body would overflow) is also left to run the body.
+ * Evaluation uses `long`s that saturate rather than overflowing.
+ */
+public final class ClosedForm {
+  /** An expression over non-negative integers; a {@link Variable} is an argument, by position. */
+  public sealed interface Expr {}
+
+  public record Constant(long value) implements Expr {}
+
+  public record Variable(int id) implements Expr {}
+
+  public record Sum(Expr left, Expr right) implements Expr {}
+
+  public record Product(Expr left, Expr right) implements Expr {}
+
+  /** `monus(left, right)`, the difference or `0` if `right` is larger. */
+  public record Monus(Expr left, Expr right) implements Expr {}
+
+  public record Power(Expr base, Expr exponent) implements Expr {}
+
+  public record Max(Expr left, Expr right) implements Expr {}
+
+  /** `ifZero` if `selector` is zero, otherwise `ifPositive`. */
+  public record Select(Expr selector, Expr ifZero, Expr ifPositive) implements Expr {}
+
+  /** An evaluated value too large to represent. */
+  public static final long SATURATED = Long.MAX_VALUE;
+
+  /** An evaluated value that is not known (any negative value counts as this). */
+  public static final long UNKNOWN = -1;
+
+  // limits on the analysis: the largest expression kept, and the most instructions evaluated.
+  private static final int MAX_SIZE = 200;
+  private static final int MAX_STEPS = 10_000;
+
+  private static final Constant ZERO = new Constant(0);
+  private static final Constant ONE = new Constant(1);
+  private static final NoClosedForm NO_CLOSED_FORM = new NoClosedForm();
+
+  private final int params;
+  private final Expr value;
+  private final Expr bound;
+
+  private ClosedForm(final int params, final Expr value, final Expr bound) {
+    this.params = params;
+    this.value = value;
+    this.bound = bound;
+  }
+
+  /** The value returned. */
+  public Expr value() {
+    return value;
+  }
+
+  /** An upper bound on every value held while running the body, including the one returned. */
+  public Expr bound() {
+    return bound;
+  }
+
+  /**
+   * Derives the closed form of a resolved `PROGRAM` body, or returns `null` if it has none (or none
+   * that this analysis can find).
+   */
+  public static ClosedForm of(final int[] paramSlots, final Code[] body, final int frameSize) {
+    final Expr[] state = new Expr[frameSize];
+    state[Program.RESULT] = ZERO;
+    for (int i = 0; i < paramSlots.length; ++i) {
+      state[paramSlots[i]] = new Variable(i);
+    }
+    try {
+      final Expr bound = new Analysis(paramSlots.length).run(body, state, ZERO);
+      final Expr value = state[Program.RESULT];
+      return new ClosedForm(paramSlots.length, value, checked(max(bound, bound(value))));
+    } catch (NoClosedForm | ArithmeticException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Evaluates the closed form for a call whose `args` are slots in `frame`, returning the value, or
+   * {@link Code#UNDEFINED} if the call must run the body instead: an argument is not defined, or
+   * running the body would overflow.
+   */
+  public long evaluate(final long[] frame, final int[] args) {
+    return evaluate(frame, args, 0);
+  }
+
+  /** As {@link #evaluate(long[], int[])}, with the argument slots starting at `args[from]`. */
+  public long evaluate(final long[] frame, final int[] args, final int from) {
+    for (int i = 0; i < params; ++i) {
+      if (frame[args[from + i]] == Code.UNDEFINED) {
+        return Code.UNDEFINED;
+      }
+    }
+    return result(evaluate(value, frame, args, from), evaluate(bound, frame, args, from));
+  }
+
+  /**
+   * An upper bound on every value held while running the body, given upper bounds on the `args`
+   * (which the bound only grows with), saturating.
+   */
+  public long bound(final long[] args) {
+    return evaluate(bound, args);
+  }
+
+  private static long evaluate(final Expr expr, final long[] args) {
+    return switch (expr) {
+      case Constant(long value) -> value;
+      case Variable(int id) -> args[id];
+      case Sum(Expr left, Expr right) -> sum(evaluate(left, args), evaluate(right, args));
+      case Product(Expr left, Expr right) -> product(evaluate(left, args), evaluate(right, args));
+      case Monus(Expr left, Expr right) -> monus(evaluate(left, args), evaluate(right, args));
+      case Power(Expr base, Expr exponent) -> power(evaluate(base, args), evaluate(exponent, args));
+      case Max(Expr left, Expr right) -> max(evaluate(left, args), evaluate(right, args));
+      case Select(_, Expr ifZero, Expr ifPositive) ->
+          max(evaluate(ifZero, args), evaluate(ifPositive, args));
+    };
+  }
+
+  private static long evaluate(
+      final Expr expr, final long[] frame, final int[] args, final int from) {
+    return switch (expr) {
+      case Constant(long value) -> value;
+      case Variable(int id) -> frame[args[from + id]];
+      case Sum(Expr left, Expr right) ->
+          sum(evaluate(left, frame, args, from), evaluate(right, frame, args, from));
+      case Product(Expr left, Expr right) ->
+          product(evaluate(left, frame, args, from), evaluate(right, frame, args, from));
+      case Monus(Expr left, Expr right) ->
+          monus(evaluate(left, frame, args, from), evaluate(right, frame, args, from));
+      case Power(Expr base, Expr exponent) ->
+          power(evaluate(base, frame, args, from), evaluate(exponent, frame, args, from));
+      case Max(Expr left, Expr right) ->
+          max(evaluate(left, frame, args, from), evaluate(right, frame, args, from));
+      case Select(Expr selector, Expr ifZero, Expr ifPositive) -> {
+        final long test = evaluate(selector, frame, args, from);
+        yield test < 0 ? UNKNOWN : evaluate(test == 0 ? ifZero : ifPositive, frame, args, from);
+      }
+    };
+  }
+
+  // the evaluation of each kind of expression, also called from generated bytecode.
+
+  public static long sum(final long left, final long right) {
+    if (left < 0 || right < 0) {
+      return UNKNOWN;
+    }
+    final long sum = left + right;
+    return sum < 0 ? SATURATED : sum;
+  }
+
+  public static long product(final long left, final long right) {
+    if (left < 0 || right < 0) {
+      return UNKNOWN;
+    }
+    final long product = left * right;
+    return Math.multiplyHigh(left, right) != 0 || product < 0 ? SATURATED : product;
+  }
+
+  public static long monus(final long left, final long right) {
+    if (left < 0 || right < 0 || left == SATURATED) {
+      return UNKNOWN;
+    }
+    return Math.max(0, left - right);
+  }
+
+  public static long power(final long base, final long exponent) {
+    if (base < 0 || exponent < 0) {
+      return UNKNOWN;
+    }
+    if (exponent == 0) {
+      return 1;
+    }
+    if (base <= 1) {
+      return base;
+    }
+    long result = 1;
+    long square = base;
+    for (long e = exponent; e > 0 && result != SATURATED; e >>>= 1) {
+      if ((e & 1) != 0) {
+        result = product(result, square);
+      }
+      square = product(square, square);
+    }
+    return result;
+  }
+
+  public static long max(final long left, final long right) {
+    return left < 0 || right < 0 ? UNKNOWN : Math.max(left, right);
+  }
+
+  public static long select(final long selector, final long ifZero, final long ifPositive) {
+    return selector < 0 ? UNKNOWN : selector == 0 ? ifZero : ifPositive;
+  }
+
+  /** The value of a call as an `int`, or {@link Code#UNDEFINED} if it or its `bound` is not. */
+  public static long result(final long value, final long bound) {
+    if (bound < 0 || bound > Integer.MAX_VALUE || value < 0 || value > bound) {
+      return Code.UNDEFINED;
+    }
+    return value;
+  }
+
+  // the symbolic evaluation of a body, counting down the steps it may take.
+  private static final class Analysis {
+    private int nextId;
+    private int steps;
+
+    Analysis(final int params) {
+      this.nextId = params;
+      this.steps = MAX_STEPS;
+    }
+
+    /** Evaluates `body`, updating `state`, and returns `bound` raised to cover what it assigns. */
+    Expr run(final Code[] body, final Expr[] state, final Expr bound) {
+      Expr result = bound;
+      for (Code code : body) {
+        if (--steps < 0) {
+          throw NO_CLOSED_FORM;
+        }
+        result =
+            switch (code) {
+              case Code.Zero(int slot) -> assign(state, slot, ZERO, result);
+              case Code.Increment(int slot) ->
+                  assign(state, slot, sum(read(state, slot), ONE), result);
+              case Code.Set(int slot, int value) -> assign(state, slot, constant(value), result);
+              case Code.Add(int slot, int value) ->
+                  assign(state, slot, sum(read(state, slot), constant(value)), result);
+              case Code.Copy(int slot, int source) ->
+                  assign(state, slot, read(state, source), result);
+              case Code.Argument(int slot, int source) ->
+                  assign(state, slot, read(state, source), result);
+              case Code.Result(int slot, int source) ->
+                  assign(state, slot, read(state, source), result);
+              case Code.AddVariable(int slot, int source) -> {
+                final Expr count = read(state, source);
+                yield assign(state, slot, sum(read(state, slot), count), result);
+              }
+              case Code.Loop loop -> loop(loop, state, result);
+              case Code.Call(int slot, Program callee, int[] args) ->
+                  call(slot, callee, args, state, result);
+              case Code.Print _, Code.Input _, Code.Define _ -> throw NO_CLOSED_FORM;
+            };
+      }
+      return result;
+    }
+
+    private Expr call(
+        final int slot,
+        final Program callee,
+        final int[] args,
+        final Expr[] state,
+        final Expr bound) {
+      final ClosedForm form = callee.closedForm();
+      if (form == null) {
+        throw NO_CLOSED_FORM;
+      }
+      final Expr[] values = new Expr[args.length];
+      final Expr[] bounds = new Expr[args.length];
+      for (int i = 0; i < args.length; ++i) {
+        values[i] = read(state, args[i]);
+        bounds[i] = bound(values[i]);
+      }
+      final Expr result = checked(max(bound, substitute(form.bound, bounds)));
+      return assign(state, slot, substitute(form.value, values), result);
+    }
+
+    /**
+     * Solves `loop` as a recurrence in each variable it changes, which is given a fresh {@link
+     * Variable} for its value at the start of an iteration. A variable that is not defined before
+     * the loop might not be after it, so it stays undefined.
+     */
+    private Expr loop(final Code.Loop loop, final Expr[] state, final Expr bound) {
+      final Expr count = read(state, loop.slot());
+      final boolean[] written = new boolean[state.length];
+      collectWritten(loop.body(), written);
+      final int first = nextId;
+      final int[] ids = new int[state.length];
+      final Expr[] next = state.clone();
+      for (int slot = 0; slot < state.length; ++slot) {
+        ids[slot] = written[slot] && state[slot] != null ? nextId++ : -1;
+        if (written[slot]) {
+          next[slot] = ids[slot] >= 0 ? new Variable(ids[slot]) : null;
+        }
+      }
+      final Expr bodyBound = run(loop.body(), next, ZERO);
+      final Recurrence[] recurrences = new Recurrence[state.length];
+      for (int slot = 0; slot < state.length; ++slot) {
+        if (ids[slot] >= 0) {
+          recurrences[slot] = recurrence(next[slot], ids[slot], first);
+        }
+      }
+      final Solver solver = new Solver(state, ids, recurrences, first, nextId);
+      // each iteration starts with values between those before the first and the last iteration,
+      // and what an iteration assigns only grows with them.
+      final Expr[] bounds = new Expr[nextId];
+      final Expr last = monus(count, ONE);
+      for (int slot = 0; slot < state.length; ++slot) {
+        if (ids[slot] >= 0 && recurrences[slot].kind() != Kind.FOLLOW) {
+          bounds[ids[slot]] = max(bound(state[slot]), bound(solver.solve(slot, last)));
+        }
+      }
+      for (int slot = 0; slot < state.length; ++slot) {
+        if (ids[slot] >= 0 && recurrences[slot].kind() == Kind.FOLLOW) {
+          final Expr step = bound(recurrences[slot].step());
+          bounds[ids[slot]] = max(bound(state[slot]), substitute(step, bounds));
+        }
+      }
+      final Expr result = checked(max(bound, substitute(bodyBound, bounds)));
+      for (int slot = 0; slot < state.length; ++slot) {
+        if (written[slot]) {
+          state[slot] = ids[slot] >= 0 ? checked(solver.solve(slot, count)) : null;
+        }
+      }
+      return result;
+    }
+
+    // how the variable `id` changes in each iteration, given its value `next` after one.
+    private static Recurrence recurrence(final Expr next, final int id, final int first) {
+      final BitSet symbols = new BitSet();
+      collectSymbols(next, first, symbols);
+      if (symbols.isEmpty()) {
+        return new Recurrence(Kind.SET, next);
+      }
+      if (!symbols.get(id)) {
+        return new Recurrence(Kind.FOLLOW, next);
+      }
+      if (symbols.cardinality() == 1) {
+        final Variable self = new Variable(id);
+        final Expr increment = without(self, terms(next), first, true);
+        if (increment != null) {
+          return new Recurrence(Kind.ADD, increment);
+        }
+        final Expr factor = without(self, factors(next), first, false);
+        if (factor != null) {
+          return new Recurrence(Kind.MULTIPLY, factor);
+        }
+        if (next instanceof Monus(Expr left, Expr right)
+            && left.equals(self)
+            && isInvariant(right, first)) {
+          return new Recurrence(Kind.SUBTRACT, right);
+        }
+      }
+      throw NO_CLOSED_FORM;
+    }
+
+    // the sum (or product) of `parts` other than a single `self`, if the rest are all invariant.
+    private static Expr without(
+        final Variable self, final List<Expr> parts, final int first, final boolean sum) {
+      final int index = parts.indexOf(self);
+      if (index < 0) {
+        return null;
+      }
+      final List<Expr> rest = new ArrayList<>(parts);
+      rest.remove(index);
+      for (Expr part : rest) {
+        if (!isInvariant(part, first)) {
+          return null;
+        }
+      }
+      Expr result = sum ? ZERO : ONE;
+      for (Expr part : rest) {
+        result = sum ? sum(result, part) : product(result, part);
+      }
+      return result;
+    }
+  }
+
+  private enum Kind {
+    ADD,
+    MULTIPLY,
+    SUBTRACT,
+    SET,
+    FOLLOW
+  }
+
+  /**
+   * How a variable changes in each iteration of a loop: it has `step` added, is multiplied by it,
+   * has it subtracted, or is set to it. A `FOLLOW` variable is set to `step`, which depends on the
+   * values of other variables (solved some other way) at the start of the iteration.
+   */
+  private record Recurrence(Kind kind, Expr step) {}
+
+  // solves the recurrences of a loop for the values of its variables after a number of iterations.
+  private record Solver(Expr[] start, int[] ids, Recurrence[] recurrences, int first, int symbols) {
+    Expr solve(final int slot, final Expr count) {
+      final Expr x = start[slot];
+      final Recurrence recurrence = recurrences[slot];
+      final Expr step = recurrence.step();
+      return switch (recurrence.kind()) {
+        case ADD -> sum(x, product(count, step));
+        case MULTIPLY -> product(x, power(step, count));
+        case SUBTRACT -> monus(x, product(count, step));
+        case SET -> select(count, x, step);
+        case FOLLOW -> {
+          final Expr previous = monus(count, ONE);
+          final Expr[] values = new Expr[symbols];
+          for (int other = 0; other < start.length; ++other) {
+            if (ids[other] >= 0 && recurrences[other].kind() != Kind.FOLLOW) {
+              values[ids[other]] = solve(other, previous);
+            }
+          }
+          final BitSet used = new BitSet();
+          collectSymbols(step, first, used);
+          for (int id = used.nextSetBit(0); id >= 0; id = used.nextSetBit(id + 1)) {
+            if (values[id] == null) {
+              throw NO_CLOSED_FORM; // follows another variable that follows.
+            }
+          }
+          yield select(count, x, substitute(step, values));
+        }
+      };
+    }
+  }
+
+  private static Expr read(final Expr[] state, final int slot) {
+    final Expr value = state[slot];
+    if (value == null) {
+      throw NO_CLOSED_FORM;
+    }
+    return value;
+  }
+
+  private static Expr assign(
+      final Expr[] state, final int slot, final Expr value, final Expr bound) {
+    state[slot] = checked(value);
+    return checked(max(bound, bound(value)));
+  }
+
+  private static Constant constant(final int value) {
+    if (value < 0) {
+      throw NO_CLOSED_FORM;
+    }
+    return new Constant(value);
+  }
+
+  // slots assigned anywhere in `body`, including inner loops (but not callees, which have their
+  // own).
+  static void collectWritten(final Code[] body, final boolean[] written) {
+    for (Code code : body) {
+      switch (code) {
+        case Code.Zero(int slot) -> written[slot] = true;
+        case Code.Increment(int slot) -> written[slot] = true;
+        case Code.Set(int slot, _) -> written[slot] = true;
+        case Code.Add(int slot, _) -> written[slot] = true;
+        case Code.Copy(int slot, _) -> written[slot] = true;
+        case Code.Argument(int slot, _) -> written[slot] = true;
+        case Code.Result(int slot, _) -> written[slot] = true;
+        case Code.AddVariable(int slot, _) -> written[slot] = true;
+        case Code.Loop loop -> collectWritten(loop.body(), written);
+        case Code.Call(int slot, _, _) -> written[slot] = true;
+        case Code.Input(int slot, _) -> written[slot] = true;
+        case Code.Print _, Code.Define _ -> {}
+      }
+    }
+  }
+
+  // the variables in `expr` with ids from `first` up.
+  private static void collectSymbols(final Expr expr, final int first, final BitSet symbols) {
+    switch (expr) {
+      case Constant _ -> {}
+      case Variable(int id) -> {
+        if (id >= first) {
+          symbols.set(id);
+        }
+      }
+      case Sum(Expr left, Expr right) -> collectSymbols(left, right, first, symbols);
+      case Product(Expr left, Expr right) -> collectSymbols(left, right, first, symbols);
+      case Monus(Expr left, Expr right) -> collectSymbols(left, right, first, symbols);
+      case Power(Expr base, Expr exponent) -> collectSymbols(base, exponent, first, symbols);
+      case Max(Expr left, Expr right) -> collectSymbols(left, right, first, symbols);
+      case Select(Expr selector, Expr ifZero, Expr ifPositive) -> {
+        collectSymbols(selector, first, symbols);
+        collectSymbols(ifZero, ifPositive, first, symbols);
+      }
+    }
+  }
+
+  private static void collectSymbols(
+      final Expr left, final Expr right, final int first, final BitSet symbols) {
+    collectSymbols(left, first, symbols);
+    collectSymbols(right, first, symbols);
+  }
+
+  private static boolean isInvariant(final Expr expr, final int first) {
+    final BitSet symbols = new BitSet();
+    collectSymbols(expr, first, symbols);
+    return symbols.isEmpty();
+  }
+
+  private static List<Expr> terms(final Expr expr) {
+    final List<Expr> terms = new ArrayList<>();
+    flatten(expr, true, terms);
+    return terms;
+  }
+
+  private static List<Expr> factors(final Expr expr) {
+    final List<Expr> factors = new ArrayList<>();
+    flatten(expr, false, factors);
+    return factors;
+  }
+
+  private static void flatten(final Expr expr, final boolean sum, final List<Expr> parts) {
+    switch (expr) {
+      case Sum(Expr left, Expr right) when sum -> {
+        flatten(left, true, parts);
+        flatten(right, true, parts);
+      }
+      case Product(Expr left, Expr right) when !sum -> {
+        flatten(left, false, parts);
+        flatten(right, false, parts);
+      }
+      default -> parts.add(expr);
+    }
+  }
+
+  /** Replaces each variable `id` for which `values[id]` is not `null` with that value. */
+  private static Expr substitute(final Expr expr, final Expr[] values) {
+    return switch (expr) {
+      case Constant _ -> expr;
+      case Variable(int id) -> id < values.length && values[id] != null ? values[id] : expr;
+      case Sum(Expr left, Expr right) -> sum(substitute(left, values), substitute(right, values));
+      case Product(Expr left, Expr right) ->
+          product(substitute(left, values), substitute(right, values));
+      case Monus(Expr left, Expr right) ->
+          monus(substitute(left, values), substitute(right, values));
+      case Power(Expr base, Expr exponent) ->
+          power(substitute(base, values), substitute(exponent, values));
+      case Max(Expr left, Expr right) -> max(substitute(left, values), substitute(right, values));
+      case Select(Expr selector, Expr ifZero, Expr ifPositive) ->
+          select(
+              substitute(selector, values),
+              substitute(ifZero, values),
+              substitute(ifPositive, values));
+    };
+  }
+
+  /**
+   * An upper bound on `expr` that only grows with its variables (where `expr` might not: `monus(x,
+   * y)` falls as `y` grows).
+   */
+  private static Expr bound(final Expr expr) {
+    return switch (expr) {
+      case Constant _, Variable _ -> expr;
+      case Sum(Expr left, Expr right) -> sum(bound(left), bound(right));
+      case Product(Expr left, Expr right) -> product(bound(left), bound(right));
+      case Monus(Expr left, Expr right) ->
+          right instanceof Constant ? monus(bound(left), right) : bound(left);
+      case Power(Expr base, Expr exponent) -> power(max(bound(base), ONE), bound(exponent));
+      case Max(Expr left, Expr right) -> max(bound(left), bound(right));
+      case Select(_, Expr ifZero, Expr ifPositive) -> max(bound(ifZero), bound(ifPositive));
+    };
+  }
+
+  // builders for each kind of expression, simplifying what they can.
+
+  private static Expr sum(final Expr left, final Expr right) {
+    if (left instanceof Constant(long l) && right instanceof Constant(long r)) {
+      return new Constant(Math.addExact(l, r));
+    }
+    if (left.equals(ZERO)) {
+      return right;
+    }
+    return right.equals(ZERO) ? left : new Sum(left, right);
+  }
+
+  private static Expr product(final Expr left, final Expr right) {
+    if (left instanceof Constant(long l) && right instanceof Constant(long r)) {
+      return new Constant(Math.multiplyExact(l, r));
+    }
+    if (left.equals(ZERO) || right.equals(ZERO)) {
+      return ZERO;
+    }
+    if (left.equals(ONE)) {
+      return right;
+    }
+    return right.equals(ONE) ? left : new Product(left, right);
+  }
+
+  private static Expr monus(final Expr left, final Expr right) {
+    if (left instanceof Constant(long l) && right instanceof Constant(long r)) {
+      return new Constant(Math.max(0, l - r));
+    }
+    if (right.equals(ZERO)) {
+      return left;
+    }
+    if (left.equals(ZERO) || left.equals(right)) {
+      return ZERO;
+    }
+    if (left instanceof Monus(Expr inner, Expr subtracted)) {
+      return monus(inner, sum(subtracted, right));
+    }
+    return new Monus(left, right);
+  }
+
+  private static Expr power(final Expr base, final Expr exponent) {
+    if (exponent.equals(ZERO) || base.equals(ONE)) {
+      return ONE;
+    }
+    if (exponent.equals(ONE)) {
+      return base;
+    }
+    if (base instanceof Constant(long b) && exponent instanceof Constant(long e)) {
+      final long power = power(b, e);
+      if (power == SATURATED) {
+        throw NO_CLOSED_FORM;
+      }
+      return new Constant(power);
+    }
+    return new Power(base, exponent);
+  }
+
+  private static Expr max(final Expr left, final Expr right) {
+    if (left instanceof Constant(long l) && right instanceof Constant(long r)) {
+      return new Constant(Math.max(l, r));
+    }
+    // a sum is at least each of its terms.
+    if (left.equals(ZERO) || terms(right).contains(left)) {
+      return right;
+    }
+    if (right.equals(ZERO) || terms(left).contains(right)) {
+      return left;
+    }
+    return new Max(left, right);
+  }
+
+  private static Expr select(final Expr selector, final Expr ifZero, final Expr ifPositive) {
+    if (selector instanceof Constant(long s)) {
+      return s == 0 ? ifZero : ifPositive;
+    }
+    if (ifZero.equals(ifPositive)) {
+      return ifZero;
+    }
+    // `ifPositive` may also hold when the selector is zero, as `PRED` does: `monus(x, 1)` is 0 for
+    // 0.
+    if (selector instanceof Variable(int id)) {
+      final Expr[] zero = new Expr[id + 1];
+      zero[id] = ZERO;
+      if (substitute(ifPositive, zero).equals(ifZero)) {
+        return ifPositive;
+      }
+    }
+    return new Select(selector, ifZero, ifPositive);
+  }
+
+  // `expr`, if it is no larger than the analysis allows.
+  private static Expr checked(final Expr expr) {
+    if (size(expr, MAX_SIZE + 1) > MAX_SIZE) {
+      throw NO_CLOSED_FORM;
+    }
+    return expr;
+  }
+
+  // the number of nodes in `expr`, counting no further than `limit`.
+  private static int size(final Expr expr, final int limit) {
+    return switch (expr) {
+      case Constant _, Variable _ -> 1;
+      case Sum(Expr left, Expr right) -> size(left, right, limit);
+      case Product(Expr left, Expr right) -> size(left, right, limit);
+      case Monus(Expr left, Expr right) -> size(left, right, limit);
+      case Power(Expr base, Expr exponent) -> size(base, exponent, limit);
+      case Max(Expr left, Expr right) -> size(left, right, limit);
+      case Select(Expr selector, Expr ifZero, Expr ifPositive) -> {
+        final int size = size(selector, ifZero, limit);
+        yield size >= limit ? size : size + size(ifPositive, limit - size);
+      }
+    };
+  }
+
+  private static int size(final Expr left, final Expr right, final int limit) {
+    final int size = 1 + size(left, limit - 1);
+    return size >= limit ? size : size + size(right, limit - size);
+  }
+
+  /** Thrown (as a singleton, without a stack trace) when the body has no closed form. */
+  private static final class NoClosedForm extends RuntimeException {
+    NoClosedForm() {
+      super(null, null, false, false);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return format(value);
+  }
+
+  private static String format(final Expr expr) {
+    return switch (expr) {
+      case Constant(long value) -> Long.toString(value);
+      case Variable(int id) -> "$" + id;
+      case Sum(Expr left, Expr right) -> "(" + format(left) + " + " + format(right) + ")";
+      case Product(Expr left, Expr right) -> "(" + format(left) + " * " + format(right) + ")";
+      case Monus(Expr left, Expr right) -> "monus(" + format(left) + ", " + format(right) + ")";
+      case Power(Expr base, Expr exponent) -> "(" + format(base) + " ^ " + format(exponent) + ")";
+      case Max(Expr left, Expr right) -> "max(" + format(left) + ", " + format(right) + ")";
+      case Select(Expr selector, Expr ifZero, Expr ifPositive) ->
+          "(" + format(selector) + " == 0 ? " + format(ifZero) + " : " + format(ifPositive) + ")";
+    };
+  }
+}
@@ -0,0 +1,66 @@
+package com.davidconneely.looplang.compiler;
+
+import com.davidconneely.looplang.statement.Definition;
+
+/**
+ * A statement after resolution: every variable name has been replaced by its slot in the enclosing
+ * {@link Scope}, so executing it against a frame needs no name lookups. Values are `int`s (which
+ * wrap around on overflow), held in a `long[]` frame so that a slot holding {@link #UNDEFINED},
+ * which is no `int`, has not been assigned yet.
+ */
+public sealed interface Code {
+  long UNDEFINED = Long.MIN_VALUE;
+
+  /** `variable := 0` */
+  record Zero(int slot) implements Code {}
+
+  /** `variable := variable + 1` */
+  record Increment(int slot) implements Code {}
+
+  /** `LOOP variable DO body END` (the count is read once, before the first iteration). */
+  record Loop(int slot, Code[] body) implements Code {}
+
+  /**
+   * `variable := program(args)`, linked to the called program; each arg is a slot in the caller's
+   * frame, copied to the matching parameter slot of the callee's frame.
+   */
+  record Call(int slot, Program program, int[] args) implements Code {}
+
+  /** `PRINT(...)`, output as `texts[0] slots[0] texts[1] .. slots[n-1] texts[n]`. */
+  record Print(String[] texts, int[] slots) implements Code {}
+
+  /** `variable := INPUT(...)` */
+  record Input(int slot, Print prompt) implements Code {}
+
+  /** `variable := value`, fused from `variable := 0` and `value` increments. */
+  record Set(int slot, int value) implements Code {}
+
+  /** `variable := variable + value`, fused from `value` increments. */
+  record Add(int slot, int value) implements Code {}
+
+  /**
+   * `variable := source`, fused from `variable := 0; LOOP source DO variable := variable + 1 END`.
+   */
+  record Copy(int slot, int source) implements Code {}
+
+  /**
+   * `param := arg`, passing an argument to a call that has been inlined (see {@link Inliner}).
+   * Unlike {@link Copy}, `arg` only has to be defined, not a valid loop count.
+   */
+  record Argument(int slot, int source) implements Code {}
+
+  /**
+   * `variable := x0`, returning the result of a call that has been inlined, as is (like a call,
+   * without checking that it is defined).
+   */
+  record Result(int slot, int source) implements Code {}
+
+  /**
+   * `variable := variable + source`, fused from `LOOP source DO variable := variable + 1 END` (so
+   * `variable` is only read if `source` is positive).
+   */
+  record AddVariable(int slot, int source) implements Code {}
+
+  /** A `PROGRAM` definition that is not at the top level, checked when it is executed. */
+  record Define(Definition definition) implements Code {}
+}
@@ -0,0 +1,9 @@
+package com.davidconneely.looplang.compiler;
+
+import com.davidconneely.looplang.LocatedException;
+
+public class CompilerException extends LocatedException {
+  public CompilerException(final String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,322 @@
+package com.davidconneely.looplang.compiler;
+
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.statement.AssignCall;
+import com.davidconneely.looplang.statement.Definition;
+import com.davidconneely.looplang.statement.Loop;
+import com.davidconneely.looplang.statement.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates how long a script takes to run, before running it, so that one that would take far too
+ * long (a loop over the result of `POWER`, say) can be rejected up front. The estimate has two
+ * parts: the shape of the script, as the deepest nesting of loops and of calls through the programs
+ * it calls; and the number of steps it takes, where each instruction (and each iteration of a loop)
+ * is a step, and a call of a program with a {@link ClosedForm} that does not overflow is just one.
+ *
+ * <p>Statements are added one at a time as they are parsed, as for the {@link JavaTranspiler}, and
+ * resolved in the same way (so programs are folded as they are for the engines). The steps are then
+ * counted by running the code over upper bounds on the values of its variables, with each `INPUT`
+ * bounded by `maxInput`. A loop with a short count is run in full; any other is run a few times,
+ * and what it does to each bound (and to the steps) is extrapolated to its whole count, if it grows
+ * linearly or quadratically from one iteration to the next (as for a counter, or a triangle
+ * number), or taken to be as large as possible if not. So the estimate is exact for straight-line
+ * code and loops that do the same each time, and only an estimate otherwise: an upper bound in
+ * practice, but not guaranteed to be one.
+ *
+ * <p>The analysis itself is limited to a budget of instructions run. If that is not enough (as for
+ * many short loops nested deep), it starts again, running only the shortest loops in full and
+ * sampling the rest; and if that is not enough either, it runs each loop just once and extrapolates
+ * linearly from that iteration, which always finishes. Running out of budget only makes the
+ * estimate rougher: it is never taken as a number of steps.
+ */
+public final class CostEstimator {
+  /**
+   * The estimate for a script.
+   *
+   * @param steps steps to run it, or `Long.MAX_VALUE` if too many to count
+   * @param loopDepth the deepest nesting of loops, including those in the programs it calls
+   * @param callDepth the deepest nesting of calls
+   */
+  public record Cost(long steps, int loopDepth, int callDepth) {
+    @Override
+    public String toString() {
+      return (steps == ClosedForm.SATURATED ? "too many" : Long.toString(steps))
+          + " steps, with loops nested "
+          + loopDepth
+          + " deep and calls "
+          + callDepth
+          + " deep";
+    }
+  }
+
+  // the deepest nesting of loops and of calls in some code.
+  private record Shape(int loopDepth, int callDepth) {}
+
+  // the largest value a variable can hold.
+  private static final long MAX_VALUE = Integer.MAX_VALUE;
+  // loops with counts up to this are run in full; any other is run this many times, and
+  // extrapolated.
+  private static final int MAX_EXACT = 8;
+  private static final int SAMPLES = 4;
+  // the most instructions run in one pass over the script, beyond which it is estimated again,
+  // more roughly.
+  private static final int MAX_WORK = 1_000_000;
+
+  private final ParserContext parserContext;
+  private final long maxInput;
+  private final Map<String, Program> programs;
+  private final Map<List<Statement>, Program> resolved;
+  private final Map<String, Shape> shapes;
+  private final Scope globals;
+  private final List<Code> main;
+  private int loopDepth;
+  private int callDepth;
+  // loops with counts up to this are run in full in the current pass; a loop is run just once if
+  // this is 1.
+  private int maxExact;
+  private long work;
+
+  /** An estimator for a script whose `INPUT`s return values of at most `maxInput`. */
+  public CostEstimator(final ParserContext parserContext, final int maxInput) {
+    this.parserContext = parserContext;
+    this.maxInput = maxInput;
+    this.programs = new HashMap<>();
+    this.resolved = new IdentityHashMap<>();
+    this.shapes = new HashMap<>();
+    this.globals = new Scope();
+    this.main = new ArrayList<>();
+  }
+
+  public void add(final Statement statement) {
+    if (statement instanceof Definition definition) {
+      define(definition);
+    } else {
+      // a program defined in a loop can be called once the loop has run, so is taken to be
+      // defined from the start.
+      defineNested(List.of(statement));
+      final Shape shape = shape(List.of(statement));
+      loopDepth = Math.max(loopDepth, shape.loopDepth());
+      callDepth = Math.max(callDepth, shape.callDepth());
+      main.add(Resolver.resolve(statement, globals, programs::get));
+    }
+  }
+
+  private void define(final Definition definition) {
+    final String name = definition.program();
+    if (programs.containsKey(name)) {
+      throw new CompilerException("program `" + name + "` has already been defined");
+    }
+    programs.put(
+        name,
+        Resolver.resolveProgram(
+            name, definition.params(), definition.body(), programs::get, resolved));
+    shapes.put(name, shape(definition.body()));
+    parserContext.addDefinedProgram(name);
+  }
+
+  private void defineNested(final List<Statement> statements) {
+    for (Statement statement : statements) {
+      switch (statement) {
+        case Definition definition -> define(definition);
+        case Loop loop -> defineNested(loop.body());
+        default -> {}
+      }
+    }
+  }
+
+  /**
+   * The programs defined by the statements added so far, resolved as they are for the engines, so
+   * that a context that runs the script can use them rather than resolve them again.
+   */
+  public Map<String, Program> programs() {
+    return Collections.unmodifiableMap(programs);
+  }
+
+  /** The estimate for the top-level statements added so far. */
+  public Cost estimate() {
+    final Code[] body = main.toArray(Code[]::new);
+    long steps = run(body, MAX_EXACT, MAX_WORK);
+    if (work < 0) {
+      steps = run(body, SAMPLES, MAX_WORK);
+    }
+    if (work < 0) {
+      steps = run(body, 1, Long.MAX_VALUE);
+    }
+    return new Cost(steps, loopDepth, callDepth);
+  }
+
+  // one pass over the script, which is abandoned (leaving `work` negative) if it runs out of work.
+  private long run(final Code[] body, final int maxExact, final long budget) {
+    this.maxExact = maxExact;
+    this.work = budget;
+    return run(body, new long[globals.size()]);
+  }
+
+  private Shape shape(final List<Statement> body) {
+    int loops = 0;
+    int calls = 0;
+    for (Statement statement : body) {
+      switch (statement) {
+        case Loop loop -> {
+          final Shape inner = shape(loop.body());
+          loops = Math.max(loops, 1 + inner.loopDepth());
+          calls = Math.max(calls, inner.callDepth());
+        }
+        case AssignCall call -> {
+          final Shape callee = shapes.get(call.program());
+          if (callee != null) {
+            loops = Math.max(loops, callee.loopDepth());
+            calls = Math.max(calls, 1 + callee.callDepth());
+          }
+        }
+        default -> {}
+      }
+    }
+    return new Shape(loops, calls);
+  }
+
+  // runs `body` over upper bounds on the values in `frame` (with `0` for a variable that is not
+  // defined, as reading it fails), returning the steps it takes.
+  private long run(final Code[] body, final long[] frame) {
+    long steps = 0;
+    for (Code code : body) {
+      steps = ClosedForm.sum(steps, run(code, frame));
+    }
+    return steps;
+  }
+
+  private long run(final Code code, final long[] frame) {
+    if (--work < 0) {
+      return 0;
+    }
+    switch (code) {
+      case Code.Zero(int slot) -> frame[slot] = 0;
+      case Code.Increment(int slot) -> frame[slot] = value(frame[slot] + 1);
+      case Code.Set(int slot, int value) -> frame[slot] = value;
+      case Code.Add(int slot, int value) -> frame[slot] = value(frame[slot] + value);
+      case Code.Copy(int slot, int source) -> frame[slot] = frame[source];
+      case Code.Argument(int slot, int source) -> frame[slot] = frame[source];
+      case Code.Result(int slot, int source) -> frame[slot] = frame[source];
+      case Code.AddVariable(int slot, int source) ->
+          frame[slot] = value(frame[slot] + frame[source]);
+      case Code.Loop(int slot, Code[] body) -> {
+        return ClosedForm.sum(1, loop(frame[slot], body, frame));
+      }
+      case Code.Call(int slot, Program callee, int[] args) -> {
+        return ClosedForm.sum(1, call(slot, callee, args, frame));
+      }
+      case Code.Input(int slot, _) -> frame[slot] = maxInput;
+      case Code.Print _, Code.Define _ -> {}
+    }
+    return 1;
+  }
+
+  // the steps of running `body` `count` times, each iteration being one more step.
+  private long loop(final long count, final Code[] body, final long[] frame) {
+    if (count <= maxExact) {
+      long steps = 0;
+      for (long i = 0; i < count; ++i) {
+        steps = ClosedForm.sum(steps, ClosedForm.sum(1, run(body, frame)));
+      }
+      return steps;
+    }
+    if (maxExact == 1) {
+      // a value that does not grow in one iteration is taken to be reset by each.
+      final long[] before = frame.clone();
+      final long steps = ClosedForm.sum(1, run(body, frame));
+      for (int slot = 0; slot < frame.length; ++slot) {
+        if (frame[slot] > before[slot]) {
+          frame[slot] =
+              value(
+                  ClosedForm.sum(
+                      before[slot], ClosedForm.product(count, frame[slot] - before[slot])));
+        }
+      }
+      return ClosedForm.product(count, steps);
+    }
+    // the first iteration may differ from the rest (as where it assigns a variable first set
+    // before the loop), so extrapolate from those after it.
+    final long[][] samples = new long[SAMPLES][];
+    final long[] steps = new long[SAMPLES];
+    long total = 0;
+    for (int i = 0; i < SAMPLES; ++i) {
+      total = ClosedForm.sum(total, ClosedForm.sum(1, run(body, frame)));
+      samples[i] = frame.clone();
+      steps[i] = total;
+    }
+    for (int slot = 0; slot < frame.length; ++slot) {
+      final long[] values = new long[SAMPLES];
+      for (int i = 0; i < SAMPLES; ++i) {
+        values[i] = samples[i][slot];
+      }
+      frame[slot] = value(extrapolate(values, count));
+    }
+    return extrapolate(steps, count);
+  }
+
+  // the `count`th of a sequence of non-negative values, given its first `SAMPLES`, if they differ
+  // by the same amount each time, or by amounts that grow by the same amount each time.
+  private static long extrapolate(final long[] values, final long count) {
+    if (values[0] == ClosedForm.SATURATED || values[SAMPLES - 1] == ClosedForm.SATURATED) {
+      return ClosedForm.SATURATED;
+    }
+    final long first = values[0];
+    final long difference = values[1] - values[0];
+    final long growth = values[2] - values[1] - difference;
+    boolean isLinear = true;
+    boolean isQuadratic = true;
+    for (int i = 2; i < SAMPLES; ++i) {
+      isLinear &= values[i] - values[i - 1] == difference;
+      isQuadratic &= values[i] - 2 * values[i - 1] + values[i - 2] == growth;
+    }
+    final long n = count - 1;
+    if (isLinear) {
+      return difference >= 0
+          ? ClosedForm.sum(first, ClosedForm.product(n, difference))
+          : ClosedForm.monus(first, ClosedForm.product(n, -difference));
+    }
+    if (isQuadratic && difference >= 0 && growth >= 0) {
+      // n * (n - 1) / 2, without overflowing before the division.
+      final long triangle =
+          n % 2 == 0 ? ClosedForm.product(n / 2, n - 1) : ClosedForm.product(n, (n - 1) / 2);
+      return ClosedForm.sum(
+          ClosedForm.sum(first, ClosedForm.product(n, difference)),
+          ClosedForm.product(triangle, growth));
+    }
+    return ClosedForm.SATURATED;
+  }
+
+  // the steps of the call, which runs the body unless its closed form does not overflow.
+  private long call(final int slot, final Program callee, final int[] args, final long[] frame) {
+    final long[] values = new long[args.length];
+    for (int i = 0; i < args.length; ++i) {
+      values[i] = frame[args[i]];
+    }
+    final ClosedForm closedForm = callee.closedForm();
+    if (closedForm != null) {
+      final long bound = closedForm.bound(values);
+      if (bound >= 0 && bound <= MAX_VALUE) {
+        frame[slot] = bound;
+        return 0;
+      }
+    }
+    final long[] calleeFrame = new long[callee.frameSize()];
+    final int[] paramSlots = callee.paramSlots();
+    for (int i = 0; i < paramSlots.length; ++i) {
+      calleeFrame[paramSlots[i]] = values[i];
+    }
+    final long steps = run(callee.body(), calleeFrame);
+    frame[slot] = calleeFrame[Program.RESULT];
+    return steps;
+  }
+
+  private static long value(final long bound) {
+    return Math.min(bound, MAX_VALUE);
+  }
+}
@@ -0,0 +1,355 @@
+package com.davidconneely.looplang.compiler;
+
+import static com.davidconneely.looplang.compiler.Code.UNDEFINED;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Constant propagation and partial evaluation: runs, before execution starts, as much of the code
+ * as depends only on values known by then, and replaces it by its effects. Each instruction whose
+ * inputs are all known (including whole loops, and calls of other programs) becomes {@link
+ * Code.Set}s of the values it computes, and {@link Code.Print}s of the text it outputs; known
+ * values are also folded into the texts of any other `PRINT` (and `INPUT` prompt).
+ *
+ * <p>A program's variables are known on entry, except for its params. A loop with a known count
+ * that cannot be run here is unrolled, if it is short. In a loop whose count is not known,
+ * variables assigned in the body are not known at the start of any iteration, nor after the loop.
+ * Nothing is known after `INPUT`. A call with some known args calls a version of the program
+ * specialized for them (cached in its {@link Specializations}), with its body folded for those
+ * values of its params. An instruction that would fail (or that takes too long to run here) is left
+ * as it is, to fail when it runs, as is one whose effect cannot be written as a constant (a
+ * negative value, after an overflow). So every error is raised, and every line output, at the same
+ * point as if nothing had been folded.
+ */
+final class Folder {
+  // values of variables that are not known until the code runs.
+  private static final long UNKNOWN = Long.MAX_VALUE;
+  // the most instructions run, and `PRINT`s output by one instruction, in folding one body, and
+  // the most instructions a loop with a known count is unrolled to.
+  private static final int MAX_STEPS = 100_000;
+  private static final int MAX_OUTPUT = 64;
+  private static final int MAX_UNROLLED = 64;
+
+  private long[] state;
+  private int steps;
+
+  /** A folder for top-level code, which starts with every variable undefined. */
+  Folder() {
+    this.state = new long[0];
+  }
+
+  /** Folds the body of a program, whose params are not known. */
+  static Code[] fold(final Code[] body, final int[] paramSlots, final int frameSize) {
+    return fold(body, paramSlots, Arrays.asList(new Integer[paramSlots.length]), frameSize);
+  }
+
+  // folds the body of a program whose params have the values in `args` (`null` if not known).
+  private static Code[] fold(
+      final Code[] body, final int[] paramSlots, final List<Integer> args, final int frameSize) {
+    final Folder folder = new Folder();
+    folder.grow(frameSize);
+    folder.state[Program.RESULT] = 0;
+    for (int i = 0; i < paramSlots.length; ++i) {
+      folder.state[paramSlots[i]] = args.get(i) != null ? args.get(i) : UNKNOWN;
+    }
+    return folder.fold(body);
+  }
+
+  /**
+   * Folds the next top-level statement, resolved in a scope of `size` slots, given the effects of
+   * those folded before it.
+   */
+  Code[] fold(final Code code, final int size) {
+    grow(size);
+    return fold(new Code[] {code});
+  }
+
+  private void grow(final int size) {
+    final int from = state.length;
+    if (size > from) {
+      state = Arrays.copyOf(state, size);
+      Arrays.fill(state, from, size, UNDEFINED);
+    }
+  }
+
+  private Code[] fold(final Code[] body) {
+    steps = MAX_STEPS;
+    return foldBody(body);
+  }
+
+  private Code[] foldBody(final Code[] body) {
+    final List<Code> folded = new ArrayList<>(body.length);
+    for (Code code : body) {
+      final long[] before = state.clone();
+      final List<Code.Print> output = new ArrayList<>();
+      if (evaluate(code, state, output)) {
+        addEffects(code, before, output, folded);
+      } else {
+        state = before;
+        foldPartially(code, folded);
+      }
+    }
+    return Fuser.fuse(folded.toArray(Code[]::new));
+  }
+
+  // adds the effects of `code`, which has just been evaluated, or `code` itself if it is no more
+  // than a constant already, or has an effect that cannot be written as one.
+  private void addEffects(
+      final Code code,
+      final long[] before,
+      final List<Code.Print> output,
+      final List<Code> folded) {
+    if (code instanceof Code.Zero || code instanceof Code.Set) {
+      folded.add(code);
+      return;
+    }
+    final List<Code> sets = new ArrayList<>();
+    for (int slot = 0; slot < state.length; ++slot) {
+      if (state[slot] != before[slot]) {
+        if (state[slot] < 0) {
+          folded.add(code);
+          return;
+        }
+        sets.add(new Code.Set(slot, (int) state[slot]));
+      }
+    }
+    folded.addAll(output);
+    folded.addAll(sets);
+  }
+
+  // adds `code`, with what is known about its inputs folded into it.
+  private void foldPartially(final Code code, final List<Code> folded) {
+    switch (code) {
+      case Code.Print print -> folded.add(fold(print, state));
+      case Code.Input(int slot, Code.Print prompt) -> {
+        state[slot] = UNKNOWN;
+        folded.add(new Code.Input(slot, fold(prompt, state)));
+      }
+      case Code.Loop(int slot, Code[] body)
+          when isCount(state, slot) && state[slot] * Inliner.size(body) <= MAX_UNROLLED -> {
+        for (long i = state[slot]; i > 0; --i) {
+          folded.addAll(Arrays.asList(foldBody(body)));
+        }
+      }
+      case Code.Loop(int slot, Code[] body) -> {
+        forgetWritten(body);
+        final long[] after = state.clone();
+        final Code[] inner = foldBody(body);
+        state = after;
+        folded.add(Fuser.fuse(new Code.Loop(slot, inner)));
+      }
+      case Code.Call(int slot, Program callee, int[] args) -> {
+        folded.add(new Code.Call(slot, specialize(callee, args), args));
+        state[slot] = UNKNOWN;
+      }
+      default -> {
+        forgetWritten(new Code[] {code});
+        folded.add(code);
+      }
+    }
+  }
+
+  // the version of `callee` specialized for the args known here, or `callee` itself if none are (or
+  // it has a closed form, which is already as fast as any specialization, or too many versions).
+  private Program specialize(final Program callee, final int[] args) {
+    final Integer[] known = new Integer[args.length];
+    boolean isAnyKnown = false;
+    for (int i = 0; i < args.length; ++i) {
+      if (state[args[i]] == UNDEFINED) {
+        return callee; // fails on entry.
+      }
+      if (state[args[i]] != UNKNOWN) {
+        known[i] = (int) state[args[i]];
+        isAnyKnown = true;
+      }
+    }
+    if (!isAnyKnown || callee.closedForm() != null) {
+      return callee;
+    }
+    final Program specialized =
+        callee
+            .specializations()
+            .computeIfAbsent(
+                Arrays.asList(known),
+                key -> {
+                  final Code[] body =
+                      Pruner.prune(
+                          fold(callee.body(), callee.paramSlots(), key, callee.frameSize()),
+                          callee.paramSlots());
+                  final ClosedForm closedForm =
+                      ClosedForm.of(callee.paramSlots(), body, callee.frameSize());
+                  return new Program(
+                      callee.name(),
+                      callee.params(),
+                      callee.statements(),
+                      callee.scope(),
+                      callee.paramSlots(),
+                      body,
+                      closedForm,
+                      Memo.of(callee.paramSlots(), body, closedForm),
+                      new Specializations());
+                });
+    return specialized != null ? specialized : callee;
+  }
+
+  private void forgetWritten(final Code[] body) {
+    final boolean[] written = new boolean[state.length];
+    ClosedForm.collectWritten(body, written);
+    for (int slot = 0; slot < written.length; ++slot) {
+      if (written[slot]) {
+        state[slot] = UNKNOWN;
+      }
+    }
+  }
+
+  // the known values of `print` written into its texts.
+  private static Code.Print fold(final Code.Print print, final long[] frame) {
+    final List<String> texts = new ArrayList<>();
+    final List<Integer> slots = new ArrayList<>();
+    final StringBuilder sb = new StringBuilder(print.texts()[0]);
+    for (int i = 0; i < print.slots().length; ++i) {
+      final int slot = print.slots()[i];
+      if (frame[slot] == UNKNOWN) {
+        texts.add(sb.toString());
+        sb.setLength(0);
+        slots.add(slot);
+      } else if (frame[slot] == UNDEFINED) {
+        sb.append("(undefined)");
+      } else {
+        sb.append(frame[slot]);
+      }
+      sb.append(print.texts()[i + 1]);
+    }
+    texts.add(sb.toString());
+    return new Code.Print(
+        texts.toArray(String[]::new), slots.stream().mapToInt(Integer::intValue).toArray());
+  }
+
+  // runs `body` against `frame`, with the same semantics as the engines, returning whether it
+  // completed with only known values, and without an error.
+  private boolean evaluate(final Code[] body, final long[] frame, final List<Code.Print> output) {
+    for (Code code : body) {
+      if (!evaluate(code, frame, output)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean evaluate(final Code code, final long[] frame, final List<Code.Print> output) {
+    if (--steps < 0) {
+      return false;
+    }
+    switch (code) {
+      case Code.Zero(int slot) -> frame[slot] = 0;
+      case Code.Increment(int slot) -> {
+        if (!isDefined(frame, slot)) {
+          return false;
+        }
+        frame[slot] = (int) frame[slot] + 1;
+      }
+      case Code.Set(int slot, int value) -> frame[slot] = value;
+      case Code.Add(int slot, int value) -> {
+        if (!isDefined(frame, slot)) {
+          return false;
+        }
+        frame[slot] = (int) frame[slot] + value;
+      }
+      case Code.Copy(int slot, int source) -> {
+        if (!isCount(frame, source)) {
+          return false;
+        }
+        frame[slot] = frame[source];
+      }
+      case Code.Argument(int slot, int source) -> {
+        if (!isDefined(frame, source)) {
+          return false;
+        }
+        frame[slot] = frame[source];
+      }
+      case Code.Result(int slot, int source) -> {
+        if (frame[source] == UNKNOWN) {
+          return false;
+        }
+        frame[slot] = frame[source];
+      }
+      case Code.AddVariable(int slot, int source) -> {
+        if (!isCount(frame, source) || (frame[source] > 0 && !isDefined(frame, slot))) {
+          return false;
+        }
+        if (frame[source] > 0) {
+          frame[slot] = (int) (frame[slot] + frame[source]);
+        }
+      }
+      case Code.Loop(int slot, Code[] body) -> {
+        if (!isCount(frame, slot)) {
+          return false;
+        }
+        for (long i = frame[slot]; i > 0; --i) {
+          if (--steps < 0 || !evaluate(body, frame, output)) {
+            return false;
+          }
+        }
+      }
+      case Code.Call(int slot, Program callee, int[] args) -> {
+        final long value = call(callee, args, frame, output);
+        if (value == UNKNOWN) {
+          return false;
+        }
+        frame[slot] = value;
+      }
+      case Code.Print print -> {
+        final Code.Print folded = fold(print, frame);
+        if (folded.slots().length > 0 || output.size() >= MAX_OUTPUT) {
+          return false;
+        }
+        output.add(folded);
+      }
+      case Code.Input _, Code.Define _ -> {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // the value returned by the call, using its closed form if it has one, or `UNKNOWN`.
+  private long call(
+      final Program callee, final int[] args, final long[] frame, final List<Code.Print> output) {
+    final long[] values = new long[args.length];
+    final int[] slots = new int[args.length];
+    boolean isNonNegative = true;
+    for (int i = 0; i < args.length; ++i) {
+      if (!isDefined(frame, args[i])) {
+        return UNKNOWN;
+      }
+      values[i] = (int) frame[args[i]];
+      slots[i] = i;
+      isNonNegative &= values[i] >= 0;
+    }
+    final ClosedForm closedForm = callee.closedForm();
+    if (closedForm != null && isNonNegative) {
+      final long value = closedForm.evaluate(values, slots);
+      if (value != UNDEFINED) {
+        return value;
+      }
+    }
+    final long[] calleeFrame = new long[callee.frameSize()];
+    Arrays.fill(calleeFrame, UNDEFINED);
+    calleeFrame[Program.RESULT] = 0;
+    final int[] paramSlots = callee.paramSlots();
+    for (int i = 0; i < paramSlots.length; ++i) {
+      calleeFrame[paramSlots[i]] = values[i];
+    }
+    return evaluate(callee.body(), calleeFrame, output) ? calleeFrame[Program.RESULT] : UNKNOWN;
+  }
+
+  private static boolean isDefined(final long[] frame, final int slot) {
+    return frame[slot] != UNKNOWN && frame[slot] != UNDEFINED;
+  }
+
+  private static boolean isCount(final long[] frame, final int slot) {
+    return frame[slot] != UNKNOWN && frame[slot] >= 0;
+  }
+}
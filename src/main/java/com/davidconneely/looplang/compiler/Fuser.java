@@ -0,0 +1,64 @@
+package com.davidconneely.looplang.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Peephole pass that combines the idioms used to build values in the language into single
+ * superinstructions, each of which runs in constant time:
+ *
+ * <ul>
+ *   <li>`x := 0; x := x + 1; ..` becomes {@link Code.Set},
+ *   <li>`x := x + 1; x := x + 1; ..` becomes {@link Code.Add},
+ *   <li>`LOOP y DO x := x + 1 END` becomes {@link Code.AddVariable}, and
+ *   <li>`x := 0; LOOP y DO x := x + 1 END` becomes {@link Code.Copy}.
+ * </ul>
+ */
+final class Fuser {
+  private Fuser() {
+    // prevent instantiation.
+  }
+
+  /** Fuses a loop whose body has already been fused. */
+  static Code fuse(final Code.Loop loop) {
+    if (loop.body().length == 1 && loop.body()[0] instanceof Code.Increment(int slot)) {
+      return new Code.AddVariable(slot, loop.slot());
+    }
+    return loop;
+  }
+
+  /** Fuses a sequence of code whose elements have already been fused. */
+  static Code[] fuse(final Code[] body) {
+    final List<Code> fused = new ArrayList<>(body.length);
+    for (Code code : body) {
+      final Code last = fused.isEmpty() ? null : fused.getLast();
+      final Code combined = combine(last, code);
+      if (combined != null) {
+        fused.set(fused.size() - 1, combined);
+      } else {
+        fused.add(code);
+      }
+    }
+    return fused.size() == body.length ? body : fused.toArray(Code[]::new);
+  }
+
+  // `last` followed by `code` as a single instruction, or `null` if they cannot be combined.
+  private static Code combine(final Code last, final Code code) {
+    return switch (code) {
+      case Code.Increment(int slot) ->
+          switch (last) {
+            case Code.Zero(int zeroed) when zeroed == slot -> new Code.Set(slot, 1);
+            case Code.Set(int set, int value) when set == slot -> new Code.Set(slot, value + 1);
+            case Code.Increment(int incremented) when incremented == slot -> new Code.Add(slot, 2);
+            case Code.Add(int added, int value) when added == slot -> new Code.Add(slot, value + 1);
+            case null, default -> null;
+          };
+      case Code.AddVariable(int slot, int source) when slot != source ->
+          switch (last) {
+            case Code.Zero(int zeroed) when zeroed == slot -> new Code.Copy(slot, source);
+            case null, default -> null;
+          };
+      default -> null;
+    };
+  }
+}
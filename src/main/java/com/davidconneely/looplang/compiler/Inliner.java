@@ -0,0 +1,182 @@
+package com.davidconneely.looplang.compiler;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Replaces calls of small programs with their bodies, so that they run without setting up a frame,
+ * and so that the analyses of the caller's loops see the code they run. Each variable of the callee
+ * gets a slot of its own in the caller's {@link Scope}, and the call `x := P(a1, .., an)` becomes:
+ *
+ * <pre>
+ * P.X0 := 0; P.X1 := a1; .. P.Xn := an; (the body of P, renamed); x := P.X0
+ * </pre>
+ *
+ * <p>so arguments are still passed by value (see {@link Code.Argument}), checked in the same order
+ * and with the same messages as a call. A call gets a frame of undefined variables, but the slots
+ * of an inlined program keep their values from one run to the next, so only programs that assign
+ * each of their other variables before reading it are inlined. Programs with a {@link ClosedForm}
+ * are not, as evaluating it is cheaper than running any body.
+ */
+final class Inliner {
+  // the most instructions (including those in loops) in the body of a program that is inlined, and
+  // the deepest nesting of programs inlined into one another.
+  static final int MAX_SIZE = 16;
+  static final int MAX_DEPTH = 3;
+
+  private Inliner() {
+    // prevent instantiation.
+  }
+
+  /** Inlines the calls in a sequence of code, into `scope`. */
+  static Code[] inline(final Code[] body, final Scope scope) {
+    final List<Code> inlined = new ArrayList<>(body.length);
+    for (Code code : body) {
+      if (code instanceof Code.Call call && isInlinable(call.program())) {
+        inline(call, scope, inlined);
+      } else {
+        inlined.add(code);
+      }
+    }
+    return inlined.size() == body.length ? body : inlined.toArray(Code[]::new);
+  }
+
+  private static boolean isInlinable(final Program program) {
+    return program.closedForm() == null
+        && program.scope().inlinedDepth() < MAX_DEPTH
+        && size(program.body()) <= MAX_SIZE
+        && isAssignedBeforeRead(program);
+  }
+
+  private static void inline(final Code.Call call, final Scope scope, final List<Code> inlined) {
+    final Program program = call.program();
+    final int[] slots = new int[program.frameSize()];
+    for (int slot = 0; slot < slots.length; ++slot) {
+      slots[slot] = scope.slotOf(program, slot);
+    }
+    // in the order that `Builtins.enter` sets up a frame.
+    inlined.add(new Code.Zero(slots[Program.RESULT]));
+    final int[] paramSlots = program.paramSlots();
+    for (int i = 0; i < paramSlots.length; ++i) {
+      inlined.add(new Code.Argument(slots[paramSlots[i]], call.args()[i]));
+    }
+    for (Code code : program.body()) {
+      inlined.add(rename(code, slots));
+    }
+    inlined.add(new Code.Result(call.slot(), slots[Program.RESULT]));
+  }
+
+  // instructions in `body`, or more than `MAX_SIZE` if it has a definition (which must fail when
+  // run, naming the program it is in).
+  static int size(final Code[] body) {
+    int size = 0;
+    for (Code code : body) {
+      size +=
+          switch (code) {
+            case Code.Loop loop -> 1 + size(loop.body());
+            case Code.Define _ -> MAX_SIZE + 1;
+            default -> 1;
+          };
+    }
+    return size;
+  }
+
+  // whether every variable of `program` other than `x0` and its params, which are set on entry, is
+  // always assigned before it is read.
+  private static boolean isAssignedBeforeRead(final Program program) {
+    final BitSet assigned = new BitSet();
+    assigned.set(Program.RESULT);
+    for (int slot : program.paramSlots()) {
+      assigned.set(slot);
+    }
+    return isAssignedBeforeRead(program.body(), assigned);
+  }
+
+  // assignments in a loop body are not carried past the loop, which may not run at all.
+  private static boolean isAssignedBeforeRead(final Code[] body, final BitSet assigned) {
+    for (Code code : body) {
+      final boolean isAssigned =
+          switch (code) {
+            case Code.Zero(int slot) -> assign(assigned, slot);
+            case Code.Increment(int slot) -> assigned.get(slot);
+            case Code.Set(int slot, _) -> assign(assigned, slot);
+            case Code.Add(int slot, _) -> assigned.get(slot);
+            case Code.Copy(int slot, int source) -> assigned.get(source) && assign(assigned, slot);
+            case Code.Argument(int slot, int source) ->
+                assigned.get(source) && assign(assigned, slot);
+            case Code.Result(int slot, int source) ->
+                assigned.get(source) && assign(assigned, slot);
+            case Code.AddVariable(int slot, int source) ->
+                assigned.get(slot) && assigned.get(source);
+            case Code.Loop(int slot, Code[] inner) ->
+                assigned.get(slot) && isAssignedBeforeRead(inner, (BitSet) assigned.clone());
+            case Code.Call(int slot, _, int[] args) ->
+                areAssigned(assigned, args) && assign(assigned, slot);
+            case Code.Print print -> areAssigned(assigned, print.slots());
+            case Code.Input(int slot, Code.Print prompt) ->
+                areAssigned(assigned, prompt.slots()) && assign(assigned, slot);
+            case Code.Define _ -> false;
+          };
+      if (!isAssigned) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean assign(final BitSet assigned, final int slot) {
+    assigned.set(slot);
+    return true;
+  }
+
+  private static boolean areAssigned(final BitSet assigned, final int[] slots) {
+    for (int slot : slots) {
+      if (!assigned.get(slot)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Code[] rename(final Code[] body, final int[] slots) {
+    final Code[] renamed = new Code[body.length];
+    for (int i = 0; i < body.length; ++i) {
+      renamed[i] = rename(body[i], slots);
+    }
+    return renamed;
+  }
+
+  private static int[] rename(final int[] slots, final int[] renamed) {
+    final int[] result = new int[slots.length];
+    for (int i = 0; i < slots.length; ++i) {
+      result[i] = renamed[slots[i]];
+    }
+    return result;
+  }
+
+  private static Code.Print rename(final Code.Print print, final int[] slots) {
+    return new Code.Print(print.texts(), rename(print.slots(), slots));
+  }
+
+  private static Code rename(final Code code, final int[] slots) {
+    return switch (code) {
+      case Code.Zero(int slot) -> new Code.Zero(slots[slot]);
+      case Code.Increment(int slot) -> new Code.Increment(slots[slot]);
+      case Code.Set(int slot, int value) -> new Code.Set(slots[slot], value);
+      case Code.Add(int slot, int value) -> new Code.Add(slots[slot], value);
+      case Code.Copy(int slot, int source) -> new Code.Copy(slots[slot], slots[source]);
+      case Code.Argument(int slot, int source) -> new Code.Argument(slots[slot], slots[source]);
+      case Code.Result(int slot, int source) -> new Code.Result(slots[slot], slots[source]);
+      case Code.AddVariable(int slot, int source) ->
+          new Code.AddVariable(slots[slot], slots[source]);
+      case Code.Loop(int slot, Code[] body) -> new Code.Loop(slots[slot], rename(body, slots));
+      case Code.Call(int slot, Program program, int[] args) ->
+          new Code.Call(slots[slot], program, rename(args, slots));
+      case Code.Print print -> rename(print, slots);
+      case Code.Input(int slot, Code.Print prompt) ->
+          new Code.Input(slots[slot], rename(prompt, slots));
+      case Code.Define define -> define; // never inlined: see `size`.
+    };
+  }
+}
@@ -0,0 +1,337 @@
+package com.davidconneely.looplang.compiler;
+
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.statement.Definition;
+import com.davidconneely.looplang.statement.Statement;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates a script to the source of a standalone Java class, ahead of time. Each `PROGRAM`
+ * becomes a `public static int` method taking its parameters as `int`s, and the top-level
+ * statements become its `main` method. The class depends only on `java.base`: the few runtime
+ * checks (undefined variables, negative loop counts) and the I/O statements are emitted into it as
+ * private helpers, with the same messages as the interpreter.
+ *
+ * <p>Statements are added one at a time as they are parsed, so that defined programs can be
+ * registered with the parser before the statements that call them are parsed. Each is folded by the
+ * {@link Folder} as it is added, so a script without `INPUT` compiles to little more than the
+ * `PRINT`s of its output; assignments that nothing then reads are removed by the {@link Pruner}.
+ */
+public final class JavaTranspiler {
+  private static final String INDENT = "  ";
+
+  private final ParserContext parserContext;
+  private final String packageName;
+  private final String simpleName;
+  private final Map<String, Program> programs;
+  private final Map<List<Statement>, Program> resolved;
+  private final List<Program> definitions;
+  private final Scope globals;
+  private final Folder folder;
+  private final List<Code> main;
+
+  public JavaTranspiler(final ParserContext parserContext, final String className) {
+    this.parserContext = parserContext;
+    final int dot = className.lastIndexOf('.');
+    this.packageName = dot < 0 ? null : className.substring(0, dot);
+    this.simpleName = className.substring(dot + 1);
+    this.programs = new HashMap<>();
+    this.resolved = new IdentityHashMap<>();
+    this.definitions = new ArrayList<>();
+    this.globals = new Scope();
+    this.folder = new Folder();
+    this.main = new ArrayList<>();
+  }
+
+  public void add(final Statement statement) {
+    if (statement instanceof Definition(String name, List<String> params, List<Statement> body)) {
+      if (programs.containsKey(name)) {
+        throw new CompilerException("program `" + name + "` has already been defined");
+      }
+      final Program program = Resolver.resolveProgram(name, params, body, programs::get, resolved);
+      programs.put(name, program);
+      definitions.add(program);
+      parserContext.addDefinedProgram(name);
+    } else {
+      final Code code = Resolver.resolve(statement, globals, programs::get);
+      main.addAll(List.of(folder.fold(code, globals.size())));
+    }
+  }
+
+  /** The Java source of the class, with one method per program added so far. */
+  public String toSource() {
+    final StringBuilder sb = new StringBuilder();
+    if (packageName != null) {
+      sb.append("package ").append(packageName).append(";\n\n");
+    }
+    sb.append("/** Compiled from LOOP source by looplangc. */\n");
+    sb.append("public final class ").append(simpleName).append(" {\n");
+    sb.append(INDENT).append("private ").append(simpleName).append("() {}\n");
+    for (Program program : definitions) {
+      sb.append('\n');
+      new MethodWriter(sb, program.scope(), program.name()).writeProgram(program);
+    }
+    sb.append('\n');
+    // nothing is defined when `main` starts, and nothing is read once it returns, or exits with an
+    // error.
+    final Code[] body = Pruner.prune(main.toArray(Code[]::new), new BitSet(), new BitSet());
+    new MethodWriter(sb, globals, null).writeMain(body);
+    sb.append(HELPERS);
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  /** A variable or program name as a Java identifier (names are upper-cased, so never keywords). */
+  private static String identifier(final String name) {
+    return name.equals("_") ? "$_" : name;
+  }
+
+  private static String literal(final String text) {
+    final StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < text.length(); ++i) {
+      final char ch = text.charAt(i);
+      switch (ch) {
+        case '"' -> sb.append("\\\"");
+        case '\\' -> sb.append("\\\\");
+        case '\n' -> sb.append("\\n");
+        case '\r' -> sb.append("\\r");
+        case '\t' -> sb.append("\\t");
+        default -> {
+          if (ch < ' ') {
+            sb.append(String.format("\\u%04x", (int) ch));
+          } else {
+            sb.append(ch);
+          }
+        }
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  /**
+   * Writes the body of one method, with each variable as a `long` local holding an `int` value, or
+   * `UNDEFINED` (which is no `int`) until it is assigned. Params are `int`s, as callers only pass
+   * values that they have checked are defined.
+   */
+  private static final class MethodWriter {
+    private final StringBuilder sb;
+    private final Scope scope;
+    private final String program;
+    private final BitSet paramSlots;
+    private int depth;
+
+    MethodWriter(final StringBuilder sb, final Scope scope, final String program) {
+      this.sb = sb;
+      this.scope = scope;
+      this.program = program;
+      this.paramSlots = new BitSet();
+      this.depth = 1;
+    }
+
+    void writeProgram(final Program program) {
+      line("/** `PROGRAM " + program.name() + "(" + String.join(", ", program.params()) + ")` */");
+      final List<String> params = new ArrayList<>();
+      for (int slot : program.paramSlots()) {
+        params.add("int " + variable(slot));
+        paramSlots.set(slot);
+      }
+      line(
+          "public static int %s(%s) {"
+              .formatted(identifier(program.name()), String.join(", ", params)));
+      ++depth;
+      for (int slot = 0; slot < scope.size(); ++slot) {
+        if (!paramSlots.get(slot)) {
+          final String initial = slot == Program.RESULT ? "0" : "UNDEFINED";
+          line("long " + variable(slot) + " = " + initial + ";");
+        }
+      }
+      write(program.body());
+      line("return (int) " + variable(Program.RESULT) + ";");
+      --depth;
+      line("}");
+    }
+
+    void writeMain(final Code[] body) {
+      line("public static void main(final String[] args) {");
+      ++depth;
+      for (int slot = 0; slot < scope.size(); ++slot) {
+        line("long " + variable(slot) + " = UNDEFINED;");
+      }
+      write(body);
+      --depth;
+      line("}");
+    }
+
+    private void write(final Code[] body) {
+      for (Code code : body) {
+        write(code);
+      }
+    }
+
+    private void write(final Code code) {
+      switch (code) {
+        case Code.Zero(int slot) -> line(variable(slot) + " = 0;");
+        case Code.Increment(int slot) -> line(variable(slot) + " = " + read(slot) + " + 1;");
+        case Code.Set(int slot, int value) -> line(variable(slot) + " = " + value + ";");
+        case Code.Add(int slot, int value) ->
+            line(variable(slot) + " = " + read(slot) + " + " + value + ";");
+        case Code.Copy(int slot, int source) ->
+            line(variable(slot) + " = " + loopCount(source) + ";");
+        case Code.Argument(int slot, int source) ->
+            line(variable(slot) + " = " + read(source) + ";");
+        case Code.Result(int slot, int source) ->
+            line(
+                variable(slot)
+                    + (paramSlots.get(slot) ? " = (int) " : " = ")
+                    + variable(source)
+                    + ";");
+        case Code.AddVariable(int slot, int source) -> {
+          final String count = "n" + depth;
+          line("{");
+          ++depth;
+          line("final int " + count + " = " + loopCount(source) + ";");
+          line("if (" + count + " > 0) {");
+          line(INDENT + variable(slot) + " = " + read(slot) + " + " + count + ";");
+          line("}");
+          --depth;
+          line("}");
+        }
+        case Code.Loop(int slot, Code[] body) -> {
+          final String counter = "i" + depth;
+          line("for (int %s = %s; %s > 0; --%1$s) {".formatted(counter, loopCount(slot), counter));
+          ++depth;
+          write(body);
+          --depth;
+          line("}");
+        }
+        case Code.Call(int slot, Program callee, int[] args) -> {
+          final List<String> values = new ArrayList<>();
+          for (int arg : args) {
+            values.add(read(arg));
+          }
+          line(
+              "%s = %s(%s);"
+                  .formatted(variable(slot), identifier(callee.name()), String.join(", ", values)));
+        }
+        case Code.Print print -> line("println(" + format(print) + ");");
+        case Code.Input(int slot, Code.Print prompt) ->
+            line(
+                "%s = input(%s, %s);"
+                    .formatted(variable(slot), format(prompt), literal(scope.nameOf(slot))));
+        case Code.Define define -> {
+          if (program != null) {
+            throw new CompilerException(
+                "cannot nest program `"
+                    + define.definition().program()
+                    + "` inside outer program `"
+                    + program
+                    + "`");
+          }
+          throw new CompilerException(
+              "program `"
+                  + define.definition().program()
+                  + "` must be defined at the top level to be compiled");
+        }
+      }
+    }
+
+    // variables of inlined programs are qualified by their names, as `PROGRAM$VARIABLE`.
+    private String variable(final int slot) {
+      return identifier(scope.keyOf(slot).replace('.', '$'));
+    }
+
+    private String read(final int slot) {
+      return "read(" + variable(slot) + ", " + literal(scope.nameOf(slot)) + ")";
+    }
+
+    private String loopCount(final int slot) {
+      return "loopCount(" + variable(slot) + ", " + literal(scope.nameOf(slot)) + ")";
+    }
+
+    private String format(final Code.Print print) {
+      final List<String> texts = new ArrayList<>();
+      for (String text : print.texts()) {
+        texts.add(literal(text));
+      }
+      final List<String> values = new ArrayList<>();
+      for (int slot : print.slots()) {
+        values.add(variable(slot));
+      }
+      return "new String[] {"
+          + String.join(", ", texts)
+          + "}, new long[] {"
+          + String.join(", ", values)
+          + "}";
+    }
+
+    private void line(final String text) {
+      sb.append(INDENT.repeat(depth)).append(text).append('\n');
+    }
+  }
+
+  private static final String HELPERS =
+      """
+
+        private static final long UNDEFINED = Long.MIN_VALUE;
+
+        private static java.io.BufferedReader stdin;
+
+        private static int read(final long value, final String variable) {
+          if (value == UNDEFINED) {
+            throw new IllegalStateException("variable `" + variable + "` has not been defined yet");
+          }
+          return (int) value;
+        }
+
+        private static int loopCount(final long value, final String variable) {
+          final int count = read(value, variable);
+          if (count < 0) {
+            throw new IllegalStateException(
+                "loop count for variable `" + variable + "` is negative: " + count);
+          }
+          return count;
+        }
+
+        private static String format(final String[] texts, final long[] values) {
+          final StringBuilder sb = new StringBuilder(texts[0]);
+          for (int i = 0; i < values.length; ++i) {
+            sb.append(values[i] != UNDEFINED ? String.valueOf(values[i]) : "(undefined)");
+            sb.append(texts[i + 1]);
+          }
+          return sb.toString();
+        }
+
+        private static void println(final String[] texts, final long[] values) {
+          System.out.println(format(texts, values));
+        }
+
+        private static int input(final String[] texts, final long[] values, final String variable) {
+          System.out.print(format(texts, values));
+          System.out.flush();
+          final String line;
+          try {
+            if (stdin == null) {
+              stdin = new java.io.BufferedReader(new java.io.InputStreamReader(System.in));
+            }
+            line = stdin.readLine();
+          } catch (final java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+          }
+          if (line == null || line.isBlank()) {
+            throw new IllegalStateException(
+                "expected non-negative integer input for variable `" + variable + "`");
+          }
+          try {
+            return Math.max(0, Integer.parseInt(line.strip()));
+          } catch (final NumberFormatException e) {
+            throw new IllegalStateException(
+                "invalid integer input `" + line + "` for variable `" + variable + "`");
+          }
+        }
+      """;
+}
@@ -0,0 +1,135 @@
+package com.davidconneely.looplang.compiler;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * The results of earlier calls of a pure {@link Program}, keyed by their args, so that a call with
+ * the same args again returns the result without running the body. A program is pure if nothing
+ * that it (or anything it calls) runs does I/O: it cannot see or change its caller's variables, so
+ * it returns the same result whenever it is called with the same args.
+ *
+ * <p>Only calls that took long enough to run are remembered, as looking a call up costs about as
+ * much as running a short one, and only the most recently used are kept. A program that has only
+ * ever been called briefly stops being measured, so that short programs called often are not slowed
+ * down. A call that fails is not remembered, so it fails again, with the same error, when it is
+ * repeated. Programs with a {@link ClosedForm} do not have one, as evaluating it is cheaper.
+ *
+ * <p>A call is looked up with a key reused by every call, and only copied when its result is kept,
+ * so that calls allocate nothing while they are being measured. So, as for the frame each engine
+ * reuses for every call of a program, a memo is used by one call at a time: a program cannot call
+ * itself, nor call anything that calls it.
+ */
+public final class Memo {
+  // the most results kept, and the shortest call (in nanoseconds) whose result is kept.
+  private static final int MAX_SIZE = 256;
+  private static final long MIN_NANOS = 20_000;
+  // the calls measured before a program none of which was long enough stops being measured.
+  private static final int MAX_SHORT_CALLS = 1_000;
+
+  private final int[] paramSlots;
+  private final long minNanos;
+  private final Map<Args, Integer> values;
+  // the args of the call being run.
+  private final Args probe;
+  private int shortCalls;
+
+  Memo(final int[] paramSlots, final long minNanos) {
+    this.paramSlots = paramSlots;
+    this.minNanos = minNanos;
+    this.values =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(final Map.Entry<Args, Integer> eldest) {
+            return size() > MAX_SIZE;
+          }
+        };
+    this.probe = new Args(new int[paramSlots.length]);
+  }
+
+  // the args of a call, compared by value.
+  private static final class Args {
+    private final int[] values;
+    private int hash;
+
+    Args(final int[] values) {
+      this.values = values;
+      this.hash = Arrays.hashCode(values);
+    }
+
+    void set(final long[] frame, final int[] paramSlots) {
+      for (int i = 0; i < values.length; ++i) {
+        values[i] = (int) frame[paramSlots[i]];
+      }
+      hash = Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      return other instanceof Args args && Arrays.equals(values, args.values);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  /**
+   * A memo for a program with `body`, or `null` if it has a closed form, or is not pure (so that
+   * its result may not be the same each time).
+   */
+  static Memo of(final int[] paramSlots, final Code[] body, final ClosedForm closedForm) {
+    return closedForm == null && isPure(body) ? new Memo(paramSlots, MIN_NANOS) : null;
+  }
+
+  // whether `body` does no I/O (and defines no programs, which fails), nor calls anything that
+  // does.
+  private static boolean isPure(final Code[] body) {
+    for (Code code : body) {
+      final boolean isPure =
+          switch (code) {
+            case Code.Loop loop -> isPure(loop.body());
+            case Code.Call(_, Program callee, _) ->
+                callee.closedForm() != null || callee.memo() != null;
+            case Code.Print _, Code.Input _, Code.Define _ -> false;
+            default -> true;
+          };
+      if (!isPure) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The result of a call that has just been set up in `frame` (with its args in the param slots),
+   * remembered from an earlier call with the same args, or got by running `body` on the frame.
+   */
+  public int call(final long[] frame, final ToIntFunction<long[]> body) {
+    if (shortCalls >= MAX_SHORT_CALLS) {
+      return body.applyAsInt(frame);
+    }
+    // the body may change its params, so the args are taken before it runs.
+    probe.set(frame, paramSlots);
+    final Integer value = values.get(probe);
+    if (value != null) {
+      return value;
+    }
+    final long start = System.nanoTime();
+    final int result = body.applyAsInt(frame);
+    final long nanos = System.nanoTime() - start;
+    if (nanos >= minNanos) {
+      values.put(new Args(probe.values.clone()), result);
+    } else if (values.isEmpty()) {
+      ++shortCalls;
+    }
+    return result;
+  }
+
+  int size() {
+    return values.size();
+  }
+}
@@ -0,0 +1,37 @@
+package com.davidconneely.looplang.compiler;
+
+import com.davidconneely.looplang.statement.Statement;
+import java.util.List;
+
+/**
+ * A `PROGRAM` definition resolved against its own {@link Scope}. The frame for a call has {@link
+ * #frameSize()} slots; `x0` is always slot {@link #RESULT} (initialised to `0`) and the arguments
+ * are copied positionally into `paramSlots`.
+ *
+ * @param name program name
+ * @param params parameter variable names, as written in the definition
+ * @param statements the parsed body
+ * @param scope variable slots for the body
+ * @param paramSlots slot of each parameter, in order
+ * @param body the resolved body
+ * @param closedForm what the program returns, as an expression of its arguments, or `null` if it
+ *     has no {@link ClosedForm}
+ * @param memo results of earlier calls, or `null` if it is not pure (or has a closed form)
+ * @param specializations versions of the program for calls with args known ahead of time
+ */
+public record Program(
+    String name,
+    List<String> params,
+    List<Statement> statements,
+    Scope scope,
+    int[] paramSlots,
+    Code[] body,
+    ClosedForm closedForm,
+    Memo memo,
+    Specializations specializations) {
+  public static final int RESULT = 0;
+
+  public int frameSize() {
+    return scope.size();
+  }
+}
@@ -0,0 +1,221 @@
+package com.davidconneely.looplang.compiler;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dead-store elimination: removes assignments whose values are never read, working back from the
+ * variables that are live at the end of the code (`x0` for a program, as the rest of its frame is
+ * discarded when it returns). A variable is live at a point if some path from there reads it before
+ * assigning it; in a loop, that includes paths through later iterations.
+ *
+ * <p>Only assignments that cannot fail are removed, so that every error is still raised (an
+ * increment of an undefined variable, a negative loop count, an error in a callee), as is every
+ * `PRINT` and `INPUT`. {@link Code.Zero}, {@link Code.Set} and {@link Code.Result} never fail, and
+ * {@link Code.Increment}, {@link Code.Add} and {@link Code.Argument} cannot where what they read is
+ * definitely defined: assigned on every path to them (or a param, or `x0`, at the start of a
+ * program). A loop left with nothing to do is replaced by a check of its count, which fails as the
+ * loop would, without running its body; an {@link Code.AddVariable} to a dead variable likewise.
+ */
+final class Pruner {
+  // the instructions that cannot fail, as what they read is definitely defined; an instruction
+  // inlined in several places is only marked `true` if it cannot fail in any of them.
+  private final Map<Code, Boolean> isSafe;
+
+  private Pruner(final Map<Code, Boolean> isSafe) {
+    this.isSafe = isSafe;
+  }
+
+  /**
+   * Prunes the body of a program, which starts with only its params and `x0` defined, and of which
+   * only the result is read once it returns.
+   */
+  static Code[] prune(final Code[] body, final int[] paramSlots) {
+    final BitSet defined = new BitSet();
+    defined.set(Program.RESULT);
+    for (int slot : paramSlots) {
+      defined.set(slot);
+    }
+    final BitSet live = new BitSet();
+    live.set(Program.RESULT);
+    return prune(body, defined, live);
+  }
+
+  /**
+   * Prunes `body`, given the slots that are definitely `defined` before it, and those that are
+   * `live` after it, which are updated to those live before it.
+   */
+  static Code[] prune(final Code[] body, final BitSet defined, final BitSet live) {
+    final Map<Code, Boolean> isSafe = new IdentityHashMap<>();
+    define(body, (BitSet) defined.clone(), isSafe);
+    return new Pruner(isSafe).prune(body, live);
+  }
+
+  // updates `defined` to the slots definitely defined after `body`, marking the instructions in it
+  // that read only those definitely defined before them.
+  private static void define(
+      final Code[] body, final BitSet defined, final Map<Code, Boolean> isSafe) {
+    for (Code code : body) {
+      switch (code) {
+        case Code.Zero(int slot) -> defined.set(slot);
+        case Code.Set(int slot, _) -> defined.set(slot);
+        case Code.Increment(int slot) -> {
+          isSafe.merge(code, defined.get(slot), Boolean::logicalAnd);
+          defined.set(slot);
+        }
+        case Code.Add(int slot, _) -> {
+          isSafe.merge(code, defined.get(slot), Boolean::logicalAnd);
+          defined.set(slot);
+        }
+        case Code.Copy(int slot, int source) -> {
+          defined.set(source);
+          defined.set(slot);
+        }
+        case Code.Argument(int slot, int source) -> {
+          isSafe.merge(code, defined.get(source), Boolean::logicalAnd);
+          defined.set(source);
+          defined.set(slot);
+        }
+        case Code.Result(int slot, int source) -> defined.set(slot, defined.get(source));
+        case Code.AddVariable(int slot, int source) -> {
+          isSafe.merge(code, defined.get(slot), Boolean::logicalAnd);
+          defined.set(source);
+        }
+        case Code.Loop(int slot, Code[] loopBody) -> {
+          // the body may not run, so defines nothing after the loop; each iteration starts with at
+          // least what was defined before the first.
+          defined.set(slot);
+          define(loopBody, (BitSet) defined.clone(), isSafe);
+        }
+        case Code.Call(int slot, _, int[] args) -> {
+          for (int arg : args) {
+            defined.set(arg);
+          }
+          defined.set(slot);
+        }
+        case Code.Input(int slot, _) -> defined.set(slot);
+        case Code.Print _, Code.Define _ -> {}
+      }
+    }
+  }
+
+  private Code[] prune(final Code[] body, final BitSet live) {
+    final List<Code> pruned = new ArrayList<>(body.length);
+    boolean isChanged = false;
+    for (int i = body.length - 1; i >= 0; --i) {
+      final Code code = prune(body[i], live);
+      if (code != null) {
+        pruned.add(code);
+      }
+      isChanged |= code != body[i];
+    }
+    if (!isChanged) {
+      return body;
+    }
+    Collections.reverse(pruned);
+    return Fuser.fuse(pruned.toArray(Code[]::new));
+  }
+
+  // `code`, or `null` if it is a dead store, having updated `live` to the slots live before it.
+  private Code prune(final Code code, final BitSet live) {
+    switch (code) {
+      case Code.Zero(int slot) -> {
+        return kill(live, slot) ? code : null;
+      }
+      case Code.Set(int slot, _) -> {
+        return kill(live, slot) ? code : null;
+      }
+      case Code.Result(int slot, int source) -> {
+        if (!kill(live, slot)) {
+          return null;
+        }
+        live.set(source);
+      }
+      case Code.Increment(int slot) -> {
+        if (!live.get(slot) && isSafe(code)) {
+          return null;
+        }
+        live.set(slot);
+      }
+      case Code.Add(int slot, _) -> {
+        if (!live.get(slot) && isSafe(code)) {
+          return null;
+        }
+        live.set(slot);
+      }
+      case Code.Copy(int slot, int source) -> {
+        live.clear(slot);
+        live.set(source);
+      }
+      case Code.Argument(int slot, int source) -> {
+        if (!kill(live, slot) && isSafe(code)) {
+          return null;
+        }
+        live.set(source);
+      }
+      case Code.AddVariable(int slot, int source) -> {
+        final boolean isDead = !live.get(slot) && isSafe(code);
+        if (!isDead) {
+          live.set(slot);
+        }
+        live.set(source);
+        if (isDead) {
+          return new Code.Copy(source, source);
+        }
+      }
+      case Code.Loop(int slot, Code[] body) -> {
+        // the body may run any number of times, so what is live at its start is live at its end
+        // too, and after the loop is live before it: iterate to a fixed point.
+        final BitSet head = (BitSet) live.clone();
+        Code[] pruned;
+        while (true) {
+          final BitSet start = (BitSet) head.clone();
+          pruned = prune(body, start);
+          start.andNot(head);
+          if (start.isEmpty()) {
+            break;
+          }
+          head.or(start);
+        }
+        live.or(head);
+        live.set(slot);
+        if (pruned.length == 0) {
+          return new Code.Copy(slot, slot); // checks the count, as the loop would.
+        }
+        return pruned == body ? code : Fuser.fuse(new Code.Loop(slot, pruned));
+      }
+      case Code.Call(int slot, _, int[] args) -> {
+        live.clear(slot);
+        set(live, args);
+      }
+      case Code.Print print -> set(live, print.slots());
+      case Code.Input(int slot, Code.Print prompt) -> {
+        live.clear(slot);
+        set(live, prompt.slots());
+      }
+      case Code.Define _ -> {}
+    }
+    return code;
+  }
+
+  private boolean isSafe(final Code code) {
+    return isSafe.getOrDefault(code, false);
+  }
+
+  // whether `slot` was live after an assignment to it, which it is not before.
+  private static boolean kill(final BitSet live, final int slot) {
+    final boolean isLive = live.get(slot);
+    live.clear(slot);
+    return isLive;
+  }
+
+  private static void set(final BitSet live, final int[] slots) {
+    for (int slot : slots) {
+      live.set(slot);
+    }
+  }
+}
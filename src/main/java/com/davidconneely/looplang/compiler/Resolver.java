@@ -0,0 +1,188 @@
+package com.davidconneely.looplang.compiler;
+
+import static com.davidconneely.looplang.token.Token.Kind.STRING;
+
+import com.davidconneely.looplang.statement.AssignCall;
+import com.davidconneely.looplang.statement.AssignIncrement;
+import com.davidconneely.looplang.statement.AssignInput;
+import com.davidconneely.looplang.statement.AssignZero;
+import com.davidconneely.looplang.statement.Definition;
+import com.davidconneely.looplang.statement.Loop;
+import com.davidconneely.looplang.statement.Print;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Resolution pass run after parsing: replaces variable names with frame slots, and links each call
+ * site to the {@link Program} it calls (so arity is checked once, here, rather than on every call).
+ * Calls of small programs in a body are then replaced by the {@link Inliner}, and common idioms in
+ * the resolved code are combined by the {@link Fuser}. Each program then has what can be computed
+ * ahead of time computed by the {@link Folder}, and its dead stores removed by the {@link Pruner},
+ * and is given a {@link ClosedForm} if it has one, or else a {@link Memo} if it is pure.
+ */
+public final class Resolver {
+  /** The special variable holding the value returned from a `PROGRAM`. */
+  public static final String RESULT_VARIABLE = "X0";
+
+  private Resolver() {
+    // prevent instantiation.
+  }
+
+  public static Program resolveProgram(
+      final String name,
+      final List<String> params,
+      final List<Statement> statements,
+      final Function<String, Program> programs) {
+    final Scope scope = new Scope();
+    scope.slotOf(RESULT_VARIABLE); // always Program.RESULT
+    final int[] paramSlots = params.stream().mapToInt(scope::slotOf).toArray();
+    final Code[] body =
+        Pruner.prune(
+            Folder.fold(resolveBody(statements, scope, programs), paramSlots, scope.size()),
+            paramSlots);
+    final ClosedForm closedForm = ClosedForm.of(paramSlots, body, scope.size());
+    return new Program(
+        name,
+        params,
+        statements,
+        scope,
+        paramSlots,
+        body,
+        closedForm,
+        Memo.of(paramSlots, body, closedForm),
+        new Specializations());
+  }
+
+  /**
+   * As {@link #resolveProgram(String, List, List, Function)}, but sharing the resolution of an
+   * earlier program in `resolved` (keyed by its body) with the same params and body. The parser
+   * interns bodies, so programs defined with identical bodies under different names have the same
+   * body, and are resolved to the same code whatever their names: only the first of them is
+   * resolved, folded and analysed, and the rest share its code, scope, closed form and memo.
+   */
+  public static Program resolveProgram(
+      final String name,
+      final List<String> params,
+      final List<Statement> statements,
+      final Function<String, Program> programs,
+      final Map<List<Statement>, Program> resolved) {
+    final Program twin = resolved.get(statements);
+    if (twin != null && twin.params().equals(params)) {
+      return new Program(
+          name,
+          params,
+          statements,
+          twin.scope(),
+          twin.paramSlots(),
+          twin.body(),
+          twin.closedForm(),
+          twin.memo(),
+          new Specializations());
+    }
+    final Program program = resolveProgram(name, params, statements, programs);
+    resolved.putIfAbsent(statements, program);
+    return program;
+  }
+
+  public static Code resolve(
+      final Statement statement, final Scope scope, final Function<String, Program> programs) {
+    return switch (statement) {
+      case AssignZero(String variable) -> new Code.Zero(scope.slotOf(variable));
+      case AssignIncrement(String variable) -> new Code.Increment(scope.slotOf(variable));
+      case AssignInput(String variable, List<Token> printTokens) ->
+          new Code.Input(scope.slotOf(variable), resolvePrint(printTokens, scope));
+      case AssignCall(String variable, String program, List<String> args) ->
+          new Code.Call(
+              scope.slotOf(variable),
+              link(program, args.size(), programs),
+              args.stream().mapToInt(scope::slotOf).toArray());
+      case Loop(String variable, List<Statement> body) ->
+          Fuser.fuse(new Code.Loop(scope.slotOf(variable), resolveBody(body, scope, programs)));
+      case Print(List<Token> printTokens) -> resolvePrint(printTokens, scope);
+      case Definition definition -> new Code.Define(definition);
+    };
+  }
+
+  public static Code[] resolveBody(
+      final List<Statement> statements,
+      final Scope scope,
+      final Function<String, Program> programs) {
+    final Code[] body = new Code[statements.size()];
+    for (int i = 0; i < body.length; ++i) {
+      body[i] = resolve(statements.get(i), scope, programs);
+    }
+    return Fuser.fuse(Inliner.inline(body, scope));
+  }
+
+  /**
+   * Checks that each call in `statements` is to a program defined (by `params`, which gives its
+   * params, or `null`) to take as many params as it passes args, as linking it would, without
+   * resolving anything.
+   */
+  public static void checkCalls(
+      final List<Statement> statements, final Function<String, List<String>> params) {
+    for (Statement statement : statements) {
+      switch (statement) {
+        case AssignCall(_, String program, List<String> args) ->
+            checkCall(program, params.apply(program), args.size());
+        case Loop(_, List<Statement> body) -> checkCalls(body, params);
+        default -> {}
+      }
+    }
+  }
+
+  private static Program link(
+      final String name, final int argc, final Function<String, Program> programs) {
+    final Program program = programs.apply(name);
+    checkCall(name, program != null ? program.params() : null, argc);
+    return program;
+  }
+
+  private static void checkCall(final String name, final List<String> params, final int argc) {
+    if (params == null) {
+      throw new CompilerException("program `" + name + "` has not been defined yet");
+    }
+    if (params.size() != argc) {
+      throw new CompilerException(
+          "program `"
+              + name
+              + "` defined to take "
+              + params.size()
+              + " params, but called with "
+              + argc
+              + " args");
+    }
+  }
+
+  // literals are folded into the texts between variables, including the separating spaces.
+  private static Code.Print resolvePrint(final List<Token> printTokens, final Scope scope) {
+    final List<String> texts = new ArrayList<>();
+    final List<Integer> slots = new ArrayList<>();
+    final StringBuilder sb = new StringBuilder();
+    boolean wasLastTokenString = true;
+    for (Token token : printTokens) {
+      boolean isThisTokenString = (token.kind() == STRING);
+      if (!wasLastTokenString && !isThisTokenString) {
+        sb.append(' ');
+      }
+      switch (token.kind()) {
+        case STRING -> sb.append(token.value());
+        case NUMBER -> sb.append(token.valueInt());
+        case IDENTIFIER -> {
+          texts.add(sb.toString());
+          sb.setLength(0);
+          slots.add(scope.slotOf(token.value()));
+        }
+        default -> sb.append("(unexpected ").append(token.kind().name()).append(')');
+      }
+      wasLastTokenString = isThisTokenString;
+    }
+    texts.add(sb.toString());
+    return new Code.Print(
+        texts.toArray(String[]::new), slots.stream().mapToInt(Integer::intValue).toArray());
+  }
+}
@@ -0,0 +1,73 @@
+package com.davidconneely.looplang.compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns each variable name in a scope (the top level, or one `PROGRAM` body) a fixed slot index
+ * into a primitive `long[]` frame. Slots are handed out in order of first appearance.
+ *
+ * <p>The {@link Inliner} also gives each variable of an inlined program a slot here, keyed by the
+ * program name and its own key (so never found by a variable name), but named as in the program,
+ * for error messages.
+ */
+public final class Scope {
+  private final Map<String, Integer> slots;
+  private final List<String> keys;
+  private final List<String> names;
+  private int inlinedDepth;
+
+  public Scope() {
+    this.slots = new HashMap<>();
+    this.keys = new ArrayList<>();
+    this.names = new ArrayList<>();
+  }
+
+  /** The slot for the variable, allocating the next free slot if it has not been seen before. */
+  public int slotOf(final String name) {
+    return slotOf(name, name);
+  }
+
+  /** The slot for variable `slot` of `program`, when it is inlined into this scope. */
+  int slotOf(final Program program, final int slot) {
+    final Scope scope = program.scope();
+    inlinedDepth = Math.max(inlinedDepth, scope.inlinedDepth + 1);
+    return slotOf(program.name() + "." + scope.keyOf(slot), scope.nameOf(slot));
+  }
+
+  private int slotOf(final String key, final String name) {
+    return slots.computeIfAbsent(
+        key,
+        k -> {
+          keys.add(k);
+          names.add(name);
+          return names.size() - 1;
+        });
+  }
+
+  /** The slot for the variable, or -1 if it has not been seen before (like `List.indexOf`). */
+  public int indexOf(final String name) {
+    final Integer slot = slots.get(name);
+    return slot != null ? slot : -1;
+  }
+
+  public String nameOf(final int slot) {
+    return names.get(slot);
+  }
+
+  /** The name of the variable in `slot`, qualified by the programs it was inlined from. */
+  String keyOf(final int slot) {
+    return keys.get(slot);
+  }
+
+  /** The deepest nesting of programs inlined into this scope (0 if none have been). */
+  int inlinedDepth() {
+    return inlinedDepth;
+  }
+
+  public int size() {
+    return names.size();
+  }
+}
@@ -0,0 +1,36 @@
+package com.davidconneely.looplang.compiler;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The versions of a {@link Program} specialized by the {@link Folder} for calls with some args
+ * known ahead of time, keyed by those args (`null` for any that are not known). Only the first few
+ * are kept, so that a program called with many different args does not keep a version for each:
+ * later calls use the generic version.
+ */
+public final class Specializations {
+  private static final int MAX_SIZE = 16;
+
+  private final Map<List<Integer>, Program> programs;
+
+  Specializations() {
+    this.programs = new HashMap<>();
+  }
+
+  /**
+   * The version of the program for `args`, specializing it if it has not been yet, or `null` if too
+   * many versions have been already.
+   */
+  synchronized Program computeIfAbsent(
+      final List<Integer> args, final Function<List<Integer>, Program> specialize) {
+    Program program = programs.get(args);
+    if (program == null && programs.size() < MAX_SIZE) {
+      program = specialize.apply(args);
+      programs.put(args, program);
+    }
+    return program;
+  }
+}
@@ -0,0 +1,154 @@
+package com.davidconneely.looplang.interpreter;
+
+import static com.davidconneely.looplang.compiler.Code.UNDEFINED;
+
+import com.davidconneely.looplang.compiler.Code;
+import com.davidconneely.looplang.compiler.Program;
+import com.davidconneely.looplang.compiler.Scope;
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * Runtime support shared by the execution engines (including generated bytecode, which is why the
+ * overloads taking plain names and values exist): I/O statements, frames and errors.
+ */
+final class Builtins {
+  private Builtins() {
+    // prevent instantiation.
+  }
+
+  static String format(final Code.Print print, final long[] frame) {
+    final int[] slots = print.slots();
+    final long[] values = new long[slots.length];
+    for (int i = 0; i < slots.length; ++i) {
+      values[i] = frame[slots[i]];
+    }
+    return format(print.texts(), values);
+  }
+
+  static String format(final String[] texts, final long[] values) {
+    final StringBuilder sb = new StringBuilder(texts[0]);
+    for (int i = 0; i < values.length; ++i) {
+      if (values[i] != UNDEFINED) {
+        sb.append(values[i]);
+      } else {
+        sb.append("(undefined)");
+      }
+      sb.append(texts[i + 1]);
+    }
+    return sb.toString();
+  }
+
+  static void print(final Code.Print print, final long[] frame) {
+    IO.println(format(print, frame));
+  }
+
+  static void println(final String[] texts, final long[] values) {
+    IO.println(format(texts, values));
+  }
+
+  static int input(final Code.Input input, final long[] frame, final Scope scope) {
+    return input(format(input.prompt(), frame), scope.nameOf(input.slot()));
+  }
+
+  static int input(final String[] texts, final long[] values, final String variable) {
+    return input(format(texts, values), variable);
+  }
+
+  private static int input(final String prompt, final String variable) {
+    IO.print(prompt);
+    final String line = IO.readln();
+    if (line == null || line.isBlank()) {
+      throw new InterpreterException(
+          "expected non-negative integer input for variable `" + variable + "`");
+    }
+    try {
+      final int value = Integer.parseInt(line.strip());
+      return Math.max(0, value);
+    } catch (NumberFormatException _) {
+      throw new InterpreterException(
+          "invalid integer input `" + line + "` for variable `" + variable + "`");
+    }
+  }
+
+  static int read(final long[] frame, final int slot, final Scope scope) {
+    final long value = frame[slot];
+    if (value == UNDEFINED) {
+      throw undefinedVariable(scope.nameOf(slot));
+    }
+    return (int) value;
+  }
+
+  static int read(final long value, final String variable) {
+    if (value == UNDEFINED) {
+      throw undefinedVariable(variable);
+    }
+    return (int) value;
+  }
+
+  static int loopCount(final long[] frame, final int slot, final Scope scope) {
+    return loopCount(frame[slot], scope.nameOf(slot));
+  }
+
+  static int loopCount(final long value, final String variable) {
+    final int count = read(value, variable);
+    if (count < 0) {
+      throw new InterpreterException(
+          "loop count for variable `" + variable + "` is negative: " + count);
+    }
+    return count;
+  }
+
+  /**
+   * The value of a call to `program` with `args` from `frame`, from the program's {@link
+   * com.davidconneely.looplang.compiler.ClosedForm}, or {@link Code#UNDEFINED} if the call has to
+   * run the body instead.
+   */
+  static long closedForm(final Program program, final long[] frame, final int[] args) {
+    return program.closedForm() != null ? program.closedForm().evaluate(frame, args) : UNDEFINED;
+  }
+
+  /**
+   * Resets `frame` for a linked call: `x0` is zero, the args are copied positionally into the
+   * parameter slots and everything else is undefined. Programs cannot be recursive, so a program is
+   * never running twice at once, and each engine reuses one frame per program.
+   */
+  static long[] enter(
+      final Program program,
+      final long[] frame,
+      final int[] args,
+      final long[] callerFrame,
+      final Scope callerScope) {
+    final int[] paramSlots = program.paramSlots();
+    Arrays.fill(frame, UNDEFINED);
+    frame[Program.RESULT] = 0;
+    for (int i = 0; i < paramSlots.length; ++i) {
+      frame[paramSlots[i]] = read(callerFrame, args[i], callerScope);
+    }
+    return frame;
+  }
+
+  /**
+   * The result of a call of `program` that has been entered into `frame`, got by running `body` on
+   * it, unless the program's {@link com.davidconneely.looplang.compiler.Memo} already has it.
+   */
+  static int call(final Program program, final long[] frame, final ToIntFunction<long[]> body) {
+    return program.memo() != null ? program.memo().call(frame, body) : body.applyAsInt(frame);
+  }
+
+  /** A frame for calls to `program`, to be reset by {@link #enter} before each call. */
+  static long[] newFrame(final Program program) {
+    return new long[program.frameSize()];
+  }
+
+  static InterpreterException undefinedVariable(final String variable) {
+    return new InterpreterException("variable `" + variable + "` has not been defined yet");
+  }
+
+  static InterpreterException nestedProgram(final String name, final String outer) {
+    // currently the language syntax definition doesn't disallow this, so catch at runtime.
+    // TODO: should probably be part of the language syntax, so can be a ParserException.
+    return new InterpreterException(
+        "cannot nest program `" + name + "` inside outer program `" + outer + "`");
+  }
+}
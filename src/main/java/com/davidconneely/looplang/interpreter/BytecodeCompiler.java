@@ -0,0 +1,634 @@
+package com.davidconneely.looplang.interpreter;
+
+import static java.lang.constant.ConstantDescs.CD_String;
+import static java.lang.constant.ConstantDescs.CD_int;
+import static java.lang.constant.ConstantDescs.CD_long;
+import static java.lang.constant.ConstantDescs.CD_void;
+
+import com.davidconneely.looplang.compiler.ClosedForm;
+import com.davidconneely.looplang.compiler.Code;
+import com.davidconneely.looplang.compiler.Program;
+import com.davidconneely.looplang.compiler.Scope;
+import java.lang.classfile.ClassBuilder;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.classfile.TypeKind;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.DynamicConstantDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Compiles resolved code to JVM bytecode with the `java.lang.classfile` API, and loads each result
+ * as a hidden class. Each `PROGRAM` becomes a static method `(int...)int` whose variables are JVM
+ * `long` locals (holding {@link Code#UNDEFINED} until they are assigned, and read without checking
+ * for it where they are definitely assigned on every path); `LOOP` becomes a counted loop over a
+ * local. Each compiler compiles a program once, into a class of its own, however many programs and
+ * top-level statements call it; a call becomes an `invokeExact` of the callee's handle, passed to
+ * the class as class data, which the JIT treats as a constant, so it can still inline across calls.
+ * Loops that might be affine are handed to the {@link LoopAccelerator} first, with the {@link
+ * Code.Loop} also passed as class data. A program with a {@link ClosedForm} evaluates it on entry,
+ * and only runs its body if that fails.
+ */
+final class BytecodeCompiler {
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+  private static final ClassDesc CD_COMPILED =
+      ClassDesc.of(BytecodeCompiler.class.getPackageName(), "CompiledCode");
+  private static final ClassDesc CD_BUILTINS = ClassDesc.of(Builtins.class.getName());
+  private static final ClassDesc CD_LOOP_ACCELERATOR =
+      ClassDesc.of(LoopAccelerator.class.getName());
+  private static final ClassDesc CD_LOOP = ClassDesc.of(Code.Loop.class.getName());
+  private static final ClassDesc CD_CLOSED_FORM = ClassDesc.of(ClosedForm.class.getName());
+  private static final ClassDesc CD_INTERPRETER_EXCEPTION =
+      ClassDesc.of(InterpreterException.class.getName());
+  private static final String RUN = "run";
+  private static final MethodTypeDesc MTD_READ = MethodTypeDesc.of(CD_int, CD_long, CD_String);
+  private static final MethodTypeDesc MTD_PRINTLN =
+      MethodTypeDesc.of(CD_void, CD_String.arrayType(), CD_long.arrayType());
+  private static final MethodTypeDesc MTD_INPUT =
+      MethodTypeDesc.of(CD_int, CD_String.arrayType(), CD_long.arrayType(), CD_String);
+  private static final MethodTypeDesc MTD_NESTED_PROGRAM =
+      MethodTypeDesc.of(CD_INTERPRETER_EXCEPTION, CD_String, CD_String);
+  private static final MethodTypeDesc MTD_ACCELERATE =
+      MethodTypeDesc.of(CD_int, CD_LOOP, CD_int, CD_long.arrayType());
+  private static final MethodTypeDesc MTD_BINARY = MethodTypeDesc.of(CD_long, CD_long, CD_long);
+  private static final MethodTypeDesc MTD_SELECT =
+      MethodTypeDesc.of(CD_long, CD_long, CD_long, CD_long);
+  private static final MethodTypeDesc MTD_RESULT = MethodTypeDesc.of(CD_long, CD_long, CD_long);
+
+  // the compiled form of each program compiled so far, or `null` if it cannot be compiled.
+  private final Map<Program, Compiled> programs = new IdentityHashMap<>();
+
+  /**
+   * A compiled program: `entry` has type `(long[])int`, taking a frame set up by {@link
+   * Builtins#enter} and returning `x0`, and `direct` takes the args as `int`s.
+   */
+  record Compiled(MethodHandle entry, MethodHandle direct) {}
+
+  /**
+   * Compiles a program, the first time it is asked for, or returns `null` if it cannot be compiled
+   * (see {@link #define}).
+   */
+  Compiled compile(final Program program) {
+    if (!programs.containsKey(program)) {
+      programs.put(program, compileProgram(program));
+    }
+    return programs.get(program);
+  }
+
+  private Compiled compileProgram(final Program program) {
+    final List<Object> constants = new ArrayList<>();
+    final Map<Program, Integer> callees = new IdentityHashMap<>();
+    for (Code inner : program.body()) {
+      if (!addCallees(inner, callees, constants)) {
+        return null;
+      }
+    }
+    final String name = "program$" + program.name();
+    final MethodHandles.Lookup lookup =
+        define(
+            cb -> {
+              cb.withMethodBody(
+                  name,
+                  descriptor(program),
+                  ClassFile.ACC_STATIC | ClassFile.ACC_PRIVATE,
+                  code -> emitProgram(code, program, callees, constants));
+              cb.withMethodBody(
+                  RUN,
+                  MethodTypeDesc.of(CD_int, CD_long.arrayType()),
+                  ClassFile.ACC_STATIC,
+                  code -> {
+                    for (int i = 0; i < program.paramSlots().length; ++i) {
+                      code.aload(0).loadConstant(program.paramSlots()[i]).laload().l2i();
+                    }
+                    code.invokestatic(CD_COMPILED, name, descriptor(program));
+                    code.ireturn();
+                  });
+            },
+            constants);
+    if (lookup == null) {
+      return null;
+    }
+    return new Compiled(
+        find(lookup, RUN, MethodType.methodType(int.class, long[].class)),
+        find(
+            lookup,
+            name,
+            MethodType.methodType(
+                int.class, Collections.nCopies(program.paramSlots().length, int.class))));
+  }
+
+  /**
+   * Compiles top-level code (which must not contain a {@link Code.Define}) to a handle of type
+   * `(long[])void` that runs it against the frame for `scope`, or `null` if it cannot be compiled.
+   */
+  MethodHandle compile(final Code code, final Scope scope) {
+    final List<Object> constants = new ArrayList<>();
+    final Map<Program, Integer> callees = new IdentityHashMap<>();
+    if (!addCallees(code, callees, constants)) {
+      return null;
+    }
+    final MethodHandles.Lookup lookup =
+        define(
+            cb ->
+                cb.withMethodBody(
+                    RUN,
+                    MethodTypeDesc.of(CD_void, CD_long.arrayType()),
+                    ClassFile.ACC_STATIC,
+                    cob -> {
+                      new Emitter(cob, callees, constants, scope, null, -1, 1).emit(code);
+                      cob.return_();
+                    }),
+            constants);
+    return lookup != null
+        ? find(lookup, RUN, MethodType.methodType(void.class, long[].class))
+        : null;
+  }
+
+  /**
+   * Compiles the body of a loop to a handle of type `(long[], int)void` that runs it the given
+   * number of times against the frame for `scope`, to take over a loop that is already running.
+   * `program` is the program containing the loop, or `null` at the top level (where the body must
+   * not contain a {@link Code.Define}). Returns `null` if the loop cannot be compiled.
+   */
+  MethodHandle compileLoop(final Code.Loop loop, final Scope scope, final Program program) {
+    final List<Object> constants = new ArrayList<>();
+    final Map<Program, Integer> callees = new IdentityHashMap<>();
+    if (!addCallees(loop, callees, constants)) {
+      return null;
+    }
+    final MethodHandles.Lookup lookup =
+        define(
+            cb ->
+                cb.withMethodBody(
+                    RUN,
+                    MethodTypeDesc.of(CD_void, CD_long.arrayType(), CD_int),
+                    ClassFile.ACC_STATIC,
+                    cob -> {
+                      new Emitter(cob, callees, constants, scope, program, -1, 2)
+                          .emitCountedLoop(1, loop.body());
+                      cob.return_();
+                    }),
+            constants);
+    return lookup != null
+        ? find(lookup, RUN, MethodType.methodType(void.class, long[].class, int.class))
+        : null;
+  }
+
+  /** Whether the code contains a {@link Code.Define}, so cannot be compiled at the top level. */
+  static boolean containsDefine(final Code code) {
+    return switch (code) {
+      case Code.Define _ -> true;
+      case Code.Loop(_, Code[] body) -> {
+        for (Code inner : body) {
+          if (containsDefine(inner)) {
+            yield true;
+          }
+        }
+        yield false;
+      }
+      default -> false;
+    };
+  }
+
+  /**
+   * Builds a class with `handler` and defines it, with `constants` as its class data, or returns
+   * `null` if it cannot be built or defined: the JVM limits each method to 64KB of code (and 65,535
+   * locals), which a long enough body exceeds. Callers then carry on interpreting the code.
+   */
+  private static MethodHandles.Lookup define(
+      final Consumer<ClassBuilder> handler, final List<Object> constants) {
+    try {
+      final byte[] bytes = ClassFile.of().build(CD_COMPILED, handler);
+      return LOOKUP.defineHiddenClassWithClassData(bytes, List.copyOf(constants), true);
+    } catch (IllegalArgumentException | LinkageError e) {
+      return null;
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("cannot load compiled code", e);
+    }
+  }
+
+  private static MethodHandle find(
+      final MethodHandles.Lookup lookup, final String name, final MethodType type) {
+    try {
+      return lookup.findStatic(lookup.lookupClass(), name, type);
+    } catch (IllegalAccessException | NoSuchMethodException e) {
+      throw new IllegalStateException("cannot load compiled code", e);
+    }
+  }
+
+  /**
+   * Compiles each program called in `code` (programs cannot be recursive, so this always
+   * terminates) and adds its direct handle to `constants`, at the index given in `callees`. Returns
+   * `false` if one cannot be compiled.
+   */
+  private boolean addCallees(
+      final Code code, final Map<Program, Integer> callees, final List<Object> constants) {
+    switch (code) {
+      case Code.Loop(_, Code[] body) -> {
+        for (Code inner : body) {
+          if (!addCallees(inner, callees, constants)) {
+            return false;
+          }
+        }
+      }
+      case Code.Call(_, Program program, _) -> {
+        if (!callees.containsKey(program)) {
+          final Compiled compiled = compile(program);
+          if (compiled == null) {
+            return false;
+          }
+          callees.put(program, constants.size());
+          constants.add(compiled.direct());
+        }
+      }
+      case Code.Zero _,
+          Code.Increment _,
+          Code.Set _,
+          Code.Add _,
+          Code.Copy _,
+          Code.Argument _,
+          Code.Result _,
+          Code.AddVariable _,
+          Code.Print _,
+          Code.Input _,
+          Code.Define _ -> {}
+    }
+    return true;
+  }
+
+  private static MethodTypeDesc descriptor(final Program program) {
+    final ClassDesc[] params = new ClassDesc[program.paramSlots().length];
+    Arrays.fill(params, CD_int);
+    return MethodTypeDesc.of(CD_int, params);
+  }
+
+  // locals: the params, then one (two-word) local per frame slot, then the loop counters.
+  private static void emitProgram(
+      final CodeBuilder code,
+      final Program program,
+      final Map<Program, Integer> callees,
+      final List<Object> constants) {
+    final int[] paramSlots = program.paramSlots();
+    if (program.closedForm() != null) {
+      final Label body = code.newLabel();
+      emitClosedForm(code, program.closedForm().value());
+      emitClosedForm(code, program.closedForm().bound());
+      code.invokestatic(CD_CLOSED_FORM, "result", MTD_RESULT);
+      code.dup2().loadConstant(Code.UNDEFINED).lcmp().ifeq(body).l2i().ireturn();
+      code.labelBinding(body);
+      code.pop2();
+    }
+    final int base = paramSlots.length;
+    for (int slot = 0; slot < program.frameSize(); ++slot) {
+      code.loadConstant(slot == Program.RESULT ? 0L : Code.UNDEFINED).lstore(base + 2 * slot);
+    }
+    for (int i = 0; i < paramSlots.length; ++i) {
+      code.iload(i).i2l().lstore(base + 2 * paramSlots[i]);
+    }
+    final Emitter emitter =
+        new Emitter(
+            code,
+            callees,
+            constants,
+            program.scope(),
+            program,
+            base,
+            base + 2 * program.frameSize());
+    // callers only pass args that they have checked are defined.
+    emitter.assumeDefined(Program.RESULT);
+    for (int slot : paramSlots) {
+      emitter.assumeDefined(slot);
+    }
+    for (Code inner : program.body()) {
+      emitter.emit(inner);
+    }
+    code.lload(base + 2 * Program.RESULT).l2i().ireturn();
+  }
+
+  // emits the evaluation of `expr` as a `long`, its variables being the params in locals from 0.
+  private static void emitClosedForm(final CodeBuilder code, final ClosedForm.Expr expr) {
+    switch (expr) {
+      case ClosedForm.Constant(long value) -> code.loadConstant(value);
+      case ClosedForm.Variable(int id) -> code.iload(id).i2l();
+      case ClosedForm.Sum(ClosedForm.Expr left, ClosedForm.Expr right) ->
+          emitClosedForm(code, "sum", left, right);
+      case ClosedForm.Product(ClosedForm.Expr left, ClosedForm.Expr right) ->
+          emitClosedForm(code, "product", left, right);
+      case ClosedForm.Monus(ClosedForm.Expr left, ClosedForm.Expr right) ->
+          emitClosedForm(code, "monus", left, right);
+      case ClosedForm.Power(ClosedForm.Expr base, ClosedForm.Expr exponent) ->
+          emitClosedForm(code, "power", base, exponent);
+      case ClosedForm.Max(ClosedForm.Expr left, ClosedForm.Expr right) ->
+          emitClosedForm(code, "max", left, right);
+      case ClosedForm.Select(
+              ClosedForm.Expr selector,
+              ClosedForm.Expr ifZero,
+              ClosedForm.Expr ifPositive) -> {
+        emitClosedForm(code, selector);
+        emitClosedForm(code, ifZero);
+        emitClosedForm(code, ifPositive);
+        code.invokestatic(CD_CLOSED_FORM, "select", MTD_SELECT);
+      }
+    }
+  }
+
+  private static void emitClosedForm(
+      final CodeBuilder code,
+      final String operation,
+      final ClosedForm.Expr left,
+      final ClosedForm.Expr right) {
+    emitClosedForm(code, left);
+    emitClosedForm(code, right);
+    code.invokestatic(CD_CLOSED_FORM, operation, MTD_BINARY);
+  }
+
+  /**
+   * Emits the code of one method. Frame slots are `long` JVM locals from `base` upwards, or (if
+   * `base` is negative) elements of the `long[]` frame passed as local 0. Values are computed as
+   * `int`s, and widened as they are stored.
+   */
+  private static final class Emitter {
+    private final CodeBuilder code;
+    private final Map<Program, Integer> callees;
+    private final List<Object> constants;
+    private final Scope scope;
+    private final Program program;
+    private final int base;
+    private int nextLocal;
+    // slots definitely holding a value other than `UNDEFINED` at the point being emitted, whatever
+    // path led there, which are read without checking.
+    private BitSet defined;
+
+    Emitter(
+        final CodeBuilder code,
+        final Map<Program, Integer> callees,
+        final List<Object> constants,
+        final Scope scope,
+        final Program program,
+        final int base,
+        final int nextLocal) {
+      this.code = code;
+      this.callees = callees;
+      this.constants = constants;
+      this.scope = scope;
+      this.program = program;
+      this.base = base;
+      this.nextLocal = nextLocal;
+      this.defined = new BitSet();
+    }
+
+    /** Notes that `slot` is defined on entry (as `x0` and the params of a program are). */
+    void assumeDefined(final int slot) {
+      defined.set(slot);
+    }
+
+    void emit(final Code instruction) {
+      switch (instruction) {
+        case Code.Zero(int slot) -> {
+          beginStore(slot);
+          code.iconst_0();
+          endStore(slot);
+        }
+        case Code.Increment(int slot) -> {
+          beginStore(slot);
+          loadChecked(slot);
+          code.iconst_1().iadd();
+          endStore(slot);
+        }
+        case Code.Set(int slot, int value) -> {
+          beginStore(slot);
+          code.loadConstant(value);
+          endStore(slot);
+        }
+        case Code.Add(int slot, int value) -> {
+          beginStore(slot);
+          loadChecked(slot);
+          code.loadConstant(value).iadd();
+          endStore(slot);
+        }
+        case Code.Copy(int slot, int source) -> {
+          beginStore(slot);
+          loadCount(source);
+          endStore(slot);
+        }
+        case Code.Argument(int slot, int source) -> {
+          beginStore(slot);
+          loadChecked(source);
+          endStore(slot);
+        }
+        case Code.Result(int slot, int source) -> {
+          beginStore(slot);
+          load(source);
+          endStoreAsIs(slot);
+        }
+        case Code.AddVariable(int slot, int source) -> {
+          loadCount(source);
+          final int count = nextLocal++;
+          final Label skip = code.newLabel();
+          code.istore(count).iload(count).ifle(skip);
+          beginStore(slot);
+          loadChecked(slot);
+          code.iload(count).iadd();
+          endStore(slot);
+          code.labelBinding(skip);
+          --nextLocal;
+        }
+        case Code.Loop loop -> {
+          loadCount(loop.slot());
+          final int counter = nextLocal++;
+          code.istore(counter);
+          if (LoopAccelerator.accepts(loop)) {
+            emitAccelerate(loop, counter);
+          }
+          emitCountedLoop(counter, loop.body());
+          --nextLocal;
+        }
+        case Code.Call(int slot, Program callee, int[] args) -> {
+          beginStore(slot);
+          code.loadConstant(classData(ConstantDescs.CD_MethodHandle, callees.get(callee)));
+          for (int arg : args) {
+            loadChecked(arg);
+          }
+          code.invokevirtual(ConstantDescs.CD_MethodHandle, "invokeExact", descriptor(callee));
+          endStore(slot);
+        }
+        case Code.Print(String[] texts, int[] slots) -> {
+          loadTexts(texts);
+          loadValues(slots);
+          code.invokestatic(CD_BUILTINS, "println", MTD_PRINTLN);
+        }
+        case Code.Input(int slot, Code.Print prompt) -> {
+          beginStore(slot);
+          loadTexts(prompt.texts());
+          loadValues(prompt.slots());
+          code.loadConstant(scope.nameOf(slot)).invokestatic(CD_BUILTINS, "input", MTD_INPUT);
+          endStore(slot);
+        }
+        case Code.Define define -> {
+          code.loadConstant(define.definition().program())
+              .loadConstant(program.name())
+              .invokestatic(CD_BUILTINS, "nestedProgram", MTD_NESTED_PROGRAM)
+              .athrow();
+        }
+      }
+      track(instruction);
+    }
+
+    // updates `defined` after `instruction`. Every value computed as an `int` is defined (as
+    // `UNDEFINED` is outside the range of `int`), and a checked read fails unless its slot is
+    // defined, so only a result copied as it is can make a slot undefined; an `AddVariable` that
+    // may add nothing leaves it as it was. Loops are handled by `emitCountedLoop`.
+    private void track(final Code instruction) {
+      switch (instruction) {
+        case Code.Zero(int slot) -> defined.set(slot);
+        case Code.Increment(int slot) -> defined.set(slot);
+        case Code.Set(int slot, _) -> defined.set(slot);
+        case Code.Add(int slot, _) -> defined.set(slot);
+        case Code.Copy(int slot, _) -> defined.set(slot);
+        case Code.Argument(int slot, _) -> defined.set(slot);
+        case Code.Result(int slot, int source) -> defined.set(slot, defined.get(source));
+        case Code.Call(int slot, _, _) -> defined.set(slot);
+        case Code.Input input -> defined.set(input.slot());
+        case Code.AddVariable _, Code.Loop _, Code.Print _, Code.Define _ -> {}
+      }
+    }
+
+    /** Emits `body`, run as many times as the value of the local `counter` (which it consumes). */
+    void emitCountedLoop(final int counter, final Code[] body) {
+      // each iteration (and the code after the loop, which may run none) knows what is defined
+      // before the loop, except what a copied result in the body may leave undefined.
+      clearResults(body);
+      final BitSet head = (BitSet) defined.clone();
+      final Label top = code.newLabel();
+      final Label end = code.newLabel();
+      code.labelBinding(top);
+      code.iload(counter).ifle(end);
+      for (Code inner : body) {
+        emit(inner);
+      }
+      code.iinc(counter, -1).goto_(top);
+      code.labelBinding(end);
+      defined = head;
+    }
+
+    private void clearResults(final Code[] body) {
+      for (Code inner : body) {
+        switch (inner) {
+          case Code.Result(int slot, _) -> defined.clear(slot);
+          case Code.Loop(_, Code[] innerBody) -> clearResults(innerBody);
+          default -> {}
+        }
+      }
+    }
+
+    /**
+     * Emits a call to the {@link LoopAccelerator} if the local `counter` is large enough, taking
+     * the iterations it runs off `counter`. Variables in JVM locals are passed in a temporary
+     * frame.
+     */
+    private void emitAccelerate(final Code.Loop loop, final int counter) {
+      final Label skip = code.newLabel();
+      code.iload(counter).loadConstant(LoopAccelerator.MIN_COUNT).if_icmplt(skip);
+      final int frame = base >= 0 ? nextLocal++ : 0;
+      if (base >= 0) {
+        code.loadConstant(scope.size()).newarray(TypeKind.LONG).astore(frame);
+        for (int slot = 0; slot < scope.size(); ++slot) {
+          code.aload(frame).loadConstant(slot).lload(base + 2 * slot).lastore();
+        }
+      }
+      constants.add(loop);
+      code.iload(counter)
+          .loadConstant(classData(CD_LOOP, constants.size() - 1))
+          .iload(counter)
+          .aload(frame)
+          .invokestatic(CD_LOOP_ACCELERATOR, "run", MTD_ACCELERATE)
+          .isub()
+          .istore(counter);
+      if (base >= 0) {
+        for (int slot = 0; slot < scope.size(); ++slot) {
+          code.aload(frame).loadConstant(slot).laload().lstore(base + 2 * slot);
+        }
+        --nextLocal;
+      }
+      code.labelBinding(skip);
+    }
+
+    // the element of the class data at `index`.
+    private static DynamicConstantDesc<?> classData(final ClassDesc type, final int index) {
+      return DynamicConstantDesc.ofNamed(
+          ConstantDescs.BSM_CLASS_DATA_AT, ConstantDescs.DEFAULT_NAME, type, index);
+    }
+
+    // pushes the `long` in `slot`, as it is.
+    private void load(final int slot) {
+      if (base >= 0) {
+        code.lload(base + 2 * slot);
+      } else {
+        code.aload(0).loadConstant(slot).laload();
+      }
+    }
+
+    private void loadChecked(final int slot) {
+      load(slot);
+      if (defined.get(slot)) {
+        code.l2i();
+      } else {
+        code.loadConstant(scope.nameOf(slot)).invokestatic(CD_BUILTINS, "read", MTD_READ);
+      }
+    }
+
+    private void loadCount(final int slot) {
+      load(slot);
+      code.loadConstant(scope.nameOf(slot)).invokestatic(CD_BUILTINS, "loopCount", MTD_READ);
+    }
+
+    private void beginStore(final int slot) {
+      if (base < 0) {
+        code.aload(0).loadConstant(slot);
+      }
+    }
+
+    // stores the `int` on the stack in `slot`.
+    private void endStore(final int slot) {
+      code.i2l();
+      endStoreAsIs(slot);
+    }
+
+    private void endStoreAsIs(final int slot) {
+      if (base >= 0) {
+        code.lstore(base + 2 * slot);
+      } else {
+        code.lastore();
+      }
+    }
+
+    private void loadTexts(final String[] texts) {
+      code.loadConstant(texts.length).anewarray(CD_String);
+      for (int i = 0; i < texts.length; ++i) {
+        code.dup().loadConstant(i).loadConstant(texts[i]).aastore();
+      }
+    }
+
+    private void loadValues(final int[] slots) {
+      code.loadConstant(slots.length).newarray(TypeKind.LONG);
+      for (int i = 0; i < slots.length; ++i) {
+        code.dup().loadConstant(i);
+        load(slots[i]);
+        code.lastore();
+      }
+    }
+  }
+}
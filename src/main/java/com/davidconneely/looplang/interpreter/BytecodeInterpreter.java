@@ -0,0 +1,88 @@
+package com.davidconneely.looplang.interpreter;
+
+import com.davidconneely.looplang.compiler.Code;
+import com.davidconneely.looplang.compiler.Program;
+import com.davidconneely.looplang.compiler.Resolver;
+import com.davidconneely.looplang.statement.Definition;
+import com.davidconneely.looplang.statement.Statement;
+import java.lang.invoke.MethodHandle;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs programs and top-level loops as JVM bytecode generated by {@link BytecodeCompiler}. Each
+ * program is compiled on its first call from the top level; straight-line top-level statements are
+ * not worth a class, so they are left to a {@link DefaultInterpreter}, as are calls and loops that
+ * cannot be compiled.
+ */
+final class BytecodeInterpreter implements Interpreter {
+  private final InterpreterContext context;
+  private final DefaultInterpreter fallback;
+  private final BytecodeCompiler compiler;
+  private final Map<Program, long[]> frames;
+
+  BytecodeInterpreter(final InterpreterContext context) {
+    this.context = context;
+    this.fallback = new DefaultInterpreter(context);
+    this.compiler = new BytecodeCompiler();
+    this.frames = new IdentityHashMap<>();
+  }
+
+  @Override
+  public void interpret(final Statement statement) {
+    if (statement instanceof Definition(String name, List<String> params, List<Statement> body)) {
+      context.setProgram(name, params, body);
+      return;
+    }
+    final Frame frame = Frame.of(context);
+    final Code code = Resolver.resolve(statement, frame.scope(), context::getProgram);
+    switch (code) {
+      case Code.Call(int slot, Program program, int[] args) -> {
+        final BytecodeCompiler.Compiled compiled = compiler.compile(program);
+        if (compiled == null) {
+          fallback.execute(code, frame);
+          return;
+        }
+        final long[] values = frame.values();
+        final long[] calleeFrame =
+            Builtins.enter(
+                program,
+                frames.computeIfAbsent(program, Builtins::newFrame),
+                args,
+                values,
+                frame.scope());
+        values[slot] = invoke(compiled.entry(), calleeFrame);
+      }
+      case Code.Loop loop when !BytecodeCompiler.containsDefine(loop) -> {
+        final MethodHandle compiled = compiler.compile(loop, frame.scope());
+        if (compiled != null) {
+          run(compiled, frame.values());
+        } else {
+          fallback.execute(code, frame);
+        }
+      }
+      default -> fallback.execute(code, frame);
+    }
+  }
+
+  private static int invoke(final MethodHandle program, final long[] frame) {
+    try {
+      return (int) program.invokeExact(frame);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException(t);
+    }
+  }
+
+  private static void run(final MethodHandle topLevel, final long[] frame) {
+    try {
+      topLevel.invokeExact(frame);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException(t);
+    }
+  }
+}
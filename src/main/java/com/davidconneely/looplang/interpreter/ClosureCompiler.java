@@ -0,0 +1,166 @@
+package com.davidconneely.looplang.interpreter;
+
+import com.davidconneely.looplang.compiler.ClosedForm;
+import com.davidconneely.looplang.compiler.Code;
+import com.davidconneely.looplang.compiler.Program;
+import com.davidconneely.looplang.compiler.Scope;
+import com.davidconneely.looplang.statement.Definition;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Compiles resolved code, once, to a tree of small closures with their slots, variable names and
+ * callees already bound, so that running it is just a chain of calls that the JIT can inline.
+ * Called programs are compiled along with their callers and shared between call sites, as is the
+ * frame each one runs in.
+ */
+final class ClosureCompiler {
+  /** Compiled code, run against a `long[]` frame. */
+  @FunctionalInterface
+  interface Closure {
+    void run(long[] frame);
+  }
+
+  private static final Closure NOTHING = _ -> {};
+
+  private final InterpreterContext context;
+  private final Map<Program, Closure> programs;
+  private final Map<Program, long[]> frames;
+
+  ClosureCompiler(final InterpreterContext context) {
+    this.context = context;
+    this.programs = new IdentityHashMap<>();
+    this.frames = new IdentityHashMap<>();
+  }
+
+  /** Compiles top-level code, resolved against `scope`. */
+  Closure compile(final Code code, final Scope scope) {
+    return compile(code, scope, null);
+  }
+
+  private Closure compile(final Program program) {
+    Closure body = programs.get(program);
+    if (body == null) {
+      body = compile(program.body(), program.scope(), program);
+      programs.put(program, body);
+    }
+    return body;
+  }
+
+  /** `program` is the program being compiled, or `null` for top-level code. */
+  private Closure compile(final Code[] body, final Scope scope, final Program program) {
+    final Closure[] closures = new Closure[body.length];
+    for (int i = 0; i < body.length; ++i) {
+      closures[i] = compile(body[i], scope, program);
+    }
+    return switch (closures.length) {
+      case 0 -> NOTHING;
+      case 1 -> closures[0];
+      case 2 -> {
+        final Closure first = closures[0];
+        final Closure second = closures[1];
+        yield frame -> {
+          first.run(frame);
+          second.run(frame);
+        };
+      }
+      default ->
+          frame -> {
+            for (Closure closure : closures) {
+              closure.run(frame);
+            }
+          };
+    };
+  }
+
+  private Closure compile(final Code code, final Scope scope, final Program program) {
+    return switch (code) {
+      case Code.Zero(int slot) -> frame -> frame[slot] = 0;
+      case Code.Increment(int slot) -> {
+        final String variable = scope.nameOf(slot);
+        yield frame -> frame[slot] = Builtins.read(frame[slot], variable) + 1;
+      }
+      case Code.Loop loop -> {
+        final int slot = loop.slot();
+        final String variable = scope.nameOf(slot);
+        final Closure body = compile(loop.body(), scope, program);
+        if (!LoopAccelerator.accepts(loop)) {
+          yield frame -> {
+            for (int i = Builtins.loopCount(frame[slot], variable); i > 0; --i) {
+              body.run(frame);
+            }
+          };
+        }
+        yield frame -> {
+          final int count = Builtins.loopCount(frame[slot], variable);
+          for (int i = count - LoopAccelerator.run(loop, count, frame); i > 0; --i) {
+            body.run(frame);
+          }
+        };
+      }
+      case Code.Set(int slot, int value) -> frame -> frame[slot] = value;
+      case Code.Add(int slot, int value) -> {
+        final String variable = scope.nameOf(slot);
+        yield frame -> frame[slot] = Builtins.read(frame[slot], variable) + value;
+      }
+      case Code.Copy(int slot, int source) -> {
+        final String variable = scope.nameOf(source);
+        yield frame -> frame[slot] = Builtins.loopCount(frame[source], variable);
+      }
+      case Code.Argument(int slot, int source) -> {
+        final String variable = scope.nameOf(source);
+        yield frame -> frame[slot] = Builtins.read(frame[source], variable);
+      }
+      case Code.Result(int slot, int source) -> frame -> frame[slot] = frame[source];
+      case Code.AddVariable(int slot, int source) -> {
+        final String variable = scope.nameOf(slot);
+        final String sourceVariable = scope.nameOf(source);
+        yield frame -> {
+          final int count = Builtins.loopCount(frame[source], sourceVariable);
+          if (count > 0) {
+            frame[slot] = Builtins.read(frame[slot], variable) + count;
+          }
+        };
+      }
+      case Code.Call(int slot, Program callee, int[] args) -> {
+        final Closure closure = compile(callee);
+        final ToIntFunction<long[]> body =
+            f -> {
+              closure.run(f);
+              return (int) f[Program.RESULT];
+            };
+        final long[] calleeFrame = frames.computeIfAbsent(callee, Builtins::newFrame);
+        final ClosedForm closedForm = callee.closedForm();
+        if (closedForm != null) {
+          yield frame -> {
+            final long value = closedForm.evaluate(frame, args);
+            if (value != Code.UNDEFINED) {
+              frame[slot] = value;
+            } else {
+              frame[slot] =
+                  Builtins.call(
+                      callee, Builtins.enter(callee, calleeFrame, args, frame, scope), body);
+            }
+          };
+        }
+        yield frame ->
+            frame[slot] =
+                Builtins.call(
+                    callee, Builtins.enter(callee, calleeFrame, args, frame, scope), body);
+      }
+      case Code.Print print -> frame -> Builtins.print(print, frame);
+      case Code.Input input -> frame -> frame[input.slot()] = Builtins.input(input, frame, scope);
+      case Code.Define(Definition definition) -> {
+        if (program != null) {
+          final String outer = program.name();
+          yield frame -> {
+            throw Builtins.nestedProgram(definition.program(), outer);
+          };
+        }
+        yield frame ->
+            context.setProgram(definition.program(), definition.params(), definition.body());
+      }
+    };
+  }
+}
@@ -0,0 +1,33 @@
+package com.davidconneely.looplang.interpreter;
+
+import com.davidconneely.looplang.compiler.Resolver;
+import com.davidconneely.looplang.statement.Definition;
+import com.davidconneely.looplang.statement.Statement;
+import java.util.List;
+
+/**
+ * Runs each statement as a tree of closures from {@link ClosureCompiler}. Programs are compiled
+ * with the first statement that calls them, and reused; nothing is generated or class-loaded, so
+ * this sits between {@link DefaultInterpreter} and {@link BytecodeInterpreter}.
+ */
+final class ClosureInterpreter implements Interpreter {
+  private final InterpreterContext context;
+  private final ClosureCompiler compiler;
+
+  ClosureInterpreter(final InterpreterContext context) {
+    this.context = context;
+    this.compiler = new ClosureCompiler(context);
+  }
+
+  @Override
+  public void interpret(final Statement statement) {
+    if (statement instanceof Definition(String name, List<String> params, List<Statement> body)) {
+      context.setProgram(name, params, body);
+      return;
+    }
+    final Frame frame = Frame.of(context);
+    compiler
+        .compile(Resolver.resolve(statement, frame.scope(), context::getProgram), frame.scope())
+        .run(frame.values());
+  }
+}
@@ -1,16 +1,112 @@
 package com.davidconneely.looplang.interpreter;
 
+import com.davidconneely.looplang.compiler.Code;
+import com.davidconneely.looplang.compiler.Program;
+import com.davidconneely.looplang.compiler.Resolver;
+import com.davidconneely.looplang.compiler.Scope;
+import com.davidconneely.looplang.statement.Definition;
 import com.davidconneely.looplang.statement.Statement;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
 
+/**
+ * Resolves each statement against the scope of its context, then walks the resolved {@link Code}
+ * over primitive `long[]` frames (one per program, reused by every call to it), so variable access
+ * is an array index rather than a hash lookup.
+ */
 final class DefaultInterpreter implements Interpreter {
   private final InterpreterContext context;
+  private final Map<Program, long[]> frames;
+  private final Map<Program, ToIntFunction<long[]>> bodies;
 
   DefaultInterpreter(final InterpreterContext context) {
     this.context = context;
+    this.frames = new IdentityHashMap<>();
+    this.bodies = new IdentityHashMap<>();
   }
 
   @Override
   public void interpret(final Statement statement) {
-    statement.interpret(context);
+    if (statement instanceof Definition(String name, List<String> params, List<Statement> body)) {
+      context.setProgram(name, params, body);
+      return;
+    }
+    final Frame frame = Frame.of(context);
+    execute(Resolver.resolve(statement, frame.scope(), context::getProgram), frame);
+  }
+
+  /** Executes code that has already been resolved against the scope of this context's frame. */
+  void execute(final Code code, final Frame frame) {
+    execute(code, frame.values(), frame.scope(), null);
+  }
+
+  /** `program` is the called program, or `null` when executing in this interpreter's context. */
+  private void execute(
+      final Code[] body, final long[] frame, final Scope scope, final Program program) {
+    for (Code code : body) {
+      execute(code, frame, scope, program);
+    }
+  }
+
+  private void execute(
+      final Code code, final long[] frame, final Scope scope, final Program program) {
+    switch (code) {
+      case Code.Zero(int slot) -> frame[slot] = 0;
+      case Code.Increment(int slot) -> frame[slot] = Builtins.read(frame, slot, scope) + 1;
+      case Code.Loop loop -> {
+        final int count = Builtins.loopCount(frame, loop.slot(), scope);
+        for (int i = LoopAccelerator.run(loop, count, frame); i < count; ++i) {
+          execute(loop.body(), frame, scope, program);
+        }
+      }
+      case Code.Set(int slot, int value) -> frame[slot] = value;
+      case Code.Add(int slot, int value) -> frame[slot] = Builtins.read(frame, slot, scope) + value;
+      case Code.Copy(int slot, int source) ->
+          frame[slot] = Builtins.loopCount(frame, source, scope);
+      case Code.Argument(int slot, int source) -> frame[slot] = Builtins.read(frame, source, scope);
+      case Code.Result(int slot, int source) -> frame[slot] = frame[source];
+      case Code.AddVariable(int slot, int source) -> {
+        final int count = Builtins.loopCount(frame, source, scope);
+        if (count > 0) {
+          frame[slot] = Builtins.read(frame, slot, scope) + count;
+        }
+      }
+      case Code.Call(int slot, Program callee, int[] args) -> {
+        final long value = Builtins.closedForm(callee, frame, args);
+        if (value != Code.UNDEFINED) {
+          frame[slot] = value;
+        } else {
+          final long[] calleeFrame =
+              Builtins.enter(
+                  callee, frames.computeIfAbsent(callee, Builtins::newFrame), args, frame, scope);
+          frame[slot] = Builtins.call(callee, calleeFrame, body(callee));
+        }
+      }
+      case Code.Print print -> Builtins.print(print, frame);
+      case Code.Input input -> frame[input.slot()] = Builtins.input(input, frame, scope);
+      case Code.Define(Definition(String name, List<String> params, List<Statement> body)) -> {
+        if (program != null) {
+          throw Builtins.nestedProgram(name, program.name());
+        }
+        context.setProgram(name, params, body);
+      }
+    }
+  }
+
+  // runs the body of `program` on its frame, returning `x0`; made once per program, so that calls
+  // allocate nothing.
+  private ToIntFunction<long[]> body(final Program program) {
+    ToIntFunction<long[]> body = bodies.get(program);
+    if (body == null) {
+      body =
+          frame -> {
+            execute(program.body(), frame, program.scope(), program);
+            return (int) frame[Program.RESULT];
+          };
+      bodies.put(program, body);
+    }
+    return body;
   }
 }
@@ -0,0 +1,15 @@
+package com.davidconneely.looplang.interpreter;
+
+/** The execution engines that {@link InterpreterFactory} can create. */
+public enum Engine {
+  /** Walks the resolved code tree over `long[]` frames; no start-up cost. */
+  DEFAULT,
+  /** Compiles each statement once to a tree of pre-bound closures; no class generation. */
+  CLOSURE,
+  /** Compiles programs (and top-level loops) to JVM bytecode in hidden classes. */
+  BYTECODE,
+  /** Interprets each program until it is hot, then compiles it to JVM bytecode. */
+  TIERED,
+  /** Runs a flat `int[]` instruction stream over a register file; no class generation. */
+  VM
+}
@@ -0,0 +1,61 @@
+package com.davidconneely.looplang.interpreter;
+
+import static com.davidconneely.looplang.compiler.Code.UNDEFINED;
+
+import com.davidconneely.looplang.compiler.Scope;
+import java.util.Arrays;
+import java.util.OptionalInt;
+
+/**
+ * The variables of a context: a {@link Scope} and the `long[]` frame holding the value of each of
+ * its slots. The frame grows when new names are added to the scope, so callers should re-fetch
+ * {@link #values()} after resolving new statements against the scope.
+ */
+final class Frame {
+  private final Scope scope;
+  private long[] values;
+
+  Frame(final Scope scope) {
+    this.scope = scope;
+    this.values = new long[0];
+  }
+
+  static Frame of(final InterpreterContext context) {
+    return switch (context) {
+      case GlobalContext global -> global.frame();
+      case LocalContext local -> local.frame();
+    };
+  }
+
+  Scope scope() {
+    return scope;
+  }
+
+  long[] values() {
+    final int size = scope.size();
+    if (values.length < size) {
+      final int oldLength = values.length;
+      values = Arrays.copyOf(values, Math.max(size, oldLength * 2));
+      Arrays.fill(values, oldLength, values.length, UNDEFINED);
+    }
+    return values;
+  }
+
+  boolean contains(final String name) {
+    return get(name).isPresent();
+  }
+
+  OptionalInt get(final String name) {
+    final int slot = scope.indexOf(name);
+    if (slot < 0) {
+      return OptionalInt.empty();
+    }
+    final long value = values()[slot];
+    return value != UNDEFINED ? OptionalInt.of((int) value) : OptionalInt.empty();
+  }
+
+  void set(final String name, final int value) {
+    final int slot = scope.slotOf(name);
+    values()[slot] = value;
+  }
+}
@@ -1,23 +1,56 @@
 package com.davidconneely.looplang.interpreter;
 
+import com.davidconneely.looplang.compiler.Program;
+import com.davidconneely.looplang.compiler.Resolver;
+import com.davidconneely.looplang.compiler.Scope;
 import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.statement.AssignCall;
+import com.davidconneely.looplang.statement.Definition;
+import com.davidconneely.looplang.statement.Loop;
 import com.davidconneely.looplang.statement.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.OptionalInt;
 
+/**
+ * The context of a script: its variables, and the programs it defines. A program is resolved when
+ * it is first called (or otherwise got), so that programs that are never called are never resolved;
+ * only its calls are checked when it is defined.
+ */
 final class GlobalContext implements InterpreterContext {
   private final ParserContext parserContext;
-  private final Map<String, List<String>> programParams;
-  private final Map<String, List<Statement>> programBodies;
-  private final Map<String, Integer> variables;
+  private final Map<String, Program> programs;
+  private final Map<String, Definition> unresolved;
+  // programs already resolved elsewhere (as by a CostEstimator), used when they are defined.
+  private final Map<String, Program> preresolved;
+  private final Map<List<Statement>, Program> resolved;
+  private final Map<Program, ProgramProfile> profiles;
+  private final Frame frame;
 
   GlobalContext(final ParserContext parserContext) {
+    this(parserContext, Map.of());
+  }
+
+  GlobalContext(final ParserContext parserContext, final Map<String, Program> preresolved) {
     this.parserContext = parserContext;
-    this.programParams = new HashMap<>();
-    this.programBodies = new HashMap<>();
-    this.variables = new HashMap<>();
+    this.preresolved = preresolved;
+    this.programs = new HashMap<>();
+    this.unresolved = new HashMap<>();
+    this.resolved = new IdentityHashMap<>();
+    this.profiles = new IdentityHashMap<>();
+    this.frame = new Frame(new Scope());
+  }
+
+  Frame frame() {
+    return frame;
+  }
+
+  ProgramProfile profile(final Program program) {
+    return profiles.computeIfAbsent(program, _ -> new ProgramProfile());
   }
 
   @Override
@@ -27,17 +60,74 @@ final class GlobalContext implements InterpreterContext {
 
   @Override
   public boolean containsProgram(final String name) {
-    return programParams.containsKey(name) && programBodies.containsKey(name);
+    return programs.containsKey(name) || unresolved.containsKey(name);
+  }
+
+  @Override
+  public Program getProgram(final String name) {
+    if (unresolved.containsKey(name)) {
+      resolve(name);
+    }
+    return programs.get(name);
+  }
+
+  // resolves the program `name`, after the programs it calls that have not been resolved, on a
+  // stack of its own rather than by recursion, as chains of calls can be long.
+  private void resolve(final String name) {
+    final Deque<String> pending = new ArrayDeque<>();
+    pending.push(name);
+    while (!pending.isEmpty()) {
+      final Definition definition = unresolved.get(pending.peek());
+      if (definition == null) {
+        pending.pop(); // resolved since it was pushed.
+        continue;
+      }
+      final int callees = pending.size();
+      pushUnresolvedCallees(definition.body(), pending);
+      if (pending.size() == callees) {
+        pending.pop();
+        unresolved.remove(definition.program());
+        programs.put(
+            definition.program(),
+            Resolver.resolveProgram(
+                definition.program(),
+                definition.params(),
+                definition.body(),
+                this::getProgram,
+                resolved));
+      }
+    }
+  }
+
+  private void pushUnresolvedCallees(final List<Statement> body, final Deque<String> pending) {
+    for (Statement statement : body) {
+      switch (statement) {
+        case AssignCall call when unresolved.containsKey(call.program()) ->
+            pending.push(call.program());
+        case Loop loop -> pushUnresolvedCallees(loop.body(), pending);
+        default -> {}
+      }
+    }
   }
 
   @Override
   public List<Statement> getProgramBody(final String name) {
-    return programBodies.get(name);
+    final Definition definition = unresolved.get(name);
+    if (definition != null) {
+      return definition.body();
+    }
+    final Program program = programs.get(name);
+    return program != null ? program.statements() : null;
   }
 
   @Override
   public List<String> getProgramParams(final String name) {
-    return programParams.get(name);
+    final Definition definition = unresolved.get(name);
+    if (definition != null) {
+      return definition.params();
+    }
+    final Program program = programs.get(name);
+    return program != null ? program.params() : null;
   }
 
   @Override
@@ -46,26 +136,28 @@ final class GlobalContext implements InterpreterContext {
     if (containsProgram(programName)) {
       throw new InterpreterException("program `" + programName + "` has already been defined");
     }
-    programParams.put(programName, params);
-    programBodies.put(programName, body);
+    final Program program = preresolved.get(programName);
+    if (program != null && program.statements() == body && program.params().equals(params)) {
+      programs.put(programName, program);
+    } else {
+      Resolver.checkCalls(body, this::getProgramParams);
+      unresolved.put(programName, new Definition(programName, params, body));
+    }
     parserContext.addDefinedProgram(programName);
   }
 
   @Override
   public boolean containsVariable(final String name) {
-    return variables.containsKey(name);
+    return frame.contains(name);
   }
 
   @Override
   public OptionalInt getVariable(final String name) {
-    Integer value = variables.get(name);
-    return value != null
-        ? OptionalInt.of(value)
-        : OptionalInt.empty(); // like OptionalInt.ofNullable
+    return frame.get(name);
   }
 
   @Override
   public void setVariable(final String name, final int value) {
-    variables.put(name, value);
+    frame.set(name, value);
   }
 }
@@ -2,6 +2,10 @@ package com.davidconneely.looplang.interpreter;
 
 import com.davidconneely.looplang.statement.Statement;
 
-public interface Interpreter {
+public interface Interpreter extends AutoCloseable {
   void interpret(Statement statement);
+
+  /** Called once the last statement has been interpreted; saves anything kept between runs. */
+  @Override
+  default void close() {}
 }
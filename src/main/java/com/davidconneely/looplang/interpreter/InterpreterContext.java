@@ -1,5 +1,6 @@
 package com.davidconneely.looplang.interpreter;
 
+import com.davidconneely.looplang.compiler.Program;
 import com.davidconneely.looplang.statement.Statement;
 import java.util.List;
 import java.util.Optional;
@@ -15,6 +16,9 @@ public sealed interface InterpreterContext permits GlobalContext, LocalContext {
 
   boolean containsProgram(String name);
 
+  /** The resolved program, or `null` if it has not been defined. */
+  Program getProgram(String name);
+
   List<Statement> getProgramBody(String name);
 
   List<String> getProgramParams(String name);
@@ -1,6 +1,9 @@
 package com.davidconneely.looplang.interpreter;
 
+import com.davidconneely.looplang.compiler.Program;
 import com.davidconneely.looplang.parser.ParserContext;
+import java.nio.file.Path;
+import java.util.Map;
 
 public final class InterpreterFactory {
   private InterpreterFactory() {}
@@ -9,7 +12,36 @@ public final class InterpreterFactory {
     return new GlobalContext(parserContext);
   }
 
+  /**
+   * A context that, when a program in `programs` is defined again (with the same params, and the
+   * same parsed body), uses it as it has already been resolved, rather than resolving it again.
+   */
+  public static InterpreterContext newGlobalContext(
+      final ParserContext parserContext, final Map<String, Program> programs) {
+    return new GlobalContext(parserContext, programs);
+  }
+
   public static Interpreter newInterpreter(final InterpreterContext interpreterContext) {
-    return new DefaultInterpreter(interpreterContext);
+    return newInterpreter(interpreterContext, Engine.DEFAULT);
+  }
+
+  public static Interpreter newInterpreter(
+      final InterpreterContext interpreterContext, final Engine engine) {
+    return switch (engine) {
+      case DEFAULT -> new DefaultInterpreter(interpreterContext);
+      case CLOSURE -> new ClosureInterpreter(interpreterContext);
+      case BYTECODE -> new BytecodeInterpreter(interpreterContext);
+      case TIERED -> new TieredInterpreter(interpreterContext);
+      case VM -> new VmInterpreter(interpreterContext);
+    };
+  }
+
+  /**
+   * A {@link Engine#TIERED} interpreter that promotes the programs that were hot in earlier runs up
+   * front, using the profile at `profilePath`, and saves the profile of this run there when closed.
+   */
+  public static Interpreter newProfilingInterpreter(
+      final InterpreterContext interpreterContext, final Path profilePath) {
+    return new TieredInterpreter(interpreterContext, ProfileStore.load(profilePath));
   }
 }
@@ -1,20 +1,28 @@
 package com.davidconneely.looplang.interpreter;
 
+import com.davidconneely.looplang.compiler.Program;
+import com.davidconneely.looplang.compiler.Scope;
 import com.davidconneely.looplang.statement.Statement;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.OptionalInt;
 
 final class LocalContext implements InterpreterContext {
   private final InterpreterContext parent;
   private final String name;
-  private final Map<String, Integer> variables;
+  private final Frame frame;
 
   LocalContext(final String name, final InterpreterContext parent) {
     this.parent = parent;
     this.name = name;
-    this.variables = new HashMap<>();
+    this.frame = new Frame(new Scope());
+  }
+
+  Frame frame() {
+    return frame;
+  }
+
+  InterpreterContext parent() {
+    return parent;
   }
 
   @Override
@@ -27,6 +35,11 @@ final class LocalContext implements InterpreterContext {
     return parent.containsProgram(name);
   }
 
+  @Override
+  public Program getProgram(final String name) {
+    return parent.getProgram(name);
+  }
+
   @Override
   public List<Statement> getProgramBody(final String name) {
     return parent.getProgramBody(name);
@@ -39,27 +52,21 @@ final class LocalContext implements InterpreterContext {
 
   @Override
   public void setProgram(final String name, final List<String> params, final List<Statement> body) {
-    // currently the language syntax definition doesn't disallow this, so catch at runtime.
-    // TODO: should probably be part of the language syntax, so can be a ParserException.
-    throw new InterpreterException(
-        "cannot nest program `" + name + "` inside outer program `" + this.name + "`");
+    throw Builtins.nestedProgram(name, this.name);
   }
 
   @Override
   public boolean containsVariable(final String name) {
-    return variables.containsKey(name);
+    return frame.contains(name);
   }
 
   @Override
   public OptionalInt getVariable(final String name) {
-    Integer value = variables.get(name);
-    return value != null
-        ? OptionalInt.of(value)
-        : OptionalInt.empty(); // like OptionalInt.ofNullable
+    return frame.get(name);
   }
 
   @Override
   public void setVariable(final String name, final int value) {
-    variables.put(name, value);
+    frame.set(name, value);
   }
 }
@@ -0,0 +1,571 @@
+package com.davidconneely.looplang.interpreter;
+
+import com.davidconneely.looplang.compiler.Code;
+import com.davidconneely.looplang.compiler.Program;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Runs a loop whose body is an affine map of the variables it changes in O(log n) time, by
+ * exponentiating the map, rather than running the body n times. `LOOP n DO x0 := ADD(x0, x2) END`,
+ * for example, maps `x0` to `x0 + x2`, so n iterations add `n * x2`.
+ *
+ * <p>The body is evaluated symbolically, with each variable an affine expression (non-negative
+ * coefficients and constant) of the values at the start of an iteration. Calls are evaluated
+ * through the callee's body, and inner loops are exponentiated in turn: their counts must be
+ * constant during the outer loop, unless all they do is add constants to variables. Anything else
+ * (I/O, a definition, a count that varies, a variable read before it is defined) means the loop is
+ * not affine, and it is left to run normally.
+ *
+ * <p>The result must be the same as running the loop, errors included. All the arithmetic is exact,
+ * and a loop is only accelerated for as many iterations as can be shown never to overflow an `int`:
+ * as the values are non-negative and never overflow, no loop count can be negative. Each iteration
+ * after the first is checked to leave the variables no smaller than the one before, so the largest
+ * values are those of the first and last iterations.
+ *
+ * <p>A loop that is found to be neither affine nor periodic is remembered, so an inner loop that
+ * cannot be accelerated does not cost the analysis on every iteration of the loops around it. If
+ * its body is the reason, it is not analysed again. If the values it started from are (a variable
+ * it reads being negative or undefined, or an overflow), it is tried again after a number of runs
+ * that doubles each time it fails, so it is accelerated once its values allow.
+ */
+final class LoopAccelerator {
+  /** Loops run fewer times than this are not worth analysing. */
+  static final int MIN_COUNT = 64;
+
+  /** The deepest nesting of loops and calls analysed. */
+  static final int MAX_DEPTH = 32;
+
+  // limits on the analysis: the most variables a loop can change, and the most instructions
+  // evaluated in all.
+  private static final int MAX_BASIS = 16;
+  private static final int MAX_STEPS = 10_000;
+
+  /** What {@link #runAffine} returns for a loop that is not affine. */
+  static final int NOT_AFFINE_COUNT = -1;
+
+  /**
+   * What {@link #runAffine} returns for a loop that is not affine from the values it starts from,
+   * but might be from others.
+   */
+  static final int NOT_AFFINE_HERE_COUNT = -2;
+
+  // the most runs of a loop skipped after it fails on its values.
+  private static final int MAX_SKIPPED = 1 << 16;
+
+  private static final NotAffine NOT_AFFINE = new NotAffine(false);
+  private static final NotAffine NOT_AFFINE_HERE = new NotAffine(true);
+
+  // loops that could not be accelerated, and why; a loop's body is compared by identity.
+  private static final Map<Code.Loop, Rejection> REJECTED =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  private int steps;
+
+  private LoopAccelerator() {
+    this.steps = MAX_STEPS;
+  }
+
+  /** Whether `loop` might be accelerated: its body has no I/O or definitions. */
+  static boolean accepts(final Code.Loop loop) {
+    for (Code code : loop.body()) {
+      switch (code) {
+        case Code.Print _, Code.Input _, Code.Define _ -> {
+          return false;
+        }
+        case Code.Loop inner -> {
+          if (!accepts(inner)) {
+            return false;
+          }
+        }
+        default -> {}
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Runs up to `count` iterations of `loop` against `frame` at once, returning how many of them it
+   * ran: `count` if the loop is affine and its values stay within range, or if its state repeats
+   * within a few iterations (see {@link LoopCycles}), otherwise as many as do (possibly none, as
+   * for a loop that has been rejected before). The caller runs the rest normally.
+   */
+  static int run(final Code.Loop loop, final int count, final long[] frame) {
+    if (count < MIN_COUNT || !accepts(loop) || isRejected(loop)) {
+      return 0;
+    }
+    final int done = runAffine(loop, count, frame);
+    if (done >= 0) {
+      return done;
+    }
+    final int cycled = LoopCycles.run(loop, count, frame);
+    if (cycled == 0) {
+      REJECTED.compute(
+          loop,
+          (_, rejection) ->
+              done == NOT_AFFINE_COUNT
+                  ? Rejection.FINAL
+                  : new Rejection(rejection != null ? 2 * rejection.skipped : 1));
+    }
+    return cycled;
+  }
+
+  // whether to skip this run of `loop`, as it was rejected before.
+  private static boolean isRejected(final Code.Loop loop) {
+    final Rejection rejection = REJECTED.get(loop);
+    if (rejection == null) {
+      return false;
+    }
+    if (rejection == Rejection.FINAL) {
+      return true;
+    }
+    synchronized (rejection) {
+      if (rejection.remaining == 0) {
+        return false;
+      }
+      --rejection.remaining;
+      return true;
+    }
+  }
+
+  /**
+   * Why a loop could not be accelerated: {@link #FINAL} if its body is not affine, otherwise its
+   * values, in which case the next `skipped` runs of it are not analysed.
+   */
+  private static final class Rejection {
+    static final Rejection FINAL = new Rejection(MAX_SKIPPED);
+
+    final int skipped;
+    int remaining;
+
+    Rejection(final int skipped) {
+      this.skipped = Math.min(skipped, MAX_SKIPPED);
+      this.remaining = this.skipped;
+    }
+  }
+
+  /**
+   * Runs up to `count` iterations of `loop` against `frame` if it is affine, returning how many of
+   * them it ran, or {@link #NOT_AFFINE_COUNT} if it is not affine (or its values do not only grow),
+   * or {@link #NOT_AFFINE_HERE_COUNT} if it reads a value that is negative or undefined, or would
+   * overflow.
+   */
+  static int runAffine(final Code.Loop loop, final int count, final long[] frame) {
+    // a negative value (as `UNDEFINED` is) cannot be read, but only matters if the body reads it.
+    final long[][] state = new long[frame.length][];
+    for (int slot = 0; slot < frame.length; ++slot) {
+      if (frame[slot] >= 0) {
+        state[slot] = new long[] {frame[slot]};
+      }
+    }
+    try {
+      final Iteration iteration = new LoopAccelerator().iteration(loop.body(), state, 0, 0);
+      if (!iteration.isMonotonic(state)) {
+        return NOT_AFFINE_COUNT;
+      }
+      int done = count;
+      if (!iteration.isInRange(state, count)) {
+        int lo = 0;
+        int hi = count;
+        while (hi - lo > 1) {
+          final int mid = lo + (hi - lo) / 2;
+          if (iteration.isInRange(state, mid)) {
+            lo = mid;
+          } else {
+            hi = mid;
+          }
+        }
+        done = lo;
+      }
+      if (done == 0) {
+        return 0;
+      }
+      final long[][] result = iteration.apply(iteration.power(done), state);
+      for (int slot : iteration.basis()) {
+        // a slot left without a value was not assigned, so keeps the one it had.
+        if (result[slot] != null) {
+          frame[slot] = (int) result[slot][0];
+        }
+      }
+      return done;
+    } catch (NotAffine e) {
+      return e.dependsOnValues ? NOT_AFFINE_HERE_COUNT : NOT_AFFINE_COUNT;
+    } catch (ArithmeticException e) {
+      return NOT_AFFINE_HERE_COUNT;
+    }
+  }
+
+  /**
+   * Evaluates one iteration of `body` symbolically from `state`, whose expressions are over a basis
+   * of `outer` variables.
+   */
+  private Iteration iteration(
+      final Code[] body, final long[][] state, final int outer, final int depth) {
+    final boolean[] written = new boolean[state.length];
+    collectWritten(body, written);
+    final int[] index = new int[state.length];
+    int size = 0;
+    for (int slot = 0; slot < state.length; ++slot) {
+      final boolean variable =
+          state[slot] == null ? written[slot] : written[slot] || !isConstant(state[slot]);
+      index[slot] = variable ? size++ : -1;
+    }
+    if (size > MAX_BASIS) {
+      throw NOT_AFFINE;
+    }
+    final int[] basis = new int[size];
+    final long[][] start = new long[state.length][];
+    for (int slot = 0; slot < state.length; ++slot) {
+      if (index[slot] >= 0) {
+        basis[index[slot]] = slot;
+      }
+      if (state[slot] != null) {
+        start[slot] =
+            index[slot] >= 0 ? unit(size, index[slot]) : constant(size, constantOf(state[slot]));
+      }
+    }
+    final Evaluator evaluator = new Evaluator(size);
+    evaluator.run(body, start, depth);
+    final long[][] rows = new long[size][];
+    for (int i = 0; i < size; ++i) {
+      rows[i] = start[basis[i]];
+    }
+    return new Iteration(basis, rows, evaluator.bound, outer);
+  }
+
+  /**
+   * The effect of one iteration of a loop body on the frame. `basis` lists the slots that are
+   * changed by the body or not constant, and `rows[i]` is the value of `basis[i]` at the end of an
+   * iteration, as an expression of the values of the basis at its start (or `null` if still
+   * undefined). `bound` is an expression no smaller than any value written during the iteration.
+   * The state it is applied to has expressions over a basis of `outer` variables.
+   */
+  private record Iteration(int[] basis, long[][] rows, long[] bound, int outer) {
+    /** This iteration run `times` times, with undefined rows left unchanged. */
+    long[][] power(final long times) {
+      final int size = basis.length;
+      long[][] result = identity(size);
+      long[][] square = new long[size][];
+      for (int i = 0; i < size; ++i) {
+        square[i] = rows[i] != null ? rows[i] : unit(size, i);
+      }
+      for (long n = times; n > 0; n >>= 1) {
+        if ((n & 1) != 0) {
+          result = compose(result, square);
+        }
+        if (n > 1) {
+          square = compose(square, square);
+        }
+      }
+      return result;
+    }
+
+    /** The state after running `map` (an iteration or a power of one) from `state`. */
+    long[][] apply(final long[][] map, final long[][] state) {
+      final long[][] result = state.clone();
+      for (int i = 0; i < basis.length; ++i) {
+        if (map[i] != null) {
+          result[basis[i]] = substitute(map[i], state);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * `expression` over this basis, as an expression over the basis of `state`, or `null` if it
+     * depends on a slot that is undefined in `state`.
+     */
+    long[] substitute(final long[] expression, final long[][] state) {
+      long[] result = constant(outer, expression[basis.length]);
+      for (int i = 0; i < basis.length; ++i) {
+        if (expression[i] != 0) {
+          final long[] value = state[basis[i]];
+          if (value == null) {
+            return null;
+          }
+          result = sum(result, scale(value, expression[i]));
+        }
+      }
+      return result;
+    }
+
+    /** Whether a second iteration from `state` leaves every variable no less than the first. */
+    boolean isMonotonic(final long[][] state) {
+      final long[][] first = apply(rows, state);
+      final long[][] second = apply(rows, first);
+      for (int slot : basis) {
+        if (first[slot] != null && !isNoLessThan(second[slot], first[slot])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /** Whether every value written in `times` iterations from numeric `state` fits in an `int`. */
+    boolean isInRange(final long[][] state, final int times) {
+      if (times == 0) {
+        return true;
+      }
+      try {
+        final long[][] last = apply(power(times - 1), state);
+        return isInRange(substitute(bound, state)) && isInRange(substitute(bound, last));
+      } catch (ArithmeticException e) {
+        return false;
+      }
+    }
+
+    private static boolean isInRange(final long[] value) {
+      return value != null && value[0] <= Integer.MAX_VALUE;
+    }
+  }
+
+  /** Evaluates code symbolically over a basis of `size` variables. */
+  private final class Evaluator {
+    private final int size;
+    private final long[] bound;
+
+    Evaluator(final int size) {
+      this.size = size;
+      this.bound = new long[size + 1];
+    }
+
+    void run(final Code[] body, final long[][] state, final int depth) {
+      if (depth > MAX_DEPTH) {
+        throw NOT_AFFINE;
+      }
+      for (Code code : body) {
+        if (--steps < 0) {
+          throw NOT_AFFINE;
+        }
+        run(code, state, depth);
+      }
+    }
+
+    private void run(final Code code, final long[][] state, final int depth) {
+      switch (code) {
+        case Code.Zero(int slot) -> write(state, slot, constant(size, 0));
+        case Code.Increment(int slot) -> write(state, slot, plus(read(state, slot), 1));
+        case Code.Set(int slot, int value) ->
+            write(state, slot, constant(size, nonNegative(value)));
+        case Code.Add(int slot, int value) ->
+            write(state, slot, plus(read(state, slot), nonNegative(value)));
+        case Code.Copy(int slot, int source) -> write(state, slot, read(state, source));
+        case Code.Argument(int slot, int source) -> write(state, slot, read(state, source));
+        case Code.Result(int slot, int source) -> write(state, slot, read(state, source));
+        case Code.AddVariable(int slot, int source) -> {
+          final long[] count = read(state, source);
+          if (!isZero(count)) {
+            write(state, slot, sum(read(state, slot), count));
+          }
+        }
+        case Code.Loop(int slot, Code[] body) -> {
+          final long[] count = read(state, slot);
+          if (!isConstant(count)) {
+            translate(body, state, count, depth + 1);
+          } else if (constantOf(count) > 0) {
+            loop(body, state, constantOf(count), depth + 1);
+          }
+        }
+        case Code.Call(int slot, Program callee, int[] args) -> {
+          final long[][] frame = new long[callee.frameSize()][];
+          frame[Program.RESULT] = constant(size, 0);
+          final int[] paramSlots = callee.paramSlots();
+          for (int i = 0; i < paramSlots.length; ++i) {
+            frame[paramSlots[i]] = read(state, args[i]);
+          }
+          run(callee.body(), frame, depth + 1);
+          write(state, slot, frame[Program.RESULT]);
+        }
+        case Code.Print _, Code.Input _, Code.Define _ -> throw NOT_AFFINE;
+      }
+    }
+
+    // runs `body` `count` (> 0) times from `state`, by exponentiating one iteration of it.
+    private void loop(final Code[] body, final long[][] state, final long count, final int depth) {
+      final Iteration iteration = iteration(body, state, size, depth);
+      if (count > 2 && !iteration.isMonotonic(state)) {
+        throw NOT_AFFINE;
+      }
+      final long[][] last = iteration.apply(iteration.power(count - 1), state);
+      bound(iteration.substitute(iteration.bound(), state));
+      bound(iteration.substitute(iteration.bound(), last));
+      final long[][] result = iteration.apply(iteration.rows(), last);
+      System.arraycopy(result, 0, state, 0, state.length);
+    }
+
+    // runs `body` a varying number of times, which is affine if all it does is add constants.
+    private void translate(
+        final Code[] body, final long[][] state, final long[] count, final int depth) {
+      final Iteration iteration = iteration(body, state, size, depth);
+      final int[] basis = iteration.basis();
+      final long[][] result = state.clone();
+      for (int i = 0; i < basis.length; ++i) {
+        final long[] row = iteration.rows()[i];
+        if (row != null) {
+          for (int j = 0; j < basis.length; ++j) {
+            if (row[j] != (i == j ? 1 : 0)) {
+              throw NOT_AFFINE;
+            }
+          }
+          result[basis[i]] = sum(state[basis[i]], scale(count, constantOf(row)));
+        }
+      }
+      // values only grow, so none written is more than the bound after the last iteration.
+      bound(iteration.substitute(iteration.bound(), result));
+      System.arraycopy(result, 0, state, 0, state.length);
+    }
+
+    private long[] read(final long[][] state, final int slot) {
+      final long[] value = state[slot];
+      if (value == null) {
+        throw NOT_AFFINE_HERE;
+      }
+      return value;
+    }
+
+    private void write(final long[][] state, final int slot, final long[] value) {
+      state[slot] = value;
+      bound(value);
+    }
+
+    private void bound(final long[] value) {
+      if (value == null) {
+        throw NOT_AFFINE_HERE;
+      }
+      for (int i = 0; i <= size; ++i) {
+        bound[i] = Math.max(bound[i], value[i]);
+      }
+    }
+  }
+
+  // slots assigned anywhere in `body`, including inner loops (but not callees, which have their
+  // own).
+  private static void collectWritten(final Code[] body, final boolean[] written) {
+    for (Code code : body) {
+      switch (code) {
+        case Code.Zero(int slot) -> written[slot] = true;
+        case Code.Increment(int slot) -> written[slot] = true;
+        case Code.Set(int slot, _) -> written[slot] = true;
+        case Code.Add(int slot, _) -> written[slot] = true;
+        case Code.Copy(int slot, _) -> written[slot] = true;
+        case Code.Argument(int slot, _) -> written[slot] = true;
+        case Code.Result(int slot, _) -> written[slot] = true;
+        case Code.AddVariable(int slot, _) -> written[slot] = true;
+        case Code.Call(int slot, _, _) -> written[slot] = true;
+        case Code.Input input -> written[input.slot()] = true;
+        case Code.Loop(_, Code[] inner) -> collectWritten(inner, written);
+        case Code.Print _, Code.Define _ -> {}
+      }
+    }
+  }
+
+  // affine expressions: the coefficients of each basis variable, then the constant.
+
+  private static long[] constant(final int size, final long value) {
+    final long[] expression = new long[size + 1];
+    expression[size] = value;
+    return expression;
+  }
+
+  private static long[] unit(final int size, final int i) {
+    final long[] expression = new long[size + 1];
+    expression[i] = 1;
+    return expression;
+  }
+
+  private static boolean isConstant(final long[] expression) {
+    for (int i = 0; i < expression.length - 1; ++i) {
+      if (expression[i] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long constantOf(final long[] expression) {
+    return expression[expression.length - 1];
+  }
+
+  private static boolean isZero(final long[] expression) {
+    return isConstant(expression) && constantOf(expression) == 0;
+  }
+
+  private static boolean isNoLessThan(final long[] left, final long[] right) {
+    if (left == null) {
+      return false;
+    }
+    for (int i = 0; i < left.length; ++i) {
+      if (left[i] < right[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long nonNegative(final int value) {
+    if (value < 0) {
+      throw NOT_AFFINE;
+    }
+    return value;
+  }
+
+  private static long[] plus(final long[] expression, final long value) {
+    final long[] result = expression.clone();
+    result[result.length - 1] = Math.addExact(result[result.length - 1], value);
+    return result;
+  }
+
+  private static long[] sum(final long[] left, final long[] right) {
+    final long[] result = new long[left.length];
+    for (int i = 0; i < result.length; ++i) {
+      result[i] = Math.addExact(left[i], right[i]);
+    }
+    return result;
+  }
+
+  private static long[] scale(final long[] expression, final long factor) {
+    final long[] result = new long[expression.length];
+    for (int i = 0; i < result.length; ++i) {
+      result[i] = Math.multiplyExact(expression[i], factor);
+    }
+    return result;
+  }
+
+  private static long[][] identity(final int size) {
+    final long[][] map = new long[size][];
+    for (int i = 0; i < size; ++i) {
+      map[i] = unit(size, i);
+    }
+    return map;
+  }
+
+  // the map `inner` followed by `outer`.
+  private static long[][] compose(final long[][] outer, final long[][] inner) {
+    final int size = outer.length;
+    final long[][] result = new long[size][];
+    for (int i = 0; i < size; ++i) {
+      long[] row = constant(size, outer[i][size]);
+      for (int j = 0; j < size; ++j) {
+        if (outer[i][j] != 0) {
+          row = sum(row, scale(inner[j], outer[i][j]));
+        }
+      }
+      result[i] = row;
+    }
+    return result;
+  }
+
+  /**
+   * Thrown (without a stack trace) when code turns out not to be affine, or (if `dependsOnValues`)
+   * not from the values it starts from.
+   */
+  private static final class NotAffine extends RuntimeException {
+    final boolean dependsOnValues;
+
+    NotAffine(final boolean dependsOnValues) {
+      super(null, null, false, false);
+      this.dependsOnValues = dependsOnValues;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package com.davidconneely.looplang.interpreter;
+
+import static com.davidconneely.looplang.compiler.Code.UNDEFINED;
+
+import com.davidconneely.looplang.compiler.Code;
+import com.davidconneely.looplang.compiler.Program;
+import java.util.Arrays;
+
+/**
+ * Fast-forwards a loop whose frame returns to an earlier state within a few iterations, such as
+ * `LOOP n DO t := NOT(t) END`, which toggles with period 2, or a body that sets its variables to
+ * constants, which reaches a fixed point (period 1) after one iteration. The body has no I/O and
+ * callees get fresh frames, so each iteration depends only on the frame: once a state repeats, the
+ * frame after the `count`th iteration is one already seen.
+ *
+ * <p>The first few iterations are run here, on copies of the frame, with the same semantics as the
+ * engines. Any error, and any iteration that takes too long, abandons the attempt without touching
+ * the frame, leaving the engine to run the loop (and raise the error) itself.
+ */
+final class LoopCycles {
+  // the longest period detected, and the most instructions run in looking for one.
+  private static final int MAX_PERIOD = 8;
+  private static final int MAX_STEPS = 10_000;
+
+  private int steps;
+
+  private LoopCycles() {
+    this.steps = MAX_STEPS;
+  }
+
+  /**
+   * Runs all `count` iterations of `loop` against `frame` at once, and returns `count`, if its
+   * state repeats within the first few; otherwise leaves `frame` alone and returns `0`.
+   */
+  static int run(final Code.Loop loop, final int count, final long[] frame) {
+    return new LoopCycles().run(loop, count, frame, 0);
+  }
+
+  private int run(final Code.Loop loop, final int count, final long[] frame, final int depth) {
+    final long[][] states = new long[MAX_PERIOD + 1][];
+    states[0] = frame;
+    for (int k = 1; k <= MAX_PERIOD && k <= count; ++k) {
+      final long[] state = states[k - 1].clone();
+      if (!run(loop.body(), state, depth)) {
+        return 0;
+      }
+      for (int j = k - 1; j >= 0; --j) {
+        if (Arrays.equals(states[j], state)) {
+          final long[] last = states[j + (count - j) % (k - j)];
+          System.arraycopy(last, 0, frame, 0, frame.length);
+          return count;
+        }
+      }
+      states[k] = state;
+    }
+    return 0;
+  }
+
+  // runs `body` against `frame`, returning whether it completed without an error.
+  private boolean run(final Code[] body, final long[] frame, final int depth) {
+    for (Code code : body) {
+      if (--steps < 0 || !run(code, frame, depth)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean run(final Code code, final long[] frame, final int depth) {
+    switch (code) {
+      case Code.Zero(int slot) -> frame[slot] = 0;
+      case Code.Increment(int slot) -> {
+        if (frame[slot] == UNDEFINED) {
+          return false;
+        }
+        frame[slot] = (int) frame[slot] + 1;
+      }
+      case Code.Set(int slot, int value) -> frame[slot] = value;
+      case Code.Add(int slot, int value) -> {
+        if (frame[slot] == UNDEFINED) {
+          return false;
+        }
+        frame[slot] = (int) frame[slot] + value;
+      }
+      case Code.Copy(int slot, int source) -> {
+        if (frame[source] < 0) {
+          return false;
+        }
+        frame[slot] = frame[source];
+      }
+      case Code.Argument(int slot, int source) -> {
+        if (frame[source] == UNDEFINED) {
+          return false;
+        }
+        frame[slot] = frame[source];
+      }
+      case Code.Result(int slot, int source) -> frame[slot] = frame[source];
+      case Code.AddVariable(int slot, int source) -> {
+        final long count = frame[source];
+        if (count < 0 || (count > 0 && frame[slot] == UNDEFINED)) {
+          return false;
+        }
+        if (count > 0) {
+          frame[slot] = (int) (frame[slot] + count);
+        }
+      }
+      case Code.Loop loop -> {
+        if (frame[loop.slot()] < 0 || depth >= LoopAccelerator.MAX_DEPTH) {
+          return false;
+        }
+        final int count = (int) frame[loop.slot()];
+        // each attempt to accelerate an inner loop is charged as many steps as it might save, to
+        // bound the analyses run.
+        int i = 0;
+        if (count >= LoopAccelerator.MIN_COUNT) {
+          steps -= LoopAccelerator.MIN_COUNT;
+          i = LoopAccelerator.runAffine(loop, count, frame);
+          if (i < 0) {
+            i = run(loop, count, frame, depth + 1);
+          }
+        }
+        for (; i < count; ++i) {
+          if (!run(loop.body(), frame, depth + 1)) {
+            return false;
+          }
+        }
+      }
+      case Code.Call(int slot, Program callee, int[] args) -> {
+        final long value = Builtins.closedForm(callee, frame, args);
+        if (value != UNDEFINED) {
+          frame[slot] = value;
+          return true;
+        }
+        final int[] paramSlots = callee.paramSlots();
+        final long[] calleeFrame = new long[callee.frameSize()];
+        Arrays.fill(calleeFrame, UNDEFINED);
+        calleeFrame[Program.RESULT] = 0;
+        for (int i = 0; i < paramSlots.length; ++i) {
+          if (frame[args[i]] == UNDEFINED) {
+            return false;
+          }
+          calleeFrame[paramSlots[i]] = frame[args[i]];
+        }
+        if (depth >= LoopAccelerator.MAX_DEPTH || !run(callee.body(), calleeFrame, depth + 1)) {
+          return false;
+        }
+        frame[slot] = calleeFrame[Program.RESULT];
+      }
+      case Code.Print _, Code.Input _, Code.Define _ -> {
+        return false;
+      }
+    }
+    return true;
+  }
+}
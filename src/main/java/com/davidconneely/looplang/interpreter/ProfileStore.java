@@ -0,0 +1,101 @@
+package com.davidconneely.looplang.interpreter;
+
+import com.davidconneely.looplang.statement.Definition;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The {@link ProgramProfile} counters of earlier runs, kept in a file so that a later run can
+ * promote the programs that were hot in them as soon as they are defined (see {@link
+ * TieredInterpreter}), with no warm-up. Each is keyed by a hash of its definition's source, so a
+ * profile of a program that has since changed is not found, and is dropped when the file is next
+ * saved. The file has one line per program, `hash calls loop-trips name`; lines that cannot be read
+ * are ignored.
+ */
+final class ProfileStore {
+  /** The counters of one program in the latest run that interpreted it. */
+  record Entry(String name, long calls, long loopTrips) {
+    long hotness() {
+      return calls + loopTrips;
+    }
+  }
+
+  private final Path path;
+  private final Map<String, Entry> loaded;
+  private final Map<String, Entry> entries;
+
+  private ProfileStore(final Path path, final Map<String, Entry> loaded) {
+    this.path = path;
+    this.loaded = loaded;
+    this.entries = new TreeMap<>();
+  }
+
+  /** The profiles stored at `path`, or none if there is no file there yet. */
+  static ProfileStore load(final Path path) {
+    final Map<String, Entry> loaded = new TreeMap<>();
+    try {
+      for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+        final String[] fields = line.strip().split(" ");
+        if (fields.length == 4) {
+          try {
+            loaded.put(
+                fields[0],
+                new Entry(fields[3], Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+          } catch (NumberFormatException _) {
+            // ignored, as is any other line in the wrong format.
+          }
+        }
+      }
+    } catch (NoSuchFileException _) {
+      // nothing profiled yet.
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new ProfileStore(path, loaded);
+  }
+
+  /** The key of a program's profile: a hash of its definition, as written back out as source. */
+  static String hash(final Definition definition) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      final byte[] bytes = digest.digest(definition.toString().getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(bytes, 0, 16);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // every JVM has SHA-256.
+    }
+  }
+
+  /** The profile of the program with `hash` from an earlier run, or `null` if there is none. */
+  Entry get(final String hash) {
+    return loaded.get(hash);
+  }
+
+  /** Sets the profile of the program with `hash` in this run, to be saved. */
+  void put(final String hash, final Entry entry) {
+    entries.put(hash, entry);
+  }
+
+  /** Writes the profiles of the programs defined in this run, replacing the file. */
+  void save() {
+    final List<String> lines = new ArrayList<>(entries.size());
+    entries.forEach(
+        (hash, entry) ->
+            lines.add(hash + ' ' + entry.calls() + ' ' + entry.loopTrips() + ' ' + entry.name()));
+    try {
+      Files.write(path, lines, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
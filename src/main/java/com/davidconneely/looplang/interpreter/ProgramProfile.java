@@ -0,0 +1,28 @@
+package com.davidconneely.looplang.interpreter;
+
+import com.davidconneely.looplang.compiler.Program;
+import java.util.function.ToIntFunction;
+
+/**
+ * Execution counters for one {@link Program}, kept by the {@link GlobalContext} that defined it:
+ * how often it has been called and how many loop iterations it has run while interpreted, and its
+ * compiled form once it has been promoted (see {@link TieredInterpreter}), or whether it could not
+ * be compiled.
+ */
+final class ProgramProfile {
+  long calls;
+  long loopTrips;
+  ToIntFunction<long[]> compiled;
+  boolean uncompilable;
+
+  static ProgramProfile of(final InterpreterContext context, final Program program) {
+    return switch (context) {
+      case GlobalContext global -> global.profile(program);
+      case LocalContext local -> of(local.parent(), program);
+    };
+  }
+
+  long hotness() {
+    return calls + loopTrips;
+  }
+}
@@ -0,0 +1,109 @@
+package com.davidconneely.looplang.interpreter;
+
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.statement.Statement;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs many scripts at once on a fixed pool of carrier threads. Each script runs on the register VM
+ * (see {@link VmFiber}) for a time slice of a fixed number of instructions, and is then suspended
+ * and queued behind the other scripts, so one script with a giant `LOOP` cannot starve the rest.
+ * Parsing a statement counts as one instruction; `INPUT` blocks its carrier while it waits.
+ */
+public final class Scheduler implements AutoCloseable {
+  /** The default number of instructions in a time slice. */
+  public static final long DEFAULT_TIME_SLICE = 10_000;
+
+  private final ExecutorService carriers;
+  private final long timeSlice;
+
+  public Scheduler(final int carriers) {
+    this(carriers, DEFAULT_TIME_SLICE);
+  }
+
+  public Scheduler(final int carriers, final long timeSlice) {
+    if (carriers < 1 || timeSlice < 1) {
+      throw new IllegalArgumentException("carriers and time slice must be positive");
+    }
+    this.carriers = Executors.newFixedThreadPool(carriers);
+    this.timeSlice = timeSlice;
+  }
+
+  /**
+   * Queues a script: the statements from `parser`, run in `context`. The result completes when the
+   * script has finished, or exceptionally if it fails or the scheduler is closed before then.
+   */
+  public CompletableFuture<Void> submit(final Parser parser, final InterpreterContext context) {
+    final Script script = new Script(parser, new VmInterpreter(context));
+    schedule(script);
+    return script.result;
+  }
+
+  /**
+   * Stops all scripts at the end of their current time slice; the results of those that have not
+   * finished complete with a {@link CancellationException}.
+   */
+  @Override
+  public void close() {
+    for (Runnable queued : carriers.shutdownNow()) {
+      ((Script) queued).cancel();
+    }
+  }
+
+  private void schedule(final Script script) {
+    try {
+      carriers.execute(script);
+    } catch (RejectedExecutionException _) {
+      script.cancel();
+    }
+  }
+
+  /** A script's progress; it is only ever run by one carrier at a time. */
+  private final class Script implements Runnable {
+    private final Parser parser;
+    private final VmInterpreter interpreter;
+    private final CompletableFuture<Void> result;
+    private VmFiber fiber;
+
+    Script(final Parser parser, final VmInterpreter interpreter) {
+      this.parser = parser;
+      this.interpreter = interpreter;
+      this.result = new CompletableFuture<>();
+    }
+
+    @Override
+    public void run() {
+      try {
+        long budget = timeSlice;
+        while (budget > 0) {
+          if (fiber == null) {
+            final Statement statement = parser.next();
+            if (statement == null) {
+              result.complete(null);
+              return;
+            }
+            fiber = interpreter.start(statement);
+            --budget;
+          } else {
+            budget = fiber.resume(budget);
+            if (fiber.finished()) {
+              fiber = null;
+            }
+          }
+        }
+      } catch (Throwable t) {
+        result.completeExceptionally(t);
+        return;
+      }
+      schedule(this);
+    }
+
+    void cancel() {
+      result.completeExceptionally(new CancellationException("scheduler closed"));
+    }
+  }
+}
@@ -0,0 +1,250 @@
+package com.davidconneely.looplang.interpreter;
+
+import com.davidconneely.looplang.compiler.Code;
+import com.davidconneely.looplang.compiler.Program;
+import com.davidconneely.looplang.compiler.Resolver;
+import com.davidconneely.looplang.compiler.Scope;
+import com.davidconneely.looplang.statement.Definition;
+import com.davidconneely.looplang.statement.Statement;
+import java.lang.invoke.MethodHandle;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Starts every program in a tree-walking interpreter that counts its calls and loop iterations in
+ * its {@link ProgramProfile}, and promotes it to bytecode (see {@link BytecodeCompiler}) once the
+ * total reaches the hotness threshold. Every call goes through the callee's profile, so once it is
+ * promoted all its call sites run the compiled form; programs called only a few times are never
+ * compiled. A single loop that runs for more than the threshold number of iterations is replaced
+ * while it is running (on-stack replacement): the remaining iterations run as compiled code over
+ * the same frame. Code that cannot be compiled (see {@link BytecodeCompiler}) stays interpreted,
+ * and is not tried again.
+ *
+ * <p>Given a {@link ProfileStore}, each program that reached the threshold in the run that last
+ * saved it is promoted as soon as it is defined, and the counters of the programs run in this one
+ * are saved to it when the interpreter is closed.
+ */
+final class TieredInterpreter implements Interpreter {
+  /** The default hotness threshold, overridden by the `looplang.tiered.threshold` property. */
+  static final int DEFAULT_THRESHOLD = 1_000;
+
+  private final InterpreterContext context;
+  private final long threshold;
+  private final BytecodeCompiler compiler;
+  // the compiled body of each loop replaced while running, or `null` if it cannot be compiled.
+  private final Map<Code.Loop, MethodHandle> loops;
+  private final Map<Program, long[]> frames;
+  private final ProfileStore store;
+  // the key in `store` of each program defined at the top level, and those promoted from it.
+  private final Map<Program, String> hashes;
+  private final Set<Program> preloaded;
+
+  TieredInterpreter(final InterpreterContext context) {
+    this(context, null);
+  }
+
+  TieredInterpreter(final InterpreterContext context, final ProfileStore store) {
+    this(context, Long.getLong("looplang.tiered.threshold", DEFAULT_THRESHOLD), store);
+  }
+
+  TieredInterpreter(final InterpreterContext context, final long threshold) {
+    this(context, threshold, null);
+  }
+
+  TieredInterpreter(
+      final InterpreterContext context, final long threshold, final ProfileStore store) {
+    this.context = context;
+    this.threshold = threshold;
+    this.compiler = new BytecodeCompiler();
+    this.loops = new IdentityHashMap<>();
+    this.frames = new IdentityHashMap<>();
+    this.store = store;
+    this.hashes = new IdentityHashMap<>();
+    this.preloaded = Collections.newSetFromMap(new IdentityHashMap<>());
+  }
+
+  @Override
+  public void interpret(final Statement statement) {
+    if (statement instanceof Definition definition) {
+      define(definition);
+      return;
+    }
+    final Frame frame = Frame.of(context);
+    final Code code = Resolver.resolve(statement, frame.scope(), context::getProgram);
+    execute(code, frame.values(), frame.scope(), null, null);
+  }
+
+  // defines a program at the top level, directly or in a loop, promoting it if it was hot in the
+  // profile.
+  private void define(final Definition definition) {
+    context.setProgram(definition.program(), definition.params(), definition.body());
+    if (store != null) {
+      preload(context.getProgram(definition.program()), ProfileStore.hash(definition));
+    }
+  }
+
+  private void preload(final Program program, final String hash) {
+    hashes.put(program, hash);
+    final ProfileStore.Entry entry = store.get(hash);
+    if (entry != null && entry.hotness() >= threshold) {
+      final ProgramProfile profile = ProgramProfile.of(context, program);
+      promote(program, profile);
+      if (profile.compiled != null) {
+        preloaded.add(program);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    if (store == null) {
+      return;
+    }
+    hashes.forEach(
+        (program, hash) -> {
+          if (preloaded.contains(program)) {
+            // it has not been counted in this run, so keep the counts that promoted it.
+            store.put(hash, store.get(hash));
+          } else {
+            final ProgramProfile profile = ProgramProfile.of(context, program);
+            store.put(
+                hash, new ProfileStore.Entry(program.name(), profile.calls, profile.loopTrips));
+          }
+        });
+    store.save();
+  }
+
+  private int call(final Program program, final long[] frame) {
+    final ProgramProfile profile = ProgramProfile.of(context, program);
+    if (profile.compiled == null
+        && ++profile.calls + profile.loopTrips >= threshold
+        && !profile.uncompilable) {
+      promote(program, profile);
+    }
+    if (profile.compiled != null) {
+      return Builtins.call(program, frame, profile.compiled);
+    }
+    // not memoized until compiled, so that the profile counts the loop trips of every call.
+    execute(program.body(), frame, program.scope(), program, profile);
+    return (int) frame[Program.RESULT];
+  }
+
+  // compiles the body of `program` once, so that calls allocate nothing, or marks it as
+  // uncompilable so that it stays interpreted.
+  private void promote(final Program program, final ProgramProfile profile) {
+    final BytecodeCompiler.Compiled compiled = compiler.compile(program);
+    if (compiled != null) {
+      final MethodHandle entry = compiled.entry();
+      profile.compiled = frame -> invoke(entry, frame);
+    } else {
+      profile.uncompilable = true;
+    }
+  }
+
+  private MethodHandle compileLoop(final Code.Loop loop, final Scope scope, final Program program) {
+    if (!loops.containsKey(loop)) {
+      loops.put(loop, compiler.compileLoop(loop, scope, program));
+    }
+    return loops.get(loop);
+  }
+
+  private static int invoke(final MethodHandle compiled, final long[] frame) {
+    try {
+      return (int) compiled.invokeExact(frame);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException(t);
+    }
+  }
+
+  private static void run(final MethodHandle loop, final long[] frame, final int remaining) {
+    try {
+      loop.invokeExact(frame, remaining);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException(t);
+    }
+  }
+
+  /**
+   * `program` and `profile` are the called program and its profile, or `null` when executing in
+   * this interpreter's context.
+   */
+  private void execute(
+      final Code[] body,
+      final long[] frame,
+      final Scope scope,
+      final Program program,
+      final ProgramProfile profile) {
+    for (Code code : body) {
+      execute(code, frame, scope, program, profile);
+    }
+  }
+
+  private void execute(
+      final Code code,
+      final long[] frame,
+      final Scope scope,
+      final Program program,
+      final ProgramProfile profile) {
+    switch (code) {
+      case Code.Zero(int slot) -> frame[slot] = 0;
+      case Code.Increment(int slot) -> frame[slot] = Builtins.read(frame, slot, scope) + 1;
+      case Code.Set(int slot, int value) -> frame[slot] = value;
+      case Code.Add(int slot, int value) -> frame[slot] = Builtins.read(frame, slot, scope) + value;
+      case Code.Copy(int slot, int source) ->
+          frame[slot] = Builtins.loopCount(frame, source, scope);
+      case Code.Argument(int slot, int source) -> frame[slot] = Builtins.read(frame, source, scope);
+      case Code.Result(int slot, int source) -> frame[slot] = frame[source];
+      case Code.AddVariable(int slot, int source) -> {
+        final int count = Builtins.loopCount(frame, source, scope);
+        if (count > 0) {
+          frame[slot] = Builtins.read(frame, slot, scope) + count;
+        }
+      }
+      case Code.Loop loop -> {
+        final int count = Builtins.loopCount(frame, loop.slot(), scope);
+        if (profile != null) {
+          profile.loopTrips += count;
+        }
+        for (int i = LoopAccelerator.run(loop, count, frame); i < count; ++i) {
+          if (i == threshold && (program != null || !BytecodeCompiler.containsDefine(loop))) {
+            // on-stack replacement: the frame is shared, so the compiled loop carries on from here.
+            final MethodHandle compiled = compileLoop(loop, scope, program);
+            if (compiled != null) {
+              run(compiled, frame, count - i);
+              break;
+            }
+          }
+          execute(loop.body(), frame, scope, program, profile);
+        }
+      }
+      case Code.Call(int slot, Program callee, int[] args) -> {
+        final long value = Builtins.closedForm(callee, frame, args);
+        frame[slot] =
+            value != Code.UNDEFINED
+                ? value
+                : call(
+                    callee,
+                    Builtins.enter(
+                        callee,
+                        frames.computeIfAbsent(callee, Builtins::newFrame),
+                        args,
+                        frame,
+                        scope));
+      }
+      case Code.Print print -> Builtins.print(print, frame);
+      case Code.Input input -> frame[input.slot()] = Builtins.input(input, frame, scope);
+      case Code.Define(Definition definition) -> {
+        if (program != null) {
+          throw Builtins.nestedProgram(definition.program(), program.name());
+        }
+        define(definition);
+      }
+    }
+  }
+}
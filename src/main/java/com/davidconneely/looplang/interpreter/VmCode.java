@@ -0,0 +1,65 @@
+package com.davidconneely.looplang.interpreter;
+
+import com.davidconneely.looplang.compiler.Program;
+import com.davidconneely.looplang.compiler.Scope;
+
+/**
+ * A flat instruction stream for {@link VmInterpreter}. Each instruction is an opcode followed by
+ * its operands, all in `ops`; registers are the slots of `scope`, and objects are referenced by
+ * their index in `constants`:
+ *
+ * <pre>
+ * ZERO r                  r := 0
+ * INC r                   r := r + 1
+ * SET r k                 r := k
+ * ADD r k                 r := r + k
+ * COPY r s                r := loop count of s
+ * ARG r s                 r := s (s must be defined)
+ * RES r s                 r := s (as is)
+ * ADDV r s                r := r + loop count of s (r is only read if the count is positive)
+ * LOOP r d len p          counter d := loop count of r, less any iterations run at once by the
+ *                         LoopAccelerator on constants[p] (a Code.Loop; p is -1 if it cannot be
+ *                         accelerated); skip len ops (the body and its END) if none are left
+ * END d len               if --counter d > 0, jump back len ops (to the start of the body)
+ * CALL r p n a1 .. an     r := call of constants[p] with the n arg registers (constants[p] is
+ *                         the Program, replaced by its VmCode when it is first called)
+ * PRINT p                 print constants[p] (a Code.Print)
+ * INPUT r p               r := input with constants[p] (a Code.Input)
+ * DEFINE p                define constants[p] (a Definition) at the top level
+ * </pre>
+ *
+ * Each run of the code has `loopDepth` loop counters, indexed by the nesting depth `d` of the loop.
+ * Programs cannot be recursive, so a program's code is never running twice at once: every call of
+ * it reuses the same `regs` and `counters`.
+ *
+ * @param program the compiled program, or `null` for top-level code
+ * @param scope register names, for error messages
+ * @param loopDepth the maximum loop nesting depth of `ops`
+ * @param ops the instructions
+ * @param constants objects referenced by the instructions
+ * @param regs the registers of a program, reset on each call, or `null` for top-level code
+ * @param counters the loop counters, of length `loopDepth`
+ */
+record VmCode(
+    Program program,
+    Scope scope,
+    int loopDepth,
+    int[] ops,
+    Object[] constants,
+    long[] regs,
+    int[] counters) {
+  static final int ZERO = 0;
+  static final int INC = 1;
+  static final int LOOP = 2;
+  static final int END = 3;
+  static final int CALL = 4;
+  static final int PRINT = 5;
+  static final int INPUT = 6;
+  static final int DEFINE = 7;
+  static final int SET = 8;
+  static final int ADD = 9;
+  static final int COPY = 10;
+  static final int ADDV = 11;
+  static final int ARG = 12;
+  static final int RES = 13;
+}
@@ -0,0 +1,115 @@
+package com.davidconneely.looplang.interpreter;
+
+import com.davidconneely.looplang.compiler.Code;
+import com.davidconneely.looplang.compiler.Program;
+import com.davidconneely.looplang.compiler.Scope;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flattens resolved code to a {@link VmCode} instruction stream. Called programs are not compiled
+ * along with their callers: the interpreter links each call site when it is first run, so a long
+ * chain of programs never recurses here either.
+ */
+final class VmCompiler {
+  private final Scope scope;
+  private final List<Object> constants;
+  private int[] ops;
+  private int length;
+  private int depth;
+  private int loopDepth;
+
+  private VmCompiler(final Scope scope) {
+    this.scope = scope;
+    this.constants = new ArrayList<>();
+    this.ops = new int[16];
+  }
+
+  /** Compiles a program, unless already in `programs`. */
+  static VmCode compile(final Program program, final Map<Program, VmCode> programs) {
+    VmCode code = programs.get(program);
+    if (code == null) {
+      final VmCompiler compiler = new VmCompiler(program.scope());
+      compiler.emit(program.body());
+      code = compiler.build(program);
+      programs.put(program, code);
+    }
+    return code;
+  }
+
+  /** Compiles top-level code, resolved against `scope`. */
+  static VmCode compile(final Code code, final Scope scope) {
+    final VmCompiler compiler = new VmCompiler(scope);
+    compiler.emit(code);
+    return compiler.build(null);
+  }
+
+  private VmCode build(final Program program) {
+    return new VmCode(
+        program,
+        scope,
+        loopDepth,
+        Arrays.copyOf(ops, length),
+        constants.toArray(),
+        program != null ? new long[program.frameSize()] : null,
+        new int[loopDepth]);
+  }
+
+  private void emit(final Code[] body) {
+    for (Code code : body) {
+      emit(code);
+    }
+  }
+
+  private void emit(final Code code) {
+    switch (code) {
+      case Code.Zero(int slot) -> add(VmCode.ZERO, slot);
+      case Code.Increment(int slot) -> add(VmCode.INC, slot);
+      case Code.Set(int slot, int value) -> add(VmCode.SET, slot, value);
+      case Code.Add(int slot, int value) -> add(VmCode.ADD, slot, value);
+      case Code.Copy(int slot, int source) -> add(VmCode.COPY, slot, source);
+      case Code.Argument(int slot, int source) -> add(VmCode.ARG, slot, source);
+      case Code.Result(int slot, int source) -> add(VmCode.RES, slot, source);
+      case Code.AddVariable(int slot, int source) -> add(VmCode.ADDV, slot, source);
+      case Code.Loop loop -> {
+        final int counter = depth++;
+        loopDepth = Math.max(loopDepth, depth);
+        add(
+            VmCode.LOOP,
+            loop.slot(),
+            counter,
+            0,
+            LoopAccelerator.accepts(loop) ? constant(loop) : -1);
+        final int start = length;
+        emit(loop.body());
+        add(VmCode.END, counter, length + 3 - start);
+        ops[start - 2] = length - start;
+        --depth;
+      }
+      case Code.Call(int slot, Program program, int[] args) -> {
+        add(VmCode.CALL, slot, constant(program), args.length);
+        for (int arg : args) {
+          add(arg);
+        }
+      }
+      case Code.Print print -> add(VmCode.PRINT, constant(print));
+      case Code.Input input -> add(VmCode.INPUT, input.slot(), constant(input));
+      case Code.Define define -> add(VmCode.DEFINE, constant(define.definition()));
+    }
+  }
+
+  private int constant(final Object value) {
+    constants.add(value);
+    return constants.size() - 1;
+  }
+
+  private void add(final int... words) {
+    if (length + words.length > ops.length) {
+      ops = Arrays.copyOf(ops, Math.max(length + words.length, ops.length * 2));
+    }
+    System.arraycopy(words, 0, ops, length, words.length);
+    length += words.length;
+  }
+}
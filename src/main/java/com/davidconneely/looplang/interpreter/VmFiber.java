@@ -0,0 +1,221 @@
+package com.davidconneely.looplang.interpreter;
+
+import static com.davidconneely.looplang.compiler.Code.UNDEFINED;
+
+import com.davidconneely.looplang.compiler.ClosedForm;
+import com.davidconneely.looplang.compiler.Code;
+import com.davidconneely.looplang.compiler.Program;
+import com.davidconneely.looplang.compiler.Scope;
+import com.davidconneely.looplang.statement.Definition;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * One run of a {@link VmCode} instruction stream, which can be suspended after any number of
+ * instructions and resumed later (on any thread). All of its state is on the heap: the registers
+ * and loop counters of the running code, its `pc`, and a stack of suspended callers, so the depth
+ * of calls is only limited by memory. Calls allocate nothing once the stack has grown to the depth
+ * of the calls: each program runs in the registers of its {@link VmCode}.
+ */
+final class VmFiber {
+  private static final int INITIAL_DEPTH = 16;
+
+  private final InterpreterContext context;
+  private final Map<Program, VmCode> programs;
+  // the stack of suspended callers, as parallel arrays of their code, registers and return state.
+  private VmCode[] callers;
+  private long[][] callerRegs;
+  private int[] callerPcs;
+  private int[] callerResults;
+  private int depth;
+  private VmCode code;
+  private long[] regs;
+  private int[] counters;
+  private int pc;
+  private boolean finished;
+
+  VmFiber(
+      final InterpreterContext context,
+      final Map<Program, VmCode> programs,
+      final VmCode code,
+      final long[] regs) {
+    this.context = context;
+    this.programs = programs;
+    this.callers = new VmCode[INITIAL_DEPTH];
+    this.callerRegs = new long[INITIAL_DEPTH][];
+    this.callerPcs = new int[INITIAL_DEPTH];
+    this.callerResults = new int[INITIAL_DEPTH];
+    this.code = code;
+    this.regs = regs;
+    this.counters = code.counters();
+  }
+
+  /** Whether the code has run to the end (so must not be resumed again). */
+  boolean finished() {
+    return finished;
+  }
+
+  /**
+   * Runs at most `steps` more instructions, returning how many of them were left unused when the
+   * code finished (or `0` if it has been suspended).
+   */
+  long resume(final long steps) {
+    long budget = steps;
+    int[] ops = code.ops();
+    Object[] constants = code.constants();
+    Scope scope = code.scope();
+    int pc = this.pc;
+    while (true) {
+      if (pc == ops.length) {
+        if (depth == 0) {
+          this.pc = pc;
+          finished = true;
+          return budget;
+        }
+        --depth;
+        final long result = regs[Program.RESULT];
+        code = callers[depth];
+        regs = callerRegs[depth];
+        regs[callerResults[depth]] = result;
+        ops = code.ops();
+        constants = code.constants();
+        scope = code.scope();
+        counters = code.counters();
+        pc = callerPcs[depth];
+        callers[depth] = null;
+        callerRegs[depth] = null;
+        continue;
+      }
+      if (budget-- == 0) {
+        this.pc = pc;
+        return 0;
+      }
+      switch (ops[pc]) {
+        case VmCode.ZERO -> {
+          regs[ops[pc + 1]] = 0;
+          pc += 2;
+        }
+        case VmCode.INC -> {
+          final int r = ops[pc + 1];
+          regs[r] = Builtins.read(regs, r, scope) + 1;
+          pc += 2;
+        }
+        case VmCode.SET -> {
+          regs[ops[pc + 1]] = ops[pc + 2];
+          pc += 3;
+        }
+        case VmCode.ADD -> {
+          final int r = ops[pc + 1];
+          regs[r] = Builtins.read(regs, r, scope) + ops[pc + 2];
+          pc += 3;
+        }
+        case VmCode.COPY -> {
+          regs[ops[pc + 1]] = Builtins.loopCount(regs, ops[pc + 2], scope);
+          pc += 3;
+        }
+        case VmCode.ARG -> {
+          regs[ops[pc + 1]] = Builtins.read(regs, ops[pc + 2], scope);
+          pc += 3;
+        }
+        case VmCode.RES -> {
+          regs[ops[pc + 1]] = regs[ops[pc + 2]];
+          pc += 3;
+        }
+        case VmCode.ADDV -> {
+          final int r = ops[pc + 1];
+          final int count = Builtins.loopCount(regs, ops[pc + 2], scope);
+          if (count > 0) {
+            regs[r] = Builtins.read(regs, r, scope) + count;
+          }
+          pc += 3;
+        }
+        case VmCode.LOOP -> {
+          int count = Builtins.loopCount(regs, ops[pc + 1], scope);
+          final int p = ops[pc + 4];
+          if (p >= 0) {
+            count -= LoopAccelerator.run((Code.Loop) constants[p], count, regs);
+          }
+          counters[ops[pc + 2]] = count;
+          pc += 5;
+          if (count == 0) {
+            pc += ops[pc - 2];
+          }
+        }
+        case VmCode.END -> {
+          pc += 3;
+          if (--counters[ops[pc - 2]] > 0) {
+            pc -= ops[pc - 1];
+          }
+        }
+        case VmCode.CALL -> {
+          final int p = ops[pc + 2];
+          if (constants[p] instanceof Program program) {
+            constants[p] = VmCompiler.compile(program, programs); // link on first call.
+          }
+          final VmCode callee = (VmCode) constants[p];
+          final int n = ops[pc + 3];
+          final Program program = callee.program();
+          final ClosedForm closedForm = program.closedForm();
+          final long value =
+              closedForm != null ? closedForm.evaluate(regs, ops, pc + 4) : UNDEFINED;
+          if (value != UNDEFINED) {
+            regs[ops[pc + 1]] = value;
+            pc += 4 + n;
+          } else {
+            final long[] calleeRegs = callee.regs();
+            Arrays.fill(calleeRegs, UNDEFINED);
+            calleeRegs[Program.RESULT] = 0;
+            final int[] paramSlots = program.paramSlots();
+            for (int i = 0; i < n; ++i) {
+              calleeRegs[paramSlots[i]] = Builtins.read(regs, ops[pc + 4 + i], scope);
+            }
+            push(pc + 4 + n, ops[pc + 1]);
+            code = callee;
+            regs = calleeRegs;
+            ops = code.ops();
+            constants = code.constants();
+            scope = code.scope();
+            counters = code.counters();
+            pc = 0;
+          }
+        }
+        case VmCode.PRINT -> {
+          Builtins.print((Code.Print) constants[ops[pc + 1]], regs);
+          pc += 2;
+        }
+        case VmCode.INPUT -> {
+          regs[ops[pc + 1]] = Builtins.input((Code.Input) constants[ops[pc + 2]], regs, scope);
+          pc += 3;
+        }
+        case VmCode.DEFINE -> {
+          final Definition definition = (Definition) constants[ops[pc + 1]];
+          if (code.program() != null) {
+            throw Builtins.nestedProgram(definition.program(), code.program().name());
+          }
+          context.setProgram(definition.program(), definition.params(), definition.body());
+          pc += 2;
+        }
+        default -> throw new IllegalStateException("bad opcode " + ops[pc] + " at " + pc);
+      }
+    }
+  }
+
+  /**
+   * Suspends the running code as a caller, to carry on from `pc` when the callee returns; `result`
+   * is the register that receives the callee's `x0`.
+   */
+  private void push(final int pc, final int result) {
+    if (depth == callers.length) {
+      final int length = depth * 2;
+      callers = Arrays.copyOf(callers, length);
+      callerRegs = Arrays.copyOf(callerRegs, length);
+      callerPcs = Arrays.copyOf(callerPcs, length);
+      callerResults = Arrays.copyOf(callerResults, length);
+    }
+    callers[depth] = code;
+    callerRegs[depth] = regs;
+    callerPcs[depth] = pc;
+    callerResults[depth] = result;
+    ++depth;
+  }
+}
@@ -0,0 +1,48 @@
+package com.davidconneely.looplang.interpreter;
+
+import com.davidconneely.looplang.compiler.Code;
+import com.davidconneely.looplang.compiler.Program;
+import com.davidconneely.looplang.compiler.Resolver;
+import com.davidconneely.looplang.statement.Definition;
+import com.davidconneely.looplang.statement.Statement;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs each statement as a {@link VmCode} instruction stream over a register file (the `long[]`
+ * frame), in a {@link VmFiber} that neither loops nor calls by recursion, so it can also be
+ * suspended and resumed (see {@link Scheduler}). Unlike {@link BytecodeInterpreter}, nothing is
+ * generated or loaded, so there is no start-up cost beyond flattening the code.
+ */
+final class VmInterpreter implements Interpreter {
+  private final InterpreterContext context;
+  private final Map<Program, VmCode> programs;
+
+  VmInterpreter(final InterpreterContext context) {
+    this.context = context;
+    this.programs = new IdentityHashMap<>();
+  }
+
+  @Override
+  public void interpret(final Statement statement) {
+    final VmFiber fiber = start(statement);
+    if (fiber != null) {
+      fiber.resume(Long.MAX_VALUE);
+    }
+  }
+
+  /**
+   * Starts running a statement as a suspended {@link VmFiber}, or returns `null` if it has already
+   * finished (a definition needs no running).
+   */
+  VmFiber start(final Statement statement) {
+    if (statement instanceof Definition(String name, List<String> params, List<Statement> body)) {
+      context.setProgram(name, params, body);
+      return null;
+    }
+    final Frame frame = Frame.of(context);
+    final Code code = Resolver.resolve(statement, frame.scope(), context::getProgram);
+    return new VmFiber(context, programs, VmCompiler.compile(code, frame.scope()), frame.values());
+  }
+}
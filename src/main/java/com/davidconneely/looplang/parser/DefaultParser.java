@@ -27,6 +27,11 @@ final class DefaultParser implements Parser {
 
   @Override
   public Statement next() throws IOException {
+    final Statement statement = nextStatement();
+    return statement != null ? context.intern(statement) : null;
+  }
+
+  private Statement nextStatement() throws IOException {
     while (true) {
       Token token = lexer.next();
       switch (token.kind()) {
@@ -2,15 +2,26 @@ package com.davidconneely.looplang.parser;
 
 import com.davidconneely.looplang.lexer.Location;
 import com.davidconneely.looplang.token.Token;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 public final class ParserContext {
   private final Location location;
   private final Set<String> definedPrograms;
+  private final Deque<Assignments> definitions;
+  private final Map<Object, WeakReference<Object>> interned;
 
   ParserContext(final Location location) {
     this.definedPrograms = new HashSet<>();
+    this.definitions = new ArrayDeque<>();
+    this.interned = new WeakHashMap<>();
     this.location = location;
   }
 
@@ -18,6 +29,30 @@ public final class ParserContext {
     return location;
   }
 
+  /**
+   * The one instance of each parsed statement or body equal to `value`. Statements (and their
+   * bodies, as parsed) are immutable and compared structurally, so each is interned as it is
+   * parsed, and identical subtrees share one instance: one that is repeated in a script is kept
+   * once, and anything derived from it can be cached by identity. The names and print tokens in
+   * them are interned too, so that each distinct name is kept as one string however often it is
+   * used.
+   *
+   * <p>The table holds its entries weakly, so it does not keep alive a statement that nothing else
+   * refers to, such as one typed at the top level and already run. A parsed body caches its hash
+   * code, so interning each statement costs time in its own size, not that of every statement
+   * nested in it.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T intern(final T value) {
+    final WeakReference<Object> reference = interned.get(value);
+    final Object existing = reference != null ? reference.get() : null;
+    if (existing != null) {
+      return (T) existing;
+    }
+    interned.put(value, new WeakReference<>(value));
+    return value;
+  }
+
   public void addDefinedProgram(final String name) {
     definedPrograms.add(name);
   }
@@ -28,4 +63,83 @@ public final class ParserContext {
           "program `" + name + "` is not fully-defined before call to it", token);
     }
   }
+
+  /**
+   * Starts the body of a `PROGRAM`, in which every variable read (other than in a `PRINT`) must be
+   * assigned on some path before it, as the program starts with only `x0` and its params defined.
+   * At the top level, variables may have been set before the statement was parsed, so are not
+   * checked.
+   *
+   * <p>This only finds variables that may have been assigned, not those that definitely have been:
+   * one assigned only in a loop that runs no times passes, so no engine relies on this to leave out
+   * the check when the read runs. (The bytecode engines leave it out only for variables that their
+   * own definite-assignment analysis finds are assigned on every path.)
+   */
+  public void enterProgram(final List<String> params) {
+    definitions.push(new Assignments(params));
+  }
+
+  public void exitProgram() {
+    definitions.pop();
+  }
+
+  /** Starts the body of a loop, which may read variables assigned later in it. */
+  public void enterLoop() {
+    final Assignments assignments = definitions.peek();
+    if (assignments != null) {
+      ++assignments.loopDepth;
+    }
+  }
+
+  public void exitLoop() {
+    final Assignments assignments = definitions.peek();
+    if (assignments != null && --assignments.loopDepth == 0) {
+      for (Token token : assignments.pendingReads) {
+        checkVariableMayBeAssigned(assignments, token);
+      }
+      assignments.pendingReads.clear();
+    }
+  }
+
+  public void addAssignedVariable(final String name) {
+    final Assignments assignments = definitions.peek();
+    if (assignments != null) {
+      assignments.variables.add(name);
+    }
+  }
+
+  /**
+   * Checks that the variable read at `token` may have been assigned before it, or (in a loop) by
+   * the end of the outermost loop, so by an earlier iteration.
+   */
+  public void checkVariableMayBeAssigned(final Token token) {
+    final Assignments assignments = definitions.peek();
+    if (assignments != null) {
+      if (assignments.loopDepth > 0) {
+        assignments.pendingReads.add(token);
+      } else {
+        checkVariableMayBeAssigned(assignments, token);
+      }
+    }
+  }
+
+  private static void checkVariableMayBeAssigned(final Assignments assignments, final Token token) {
+    if (!assignments.variables.contains(token.value())) {
+      throw new ParserException(
+          "variable `" + token.value() + "` is not assigned before it is read", token);
+    }
+  }
+
+  // the variables of a program being defined that may have been assigned so far.
+  private static final class Assignments {
+    private final Set<String> variables;
+    private final List<Token> pendingReads;
+    private int loopDepth;
+
+    Assignments(final List<String> params) {
+      this.variables = new HashSet<>(params);
+      this.variables.add("X0"); // the result, which starts at `0`.
+      this.pendingReads = new ArrayList<>();
+    }
+  }
 }
@@ -4,9 +4,6 @@ import static com.davidconneely.looplang.statement.StatementUtils.nextTokenWithK
 import static com.davidconneely.looplang.token.Token.Kind.ASSIGN;
 import static com.davidconneely.looplang.token.Token.Kind.IDENTIFIER;
 
-import com.davidconneely.looplang.interpreter.Interpreter;
-import com.davidconneely.looplang.interpreter.InterpreterContext;
-import com.davidconneely.looplang.interpreter.InterpreterFactory;
 import com.davidconneely.looplang.lexer.Lexer;
 import com.davidconneely.looplang.parser.ParserContext;
 import com.davidconneely.looplang.token.Token;
@@ -20,7 +17,7 @@ import java.util.stream.Collectors;
  * @param program called program name to right of `:=` sign
  * @param args variable names of the args to the call
  */
-record AssignCall(String variable, String program, List<String> args) implements Statement {
+public record AssignCall(String variable, String program, List<String> args) implements Statement {
   static AssignCall parse(final ParserContext context, final Lexer lexer) throws IOException {
     final String variable =
         nextTokenWithKind(lexer, IDENTIFIER, "as lvalue variable name in call assignment").value();
@@ -28,23 +25,12 @@ record AssignCall(String variable, String program, List<String> args) implements
     Token token = nextTokenWithKind(lexer, IDENTIFIER, "as program name in call");
     final String program = token.value();
     context.checkProgramIsDefined(program, token);
-    final List<String> args = Definition.nextTokensAsCSVNames(lexer, "in args list in call");
-    return new AssignCall(variable, program, args);
-  }
-
-  @Override
-  public void interpret(final InterpreterContext context) {
-    final InterpreterContext subcontext = context.getProgramContextOrThrow(program, args);
-    if (subcontext.getVariable("X0").isEmpty()) {
-      subcontext.setVariable("X0", 0);
-    }
-    final List<Statement> body = context.getProgramBody(program);
-    final Interpreter interpreter = InterpreterFactory.newInterpreter(subcontext);
-    for (Statement statement : body) {
-      interpreter.interpret(statement);
-    }
-    final int x0 = subcontext.getVariable("X0").orElse(0);
-    context.setVariable(variable, x0);
+    final List<Token> argTokens = Definition.nextTokensAsCSV(lexer, "in args list in call");
+    argTokens.forEach(context::checkVariableMayBeAssigned);
+    context.addAssignedVariable(variable);
+    final List<String> args =
+        context.intern(argTokens.stream().map(arg -> context.intern(arg.value())).toList());
+    return new AssignCall(context.intern(variable), context.intern(program), args);
   }
 
   @Override
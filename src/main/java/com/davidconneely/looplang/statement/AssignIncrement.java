@@ -6,7 +6,6 @@ import static com.davidconneely.looplang.token.Token.Kind.IDENTIFIER;
 import static com.davidconneely.looplang.token.Token.Kind.NUMBER;
 import static com.davidconneely.looplang.token.Token.Kind.PLUS;
 
-import com.davidconneely.looplang.interpreter.InterpreterContext;
 import com.davidconneely.looplang.lexer.Lexer;
 import com.davidconneely.looplang.parser.ParserContext;
 import com.davidconneely.looplang.parser.ParserException;
@@ -14,7 +13,7 @@ import com.davidconneely.looplang.token.Token;
 import java.io.IOException;
 import java.util.Locale;
 
-record AssignIncrement(String variable) implements Statement {
+public record AssignIncrement(String variable) implements Statement {
   static AssignIncrement parse(final ParserContext context, final Lexer lexer) throws IOException {
     final String variable =
         nextTokenWithKind(lexer, IDENTIFIER, "as lvalue variable name in increment").value();
@@ -22,11 +21,12 @@ record AssignIncrement(String variable) implements Statement {
     Token token = nextTokenWithKind(lexer, IDENTIFIER, "as rvalue variable name in increment");
     String variable2 = token.value();
     checkVariableIsValid(variable, variable2, token);
+    context.checkVariableMayBeAssigned(token);
     nextTokenWithKind(lexer, PLUS, "after rvalue variable name in increment");
     token = nextTokenWithKind(lexer, NUMBER, "after plus sign in increment");
     final int number = token.valueInt();
     checkNumberIsValid(number, token);
-    return new AssignIncrement(variable);
+    return new AssignIncrement(context.intern(variable));
   }
 
   private static void checkVariableIsValid(
@@ -48,11 +48,6 @@ record AssignIncrement(String variable) implements Statement {
     }
   }
 
-  @Override
-  public void interpret(final InterpreterContext context) {
-    context.setVariable(variable, context.getVariableOrThrow(variable) + 1);
-  }
-
   @Override
   public String toString() {
     return variable.toLowerCase(Locale.ROOT) + " := " + variable.toLowerCase(Locale.ROOT) + " + 1";
@@ -5,7 +5,6 @@ import static com.davidconneely.looplang.token.Token.Kind.ASSIGN;
 import static com.davidconneely.looplang.token.Token.Kind.IDENTIFIER;
 import static com.davidconneely.looplang.token.Token.Kind.NUMBER;
 
-import com.davidconneely.looplang.interpreter.InterpreterContext;
 import com.davidconneely.looplang.lexer.Lexer;
 import com.davidconneely.looplang.parser.ParserContext;
 import com.davidconneely.looplang.parser.ParserException;
@@ -13,7 +12,7 @@ import com.davidconneely.looplang.token.Token;
 import java.io.IOException;
 import java.util.Locale;
 
-record AssignZero(String variable) implements Statement {
+public record AssignZero(String variable) implements Statement {
   static AssignZero parse(final ParserContext context, final Lexer lexer) throws IOException {
     final String variable =
         nextTokenWithKind(lexer, IDENTIFIER, "as lvalue variable name in zero assignment").value();
@@ -21,7 +20,8 @@ record AssignZero(String variable) implements Statement {
     Token token = nextTokenWithKind(lexer, NUMBER, "as rvalue in zero assignment");
     final int number = token.valueInt();
     checkNumberIsValid(number, token);
-    return new AssignZero(variable);
+    context.addAssignedVariable(variable);
+    return new AssignZero(context.intern(variable));
   }
 
   private static void checkNumberIsValid(final int number, Token token) {
@@ -30,11 +30,6 @@ record AssignZero(String variable) implements Statement {
     }
   }
 
-  @Override
-  public void interpret(final InterpreterContext context) {
-    context.setVariable(variable, 0);
-  }
-
   @Override
   public String toString() {
     return variable.toLowerCase(Locale.ROOT) + " := 0";
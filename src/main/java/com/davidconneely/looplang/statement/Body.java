@@ -0,0 +1,55 @@
+package com.davidconneely.looplang.statement;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The statements of a parsed body, as an immutable list backed by an array. Its hash code is
+ * computed once, when it is built: statements are hashed (and interned) bottom-up as they are
+ * parsed, so a statement enclosing this body hashes it in constant time, rather than hashing every
+ * statement nested in it again at each level.
+ */
+final class Body extends AbstractList<Statement> implements RandomAccess {
+  private final Statement[] statements;
+  private final int hash;
+
+  private Body(final Statement[] statements) {
+    this.statements = statements;
+    int hash = 1;
+    for (Statement statement : statements) {
+      hash = 31 * hash + statement.hashCode();
+    }
+    this.hash = hash;
+  }
+
+  static Body of(final List<Statement> statements) {
+    return new Body(statements.toArray(Statement[]::new));
+  }
+
+  @Override
+  public Statement get(final int index) {
+    return statements[index];
+  }
+
+  @Override
+  public int size() {
+    return statements.length;
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(final Object other) {
+    if (other == this) {
+      return true;
+    }
+    if (other instanceof Body body && body.hash != hash) {
+      return false;
+    }
+    return super.equals(other);
+  }
+}
@@ -9,7 +9,6 @@ import static com.davidconneely.looplang.token.Token.Kind.LPAREN;
 import static com.davidconneely.looplang.token.Token.Kind.PROGRAM;
 import static com.davidconneely.looplang.token.Token.Kind.RPAREN;
 
-import com.davidconneely.looplang.interpreter.InterpreterContext;
 import com.davidconneely.looplang.lexer.Lexer;
 import com.davidconneely.looplang.parser.Parser;
 import com.davidconneely.looplang.parser.ParserContext;
@@ -21,27 +20,41 @@ import java.util.List;
 import java.util.Locale;
 import java.util.stream.Collectors;
 
-record Definition(String program, List<String> params, List<Statement> body) implements Statement {
+public record Definition(String program, List<String> params, List<Statement> body)
+    implements Statement {
   static Definition parse(final ParserContext context, final Lexer lexer) throws IOException {
     nextTokenWithKind(lexer, PROGRAM, "in definition");
     final String program = nextTokenWithKind(lexer, IDENTIFIER, "as program in definition").value();
-    final List<String> params = nextTokensAsCSVNames(lexer, "in params list in definition");
+    final List<String> params =
+        context.intern(nextTokensAsCSVNames(context, lexer, "in params list in definition"));
     Token token = lexer.next();
     if (token.kind() != DO) {
       lexer.pushback(token); // `DO` is optional.
     }
-    final List<Statement> body = parseBody(lexer, context);
-    return new Definition(program, params, body);
+    context.enterProgram(params);
+    final List<Statement> body;
+    try {
+      body = parseBody(lexer, context);
+    } finally {
+      context.exitProgram();
+    }
+    return new Definition(context.intern(program), params, body);
   }
 
-  static List<String> nextTokensAsCSVNames(final Lexer lexer, final String role)
-      throws IOException {
-    List<String> names = new ArrayList<>();
+  static List<String> nextTokensAsCSVNames(
+      final ParserContext context, final Lexer lexer, final String role) throws IOException {
+    return nextTokensAsCSV(lexer, role).stream()
+        .map(token -> context.intern(token.value()))
+        .toList();
+  }
+
+  static List<Token> nextTokensAsCSV(final Lexer lexer, final String role) throws IOException {
+    List<Token> names = new ArrayList<>();
     nextTokenWithKind(
         lexer, LPAREN, role); // parentheses in PROGRAM definition and call are required.
     Token token = lexer.next();
     while (token.kind() == IDENTIFIER) {
-      names.add(token.value());
+      names.add(token);
       token = lexer.next();
       if (token.kind() != COMMA) {
         break;
@@ -62,12 +75,7 @@ record Definition(String program, List<String> params, List<Statement> body) imp
       body.add(statement);
       statement = parser.next();
     }
-    return body;
-  }
-
-  @Override
-  public void interpret(final InterpreterContext interpreterContext) {
-    interpreterContext.setProgram(program, params, body);
+    return context.intern(Body.of(body));
   }
 
   @Override
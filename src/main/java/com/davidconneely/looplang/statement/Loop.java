@@ -5,9 +5,6 @@ import static com.davidconneely.looplang.token.Token.Kind.DO;
 import static com.davidconneely.looplang.token.Token.Kind.IDENTIFIER;
 import static com.davidconneely.looplang.token.Token.Kind.LOOP;
 
-import com.davidconneely.looplang.interpreter.Interpreter;
-import com.davidconneely.looplang.interpreter.InterpreterContext;
-import com.davidconneely.looplang.interpreter.InterpreterFactory;
 import com.davidconneely.looplang.lexer.Lexer;
 import com.davidconneely.looplang.parser.ParserContext;
 import com.davidconneely.looplang.token.Token;
@@ -15,32 +12,20 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-record Loop(String variable, List<Statement> body) implements Statement {
+public record Loop(String variable, List<Statement> body) implements Statement {
   static Loop parse(final ParserContext context, final Lexer lexer) throws IOException {
     nextTokenWithKind(lexer, LOOP, "in loop");
-    final String variable =
-        nextTokenWithKind(lexer, IDENTIFIER, "as count variable in loop").value();
-    Token token = lexer.next();
+    Token token = nextTokenWithKind(lexer, IDENTIFIER, "as count variable in loop");
+    final String variable = token.value();
+    context.checkVariableMayBeAssigned(token);
+    token = lexer.next();
     if (token.kind() != DO) {
       lexer.pushback(token); // `DO` is optional.
     }
+    context.enterLoop();
     final List<Statement> body = Definition.parseBody(lexer, context);
-    return new Loop(variable, body);
-  }
-
-  @Override
-  public void interpret(final InterpreterContext context) {
-    final int count = context.getVariableOrThrow(variable);
-    if (count < 0) {
-      throw new com.davidconneely.looplang.interpreter.InterpreterException(
-          "loop count for variable `" + variable + "` is negative: " + count);
-    }
-    final Interpreter interpreter = InterpreterFactory.newInterpreter(context);
-    for (int i = 0; i < count; ++i) {
-      for (Statement statement : body) {
-        interpreter.interpret(statement);
-      }
-    }
+    context.exitLoop();
+    return new Loop(context.intern(variable), body);
   }
 
   @Override
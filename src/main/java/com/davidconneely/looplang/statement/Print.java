@@ -9,9 +9,9 @@ import static com.davidconneely.looplang.token.Token.Kind.PRINT;
 import static com.davidconneely.looplang.token.Token.Kind.RPAREN;
 import static com.davidconneely.looplang.token.Token.Kind.STRING;
 
-import com.davidconneely.looplang.interpreter.InterpreterContext;
 import com.davidconneely.looplang.lexer.Lexer;
 import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.token.LocatedToken;
 import com.davidconneely.looplang.token.Token;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -19,19 +19,23 @@ import java.util.List;
 import java.util.Locale;
 import java.util.stream.Collectors;
 
-record Print(List<Token> printTokens) implements Statement {
+public record Print(List<Token> printTokens) implements Statement {
   static Print parse(final ParserContext context, final Lexer lexer) throws IOException {
     nextTokenWithKind(lexer, PRINT, "in print");
-    List<Token> printTokens = nextPrintTokens(lexer, "in print arguments");
+    List<Token> printTokens = nextPrintTokens(context, lexer, "in print arguments");
     return new Print(printTokens);
   }
 
-  static List<Token> nextPrintTokens(final Lexer lexer, final String role) throws IOException {
+  static List<Token> nextPrintTokens(
+      final ParserContext context, final Lexer lexer, final String role) throws IOException {
     List<Token> tokens = new ArrayList<>();
     nextTokenWithKind(lexer, LPAREN, role); // parentheses in PRINT() and INPUT() are required now.
     Token token = lexer.next();
     while (isPrintTokenKind(token.kind())) {
-      tokens.add(token);
+      // without its location, which is only needed for parser errors, so that identical statements
+      // are equal (see `ParserContext.intern`).
+      tokens.add(
+          context.intern(token instanceof LocatedToken(Token unlocated, _) ? unlocated : token));
       token = lexer.next();
       if (token.kind() != COMMA) {
         break;
@@ -40,42 +44,13 @@ record Print(List<Token> printTokens) implements Statement {
     }
     lexer.pushback(token);
     nextTokenWithKind(lexer, RPAREN, role);
-    return tokens;
+    return List.copyOf(tokens);
   }
 
   private static boolean isPrintTokenKind(final Token.Kind kind) {
     return kind == STRING || kind == NUMBER || kind == IDENTIFIER;
   }
 
-  @Override
-  public void interpret(final InterpreterContext context) {
-    IO.println(printTokensToText(printTokens, context));
-  }
-
-  static String printTokensToText(final List<Token> printTokens, final InterpreterContext context) {
-    final StringBuilder sb = new StringBuilder();
-    boolean wasLastTokenString = true;
-    for (Token token : printTokens) {
-      boolean isThisTokenString = (token.kind() == STRING);
-      if (!wasLastTokenString && !isThisTokenString) {
-        sb.append(' ');
-      }
-      sb.append(
-          switch (token.kind()) {
-            case STRING -> token.value();
-            case NUMBER -> Integer.toString(token.valueInt());
-            case IDENTIFIER ->
-                context.getVariable(token.value()).stream()
-                    .mapToObj(Integer::toString)
-                    .findFirst()
-                    .orElse("(undefined)");
-            default -> "(unexpected " + token.kind().name() + ")";
-          });
-      wasLastTokenString = isThisTokenString;
-    }
-    return sb.toString();
-  }
-
   @Override
   public String toString() {
     return "PRINT(" + printTokensToString(printTokens) + ")";
@@ -1,8 +1,9 @@
 package com.davidconneely.looplang.statement;
 
-import com.davidconneely.looplang.interpreter.InterpreterContext;
-
-/** Each element knows how to parse and interpret itself. */
+/**
+ * Each element knows how to parse itself. Statements are immutable syntax; they are resolved and
+ * executed by the `interpreter` package (see {@code com.davidconneely.looplang.compiler.Resolver}).
+ */
 public sealed interface Statement
     permits AssignCall, AssignIncrement, AssignInput, AssignZero, Definition, Loop, Print {
   /*
@@ -10,6 +11,4 @@ public sealed interface Statement
       throw new UnsupportedOperationException("should call factory method in an implementing class, not the interface");
   }
   */
-
-  void interpret(InterpreterContext context);
 }
@@ -3,8 +3,11 @@ package com.davidconneely.looplang;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import com.davidconneely.looplang.compiler.CompilerException;
+import com.davidconneely.looplang.interpreter.Engine;
 import com.davidconneely.looplang.interpreter.Interpreter;
 import com.davidconneely.looplang.interpreter.InterpreterContext;
+import com.davidconneely.looplang.interpreter.InterpreterException;
 import com.davidconneely.looplang.interpreter.InterpreterFactory;
 import com.davidconneely.looplang.lexer.Lexer;
 import com.davidconneely.looplang.lexer.LexerFactory;
@@ -20,10 +23,17 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.Parameter;
+import org.junit.jupiter.params.ParameterizedClass;
+import org.junit.jupiter.params.provider.EnumSource;
 
 /** Integration tests based on examples from the README.md file. */
+@ParameterizedClass
+@EnumSource(Engine.class)
 class ReadmeExamplesIT {
 
+  @Parameter Engine engine;
+
   private ParserContext parserContext;
   private InterpreterContext interpreterContext;
   private Interpreter interpreter;
@@ -33,7 +43,7 @@ class ReadmeExamplesIT {
     Location location = Location.newFile("<test>");
     parserContext = ParserFactory.newContext(location);
     interpreterContext = InterpreterFactory.newGlobalContext(parserContext);
-    interpreter = InterpreterFactory.newInterpreter(interpreterContext);
+    interpreter = InterpreterFactory.newInterpreter(interpreterContext, engine);
   }
 
   private void execute(String code) throws IOException {
@@ -164,6 +174,22 @@ class ReadmeExamplesIT {
       assertThrows(ParserException.class, () -> execute("result := UNDEFINED()"));
     }
 
+    @Test
+    @DisplayName("Call with the wrong number of args is rejected even if it never runs")
+    void wrongArgCountRejectedWhenDefined() {
+      assertThrows(
+          CompilerException.class,
+          () ->
+              execute(
+                  """
+                    PROGRAM SUCC(x1) DO LOOP x1 DO x0 := x0 + 1 END; x0 := x0 + 1 END
+                    PROGRAM NEVER(x1) DO
+                        x2 := 0
+                        LOOP x2 DO x0 := SUCC(x1, x1) END
+                    END
+                    """));
+    }
+
     @Test
     @DisplayName("Self-recursion is not possible")
     void selfRecursionNotPossible() {
@@ -203,6 +229,23 @@ class ReadmeExamplesIT {
       assertThrows(Exception.class, () -> execute("x := undefined + 1"));
     }
 
+    @Test
+    @DisplayName("Variables assigned only in a loop that does not run are still undefined")
+    void variableAssignedInSkippedLoopThrows() {
+      assertThrows(
+          InterpreterException.class,
+          () ->
+              execute(
+                  """
+                    PROGRAM SKIPPED(x1) DO
+                        LOOP x1 DO x2 := 0 END
+                        LOOP x2 DO x0 := x0 + 1 END
+                    END
+                    zero := 0
+                    result := SKIPPED(zero)
+                    """));
+    }
+
     @Test
     @DisplayName("x0 in PROGRAM is initialised to 0")
     void x0InitialisedInProgram() throws IOException {
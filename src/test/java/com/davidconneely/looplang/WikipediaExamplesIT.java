@@ -3,6 +3,7 @@ package com.davidconneely.looplang;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.davidconneely.looplang.interpreter.Engine;
 import com.davidconneely.looplang.interpreter.Interpreter;
 import com.davidconneely.looplang.interpreter.InterpreterContext;
 import com.davidconneely.looplang.interpreter.InterpreterFactory;
@@ -19,6 +20,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.Parameter;
+import org.junit.jupiter.params.ParameterizedClass;
+import org.junit.jupiter.params.provider.EnumSource;
 
 /**
  * Integration tests based on examples from Wikipedia's LOOP programming language article.
@@ -26,8 +30,12 @@ import org.junit.jupiter.api.Test;
  * @see <a href="https://en.wikipedia.org/wiki/LOOP_(programming_language)">LOOP (programming
  *     language)</a>
  */
+@ParameterizedClass
+@EnumSource(Engine.class)
 class WikipediaExamplesIT {
 
+  @Parameter Engine engine;
+
   private ParserContext parserContext;
   private InterpreterContext interpreterContext;
   private Interpreter interpreter;
@@ -37,7 +45,7 @@ class WikipediaExamplesIT {
     Location location = Location.newFile("<test>");
     parserContext = ParserFactory.newContext(location);
     interpreterContext = InterpreterFactory.newGlobalContext(parserContext);
-    interpreter = InterpreterFactory.newInterpreter(interpreterContext);
+    interpreter = InterpreterFactory.newInterpreter(interpreterContext, engine);
   }
 
   private void execute(String code) throws IOException {
@@ -0,0 +1,163 @@
+package com.davidconneely.looplang.compiler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import com.davidconneely.looplang.interpreter.Engine;
+import com.davidconneely.looplang.interpreter.Interpreter;
+import com.davidconneely.looplang.interpreter.InterpreterContext;
+import com.davidconneely.looplang.interpreter.InterpreterException;
+import com.davidconneely.looplang.interpreter.InterpreterFactory;
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.Definition;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class ClosedFormTest {
+  // the programs from `Main.loop`, and a few more.
+  private static final String PROGRAMS =
+      """
+      PROGRAM ASSIGN(x1) DO x0 := 0; LOOP x1 DO x0 := x0 + 1 END END
+      PROGRAM ADD(x1, x2) DO x0 := ASSIGN(x1); LOOP x2 DO x0 := x0 + 1 END END
+      PROGRAM MULTIPLY(x1, x2) DO x0 := 0; LOOP x1 DO x0 := ADD(x0, x2) END END
+      PROGRAM PRED(x1) DO x2 := 0; LOOP x1 DO x0 := ASSIGN(x2); x2 := x2 + 1 END END
+      PROGRAM DIFF(x1, x2) DO x0 := ASSIGN(x1); LOOP x2 DO x0 := PRED(x0) END END
+      PROGRAM SIGNUM(x1) DO x0 := 0; LOOP x1 DO x0 := 0; x0 := x0 + 1 END END
+      PROGRAM NOT(x1) DO x0 := 0; x0 := x0 + 1; LOOP x1 DO x0 := 0 END END
+      PROGRAM FACTORIAL(x1) DO
+        x0 := 0; x0 := x0 + 1; x2 := 0; x2 := x2 + 1;
+        LOOP x1 DO x0 := MULTIPLY(x2, x0); x2 := x2 + 1 END
+      END
+      PROGRAM POWER(x1, x2) DO x0 := 0; x0 := x0 + 1; LOOP x2 DO x0 := MULTIPLY(x0, x1) END END
+      PROGRAM TRIANGLE(x1) DO x2 := 0; LOOP x1 DO x2 := x2 + 1; x0 := ADD(x0, x2) END END
+      PROGRAM MAYBE(x1) DO LOOP x1 DO x2 := 0 END; x0 := ASSIGN(x2) END
+      PROGRAM SHOW(x1) DO PRINT(x1); x0 := ASSIGN(x1) END
+      """;
+
+  private static final Map<String, Program> programs = new HashMap<>();
+
+  @BeforeAll
+  static void setUp() throws IOException {
+    Location location = Location.newFile("<test>");
+    ParserContext context = ParserFactory.newContext(location);
+    try (Lexer lexer = LexerFactory.newLexer(location, PROGRAMS)) {
+      Parser parser = ParserFactory.newParser(lexer, context, Token.Kind.EOF);
+      Statement statement;
+      while ((statement = parser.next()) != null) {
+        Definition definition = (Definition) statement;
+        context.addDefinedProgram(definition.program());
+        programs.put(
+            definition.program(),
+            Resolver.resolveProgram(
+                definition.program(), definition.params(), definition.body(), programs::get));
+      }
+    }
+  }
+
+  private static ClosedForm closedForm(String program) {
+    return programs.get(program).closedForm();
+  }
+
+  private static long evaluate(String program, long... args) {
+    int[] slots = new int[args.length];
+    for (int i = 0; i < args.length; ++i) {
+      slots[i] = i;
+    }
+    return closedForm(program).evaluate(args, slots);
+  }
+
+  @Test
+  void samplePrograms_haveClosedForms() {
+    assertEquals("$0", closedForm("ASSIGN").toString());
+    assertEquals("($0 + $1)", closedForm("ADD").toString());
+    assertEquals("($0 * $1)", closedForm("MULTIPLY").toString());
+    assertEquals("monus($0, 1)", closedForm("PRED").toString());
+    assertEquals("monus($0, $1)", closedForm("DIFF").toString());
+    assertEquals("($0 == 0 ? 0 : 1)", closedForm("SIGNUM").toString());
+    assertEquals("($0 == 0 ? 1 : 0)", closedForm("NOT").toString());
+    assertEquals("($0 ^ $1)", closedForm("POWER").toString());
+  }
+
+  @Test
+  void programsWithoutClosedForms_areLeftToRun() {
+    // the multiplier changes in every iteration, so is not a recurrence this solves.
+    assertNull(closedForm("FACTORIAL"));
+    assertNull(closedForm("TRIANGLE"));
+    // `x2` is only defined if the loop runs.
+    assertNull(closedForm("MAYBE"));
+    assertNull(closedForm("SHOW"));
+  }
+
+  @Test
+  void evaluate_computesTheValueReturned() {
+    assertEquals(2_000_000_000, evaluate("ADD", 1_500_000_000, 500_000_000));
+    assertEquals(2_147_450_880, evaluate("MULTIPLY", 65_535, 32_768));
+    assertEquals(0, evaluate("PRED", 0));
+    assertEquals(41, evaluate("PRED", 42));
+    assertEquals(0, evaluate("DIFF", 5, 7));
+    assertEquals(1_000_000_000, evaluate("DIFF", 2_000_000_000, 1_000_000_000));
+    assertEquals(1, evaluate("SIGNUM", 2_000_000_000));
+    assertEquals(1, evaluate("NOT", 0));
+    assertEquals(1 << 30, evaluate("POWER", 2, 30));
+    assertEquals(1, evaluate("POWER", 1, 2_000_000_000));
+    assertEquals(0, evaluate("POWER", 0, 2_000_000_000));
+  }
+
+  @Test
+  void evaluate_leavesCallsThatWouldOverflowToRun() {
+    assertEquals(Code.UNDEFINED, evaluate("ADD", 2_000_000_000, 2_000_000_000));
+    assertEquals(Code.UNDEFINED, evaluate("MULTIPLY", 65_536, 65_536));
+    assertEquals(Code.UNDEFINED, evaluate("POWER", 2, 31));
+    assertEquals(Code.UNDEFINED, evaluate("POWER", 3, 2_000_000_000));
+  }
+
+  @Test
+  void evaluate_leavesCallsWithUndefinedArgsToRun() {
+    assertEquals(Code.UNDEFINED, evaluate("DIFF", 5, Code.UNDEFINED));
+  }
+
+  @ParameterizedTest
+  @EnumSource(Engine.class)
+  void calls_useClosedFormsOnEveryEngine(Engine engine) throws IOException {
+    Location location = Location.newFile("<test>");
+    ParserContext parserContext = ParserFactory.newContext(location);
+    InterpreterContext context = InterpreterFactory.newGlobalContext(parserContext);
+    Interpreter interpreter = InterpreterFactory.newInterpreter(context, engine);
+    context.setVariable("A", 2_000_000_000);
+    context.setVariable("B", 65_536);
+    try (Lexer lexer = LexerFactory.newLexer(location, PROGRAMS + "c := DIFF(a, b)")) {
+      Parser parser = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF);
+      assertTimeoutPreemptively(
+          Duration.ofSeconds(10),
+          () -> {
+            Statement statement;
+            while ((statement = parser.next()) != null) {
+              interpreter.interpret(statement);
+            }
+          });
+    }
+    assertEquals(1_999_934_464, context.getVariable("C").orElse(-1));
+    // overflow is left to the body, which fails as it always has.
+    try (Lexer lexer = LexerFactory.newLexer(location, "c := MULTIPLY(b, b)")) {
+      Statement statement = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF).next();
+      InterpreterException e =
+          assertThrows(InterpreterException.class, () -> interpreter.interpret(statement));
+      assertEquals("loop count for variable `X1` is negative: -2147483648", e.getMessage());
+    }
+  }
+}
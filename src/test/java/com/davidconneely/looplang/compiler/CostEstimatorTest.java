@@ -0,0 +1,119 @@
+package com.davidconneely.looplang.compiler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+class CostEstimatorTest {
+  private static final String PROGRAMS =
+      """
+      PROGRAM ADD(x1, x2) DO x0 := 0; LOOP x1 DO x0 := x0 + 1 END; LOOP x2 DO x0 := x0 + 1 END END
+      PROGRAM MULTIPLY(x1, x2) DO x0 := 0; LOOP x1 DO x0 := ADD(x0, x2) END END
+      PROGRAM POWER(x1, x2) DO x0 := 0; x0 := x0 + 1; LOOP x2 DO x0 := MULTIPLY(x0, x1) END END
+      """;
+
+  private static CostEstimator.Cost estimate(String code, int maxInput) throws IOException {
+    Location location = Location.newFile("<test>");
+    ParserContext context = ParserFactory.newContext(location);
+    CostEstimator estimator = new CostEstimator(context, maxInput);
+    try (Lexer lexer = LexerFactory.newLexer(location, PROGRAMS + code)) {
+      Parser parser = ParserFactory.newParser(lexer, context, Token.Kind.EOF);
+      Statement statement;
+      while ((statement = parser.next()) != null) {
+        estimator.add(statement);
+      }
+    }
+    return estimator.estimate();
+  }
+
+  @Test
+  void straightLineCode_takesOneStepPerStatement() throws IOException {
+    assertEquals(new CostEstimator.Cost(3, 0, 0), estimate("x1 := 0; x1 := x1 + 1; PRINT(x1)", 10));
+  }
+
+  @Test
+  void loopOverInput_isBoundedByMaxInput() throws IOException {
+    // the `INPUT`, the loop, and an iteration and a `PRINT` for each value up to the bound.
+    assertEquals(
+        new CostEstimator.Cost(2 + 2 * 1000, 1, 0),
+        estimate("n := INPUT(); LOOP n DO PRINT(n) END", 1000));
+  }
+
+  @Test
+  void triangularLoop_isExtrapolatedQuadratically() throws IOException {
+    long steps =
+        estimate("n := INPUT(); i := 0; LOOP n DO i := i + 1; LOOP i DO PRINT(i) END END", 100)
+            .steps();
+    assertTrue(steps >= 100 * 101 && steps < 10 * 100 * 101, () -> "steps: " + steps);
+  }
+
+  @Test
+  void callWithClosedForm_takesOneStep() throws IOException {
+    assertEquals(
+        new CostEstimator.Cost(2, 2, 2), estimate("n := INPUT(); x := MULTIPLY(n, n)", 1000));
+  }
+
+  @Test
+  void loopOverPowerOfInput_takesTooManySteps() throws IOException {
+    CostEstimator.Cost cost =
+        estimate("n := INPUT(); x := POWER(n, n); LOOP x DO PRINT(x) END", 1000);
+    assertEquals(ClosedForm.SATURATED, cost.steps());
+    assertEquals(3, cost.loopDepth());
+    assertEquals(3, cost.callDepth());
+  }
+
+  @Test
+  void deepNestOfShortLoops_isEstimatedWithinBudget() throws IOException {
+    // the innermost body runs 8^7 times, too many to run each loop of 8 in full.
+    long steps = 2;
+    for (int i = 0; i < 7; ++i) {
+      steps = 1 + 8 * (1 + steps);
+    }
+    String code =
+        "n := 0"
+            + "; n := n + 1".repeat(8)
+            + "; c := 0; d := 0; "
+            + "LOOP n DO ".repeat(7)
+            + "c := c + 1; d := d + 1"
+            + " END".repeat(7);
+    assertEquals(new CostEstimator.Cost(11 + steps, 7, 0), estimate(code, 10));
+  }
+
+  @Test
+  void deeperNestOfLoops_isEstimatedRoughly() throws IOException {
+    long steps = 2;
+    for (int i = 0; i < 12; ++i) {
+      steps = 1 + 8 * (1 + steps);
+    }
+    String code =
+        "n := 0"
+            + "; n := n + 1".repeat(8)
+            + "; c := 0; d := 0; "
+            + "LOOP n DO ".repeat(12)
+            + "c := c + 1; d := d + 1"
+            + " END".repeat(12);
+    assertEquals(new CostEstimator.Cost(11 + steps, 12, 0), estimate(code, 10));
+  }
+
+  @Test
+  void programDefinedInLoop_isEstimatedWhereCalled() throws IOException {
+    // the `PRINT` leaves `SHOW` without a closed form, so its body is run.
+    String code =
+        """
+        one := 0; one := one + 1
+        LOOP one DO PROGRAM SHOW(x1) DO LOOP x1 DO PRINT(x1) END END END
+        n := INPUT(); x := SHOW(n)
+        """;
+    assertEquals(new CostEstimator.Cost(8 + 2 * 1000, 1, 1), estimate(code, 1000));
+  }
+}
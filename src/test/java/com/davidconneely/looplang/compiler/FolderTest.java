@@ -0,0 +1,154 @@
+package com.davidconneely.looplang.compiler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.davidconneely.looplang.interpreter.Engine;
+import com.davidconneely.looplang.interpreter.Interpreter;
+import com.davidconneely.looplang.interpreter.InterpreterContext;
+import com.davidconneely.looplang.interpreter.InterpreterFactory;
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.Definition;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class FolderTest {
+  private static final String PROGRAMS =
+      """
+      PROGRAM ADD(x1, x2) DO x0 := 0; LOOP x1 DO x0 := x0 + 1 END; LOOP x2 DO x0 := x0 + 1 END END
+      PROGRAM MULTIPLY(x1, x2) DO x0 := 0; LOOP x1 DO x0 := ADD(x0, x2) END END
+      PROGRAM FACTORIAL(x1) DO
+        x0 := 0; x0 := x0 + 1; x2 := 0; x2 := x2 + 1;
+        LOOP x1 DO x0 := MULTIPLY(x2, x0); x2 := x2 + 1 END
+      END
+      PROGRAM SIX() DO x1 := 0; x1 := x1 + 1; x1 := x1 + 1; x1 := x1 + 1; x0 := FACTORIAL(x1) END
+      PROGRAM SHOW(x1) DO x2 := 0; x2 := x2 + 1; PRINT("x1 =", x1, "x2 =", x2, "x3 =", x3) END
+      PROGRAM SOME(x1) DO
+        x2 := 0; x3 := 0; x3 := x3 + 1;
+        LOOP x1 DO x2 := ADD(x2, x3); x4 := ADD(x3, x3) END;
+        x0 := ADD(x2, x4)
+      END
+      PROGRAM BAD() DO x1 := 0; LOOP x1 DO x2 := 0 END; x0 := ADD(x1, x2) END
+      PROGRAM TWICE(x1) DO x2 := 0; x2 := x2 + 1; x2 := x2 + 1; x0 := ECHO(x2, x1); x3 := ECHO(x2, x0) END
+      PROGRAM ANY(x1, x2) DO x0 := ECHO(x1, x2) END
+      """;
+  // too long to be inlined, so it is called, and has no closed form, as it prints.
+  private static final String ECHO =
+      "PROGRAM ECHO(x1, x2) DO x0 := 0; LOOP x1 DO "
+          + "PRINT(x2); ".repeat(Inliner.MAX_SIZE)
+          + "x2 := x2 + 1; x0 := x0 + 1 END END\n";
+
+  private static final Map<String, Program> programs = new HashMap<>();
+
+  @BeforeAll
+  static void setUp() throws IOException {
+    Location location = Location.newFile("<test>");
+    ParserContext context = ParserFactory.newContext(location);
+    try (Lexer lexer = LexerFactory.newLexer(location, ECHO + PROGRAMS)) {
+      Parser parser = ParserFactory.newParser(lexer, context, Token.Kind.EOF);
+      Statement statement;
+      while ((statement = parser.next()) != null) {
+        Definition definition = (Definition) statement;
+        context.addDefinedProgram(definition.program());
+        programs.put(
+            definition.program(),
+            Resolver.resolveProgram(
+                definition.program(), definition.params(), definition.body(), programs::get));
+      }
+    }
+  }
+
+  private static Code[] body(String program) {
+    return programs.get(program).body();
+  }
+
+  @Test
+  void callsOnConstantArgs_areComputedAheadOfTime() {
+    // FACTORIAL is inlined, so its variables are set too.
+    Code[] body = body("SIX");
+    for (Code code : body) {
+      assertTrue(code instanceof Code.Set || code instanceof Code.Zero, code.toString());
+    }
+    assertEquals(new Code.Set(Program.RESULT, 6), body[body.length - 1]);
+  }
+
+  @Test
+  void knownValues_areFoldedIntoPrints() {
+    // x2 is no longer read, so it is not set either.
+    Code.Print print = assertInstanceOf(Code.Print.class, body("SHOW")[0]);
+    assertArrayEquals(new String[] {"x1 =", "x2 =1x3 =(undefined)"}, print.texts());
+    assertArrayEquals(new int[] {1}, print.slots());
+  }
+
+  @Test
+  void loopWithUnknownCount_forgetsOnlyWhatItAssigns() {
+    Code.Loop loop = assertInstanceOf(Code.Loop.class, body("SOME")[2]);
+    assertInstanceOf(Code.Call.class, loop.body()[0]);
+    assertEquals(new Code.Set(4, 2), loop.body()[1]);
+    assertInstanceOf(Code.Call.class, body("SOME")[3]);
+  }
+
+  @Test
+  void callsOnSomeConstantArgs_callSpecializedPrograms() {
+    Program echo = programs.get("ECHO");
+    Code.Call[] calls =
+        Arrays.stream(body("TWICE")).filter(Code.Call.class::isInstance).toArray(Code.Call[]::new);
+    assertEquals(2, calls.length);
+    Program specialized = calls[0].program();
+    assertNotSame(echo, specialized);
+    assertSame(specialized, calls[1].program());
+    assertSame(specialized, echo.specializations().computeIfAbsent(Arrays.asList(2, null), null));
+    // its loop, with a count of 2, is unrolled.
+    assertTrue(Arrays.stream(specialized.body()).noneMatch(Code.Loop.class::isInstance));
+    assertEquals(
+        2 * Inliner.MAX_SIZE,
+        Arrays.stream(specialized.body()).filter(Code.Print.class::isInstance).count());
+  }
+
+  @Test
+  void callsOnUnknownArgs_callTheProgramItself() {
+    assertSame(programs.get("ECHO"), ((Code.Call) body("ANY")[0]).program());
+  }
+
+  @ParameterizedTest
+  @EnumSource(Engine.class)
+  void specializedPrograms_behaveAsTheProgramOnEveryEngine(Engine engine) throws IOException {
+    ParserContext parserContext = ParserFactory.newContext(Location.newFile("<test>"));
+    InterpreterContext context = InterpreterFactory.newGlobalContext(parserContext);
+    Interpreter interpreter = InterpreterFactory.newInterpreter(context, engine);
+    try (Lexer lexer =
+        LexerFactory.newLexer(
+            Location.newFile("<test>"), ECHO + PROGRAMS + "r := TWICE(n); s := ANY(n, n)")) {
+      Parser parser = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF);
+      context.setVariable("N", 5);
+      Statement statement;
+      while ((statement = parser.next()) != null) {
+        interpreter.interpret(statement);
+      }
+    }
+    assertEquals(2, context.getVariable("R").orElse(-1));
+    assertEquals(5, context.getVariable("S").orElse(-1));
+  }
+
+  @Test
+  void codeThatWouldFail_isLeftToFail() {
+    assertInstanceOf(Code.Call.class, body("BAD")[1]);
+  }
+}
@@ -0,0 +1,83 @@
+package com.davidconneely.looplang.compiler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class FuserTest {
+
+  private Code[] resolve(String code) throws IOException {
+    Location location = Location.newFile("<test>");
+    List<Statement> statements = new ArrayList<>();
+    try (Lexer lexer = LexerFactory.newLexer(location, code)) {
+      ParserContext context = ParserFactory.newContext(location);
+      Parser parser = ParserFactory.newParser(lexer, context, Token.Kind.EOF);
+      Statement statement;
+      while ((statement = parser.next()) != null) {
+        statements.add(statement);
+      }
+    }
+    return Resolver.resolveBody(statements, new Scope(), _ -> null);
+  }
+
+  @Test
+  void zeroThenIncrements_becomesSet() throws IOException {
+    assertArrayEquals(
+        new Code[] {new Code.Set(0, 3)}, resolve("x := 0; x := x + 1; x := x + 1; x := x + 1"));
+  }
+
+  @Test
+  void increments_becomeAdd() throws IOException {
+    assertArrayEquals(new Code[] {new Code.Add(0, 2)}, resolve("x := x + 1; x := x + 1"));
+  }
+
+  @Test
+  void singleIncrement_isLeftAlone() throws IOException {
+    assertArrayEquals(new Code[] {new Code.Increment(0)}, resolve("x := x + 1"));
+  }
+
+  @Test
+  void incrementsOfDifferentVariables_areNotCombined() throws IOException {
+    assertArrayEquals(
+        new Code[] {new Code.Zero(0), new Code.Increment(1), new Code.Increment(0)},
+        resolve("x := 0; y := y + 1; x := x + 1"));
+  }
+
+  @Test
+  void loopOfIncrement_becomesAddVariable() throws IOException {
+    assertArrayEquals(new Code[] {new Code.AddVariable(1, 0)}, resolve("LOOP y DO x := x + 1 END"));
+  }
+
+  @Test
+  void zeroThenLoopOfIncrement_becomesCopy() throws IOException {
+    assertArrayEquals(
+        new Code[] {new Code.Copy(0, 1)}, resolve("x0 := 0; LOOP x1 DO x0 := x0 + 1 END"));
+  }
+
+  @Test
+  void zeroThenLoopOfSelfIncrement_isNotCopy() throws IOException {
+    Code[] body = resolve("x := 0; LOOP x DO x := x + 1 END");
+    assertEquals(2, body.length);
+    assertInstanceOf(Code.AddVariable.class, body[1]);
+  }
+
+  @Test
+  void loopBodies_areFused() throws IOException {
+    Code[] body = resolve("LOOP n DO x := 0; x := x + 1; x := x + 1; y := 0 END");
+    Code.Loop loop = assertInstanceOf(Code.Loop.class, body[0]);
+    assertArrayEquals(new Code[] {new Code.Set(1, 2), new Code.Zero(2)}, loop.body());
+  }
+}
@@ -0,0 +1,156 @@
+package com.davidconneely.looplang.compiler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.davidconneely.looplang.interpreter.Engine;
+import com.davidconneely.looplang.interpreter.Interpreter;
+import com.davidconneely.looplang.interpreter.InterpreterContext;
+import com.davidconneely.looplang.interpreter.InterpreterException;
+import com.davidconneely.looplang.interpreter.InterpreterFactory;
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.Definition;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class InlinerTest {
+  // TRIANGLE counts its param down, which leaves it without a closed form.
+  private static final String PROGRAMS =
+      """
+      PROGRAM ASSIGN(x1) DO x0 := 0; LOOP x1 DO x0 := x0 + 1 END END
+      PROGRAM ADD(x1, x2) DO x0 := ASSIGN(x1); LOOP x2 DO x0 := x0 + 1 END END
+      PROGRAM PRED(x1) DO x2 := 0; LOOP x1 DO x0 := ASSIGN(x2); x2 := x2 + 1 END END
+      PROGRAM TRIANGLE(x1) DO x0 := 0; LOOP x1 DO x0 := ADD(x0, x1); x1 := PRED(x1) END END
+      PROGRAM MAYBE(x1) DO LOOP x1 DO x2 := 0 END; PRINT(x2) END
+      PROGRAM TRIANGLES(x1) DO LOOP x1 DO x0 := TRIANGLE(x1) END END
+      """;
+
+  private ParserContext parserContext;
+  private Map<String, Program> programs;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    Location location = Location.newFile("<test>");
+    parserContext = ParserFactory.newContext(location);
+    programs = new HashMap<>();
+    String longProgram =
+        "PROGRAM LONG(x1) DO " + "PRINT(x1); ".repeat(Inliner.MAX_SIZE + 1) + "END";
+    try (Lexer lexer = LexerFactory.newLexer(location, PROGRAMS + longProgram)) {
+      Parser parser = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF);
+      Statement statement;
+      while ((statement = parser.next()) != null) {
+        Definition definition = (Definition) statement;
+        parserContext.addDefinedProgram(definition.program());
+        programs.put(
+            definition.program(),
+            Resolver.resolveProgram(
+                definition.program(), definition.params(), definition.body(), programs::get));
+      }
+    }
+  }
+
+  // the body of the loop, resolved in `scope`.
+  private Code[] loopBody(String loop, Scope scope) throws IOException {
+    try (Lexer lexer = LexerFactory.newLexer(Location.newFile("<test>"), loop)) {
+      Statement statement = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF).next();
+      return ((Code.Loop) Resolver.resolve(statement, scope, programs::get)).body();
+    }
+  }
+
+  @Test
+  void smallProgram_isInlinedWithVariablesOfItsOwn() throws IOException {
+    assertNull(programs.get("TRIANGLE").closedForm());
+    Scope scope = new Scope();
+    int a = scope.slotOf("A");
+    Code[] body = loopBody("LOOP n DO t := TRIANGLE(a) END", scope);
+    int result = body[0] instanceof Code.Zero(int slot) ? slot : -1;
+    int param = body[1] instanceof Code.Argument(int slot, int source) && source == a ? slot : -1;
+    assertEquals("X0", scope.nameOf(result));
+    assertEquals("X1", scope.nameOf(param));
+    assertEquals(-1, scope.indexOf("X1"));
+    assertEquals(new Code.Zero(result), body[2]);
+    assertInstanceOf(Code.Loop.class, body[3]);
+    assertEquals(new Code.Result(scope.indexOf("T"), result), body[4]);
+    assertEquals(5, body.length);
+  }
+
+  @Test
+  void inlinedPrograms_areInlinedInTurn() throws IOException {
+    Scope scope = new Scope();
+    Code[] body = loopBody("LOOP n DO t := TRIANGLES(n) END", scope);
+    Code.Loop loop = assertInstanceOf(Code.Loop.class, body[2]);
+    // the first `x0 := 0` of the inner expansion is overwritten by the body, so is pruned.
+    assertInstanceOf(Code.Argument.class, loop.body()[0]);
+    assertEquals(2, scope.inlinedDepth());
+  }
+
+  @Test
+  void programWithClosedForm_isCalled() throws IOException {
+    Code[] body = loopBody("LOOP n DO t := PRED(n) END", new Scope());
+    assertInstanceOf(Code.Call.class, body[0]);
+  }
+
+  @Test
+  void programThatMightReadAnUnassignedVariable_isCalled() throws IOException {
+    Code[] body = loopBody("LOOP n DO t := MAYBE(n) END", new Scope());
+    assertInstanceOf(Code.Call.class, body[0]);
+  }
+
+  @Test
+  void programOverSizeBudget_isCalled() throws IOException {
+    Code[] body = loopBody("LOOP n DO t := LONG(n) END", new Scope());
+    assertInstanceOf(Code.Call.class, body[0]);
+  }
+
+  @ParameterizedTest
+  @EnumSource(Engine.class)
+  void inlinedCalls_behaveAsCallsOnEveryEngine(Engine engine) throws IOException {
+    parserContext = ParserFactory.newContext(Location.newFile("<test>"));
+    InterpreterContext context = InterpreterFactory.newGlobalContext(parserContext);
+    Interpreter interpreter = InterpreterFactory.newInterpreter(context, engine);
+    interpret(interpreter, PROGRAMS);
+    context.setVariable("A", 5);
+    context.setVariable("N", 3);
+    interpret(interpreter, "LOOP n DO t := TRIANGLE(a) END");
+    assertEquals(15, context.getVariable("T").orElse(-1));
+    // the arg is passed by value, and the program's own variables are not globals.
+    assertEquals(5, context.getVariable("A").orElse(-1));
+    assertTrue(context.getVariable("X1").isEmpty());
+    InterpreterException e =
+        assertThrows(
+            InterpreterException.class,
+            () -> interpret(interpreter, "LOOP n DO t := TRIANGLE(b) END"));
+    assertEquals("variable `B` has not been defined yet", e.getMessage());
+    context.setVariable("B", -5);
+    e =
+        assertThrows(
+            InterpreterException.class,
+            () -> interpret(interpreter, "LOOP n DO t := TRIANGLE(b) END"));
+    assertEquals("loop count for variable `X1` is negative: -5", e.getMessage());
+  }
+
+  private void interpret(Interpreter interpreter, String code) throws IOException {
+    try (Lexer lexer = LexerFactory.newLexer(Location.newFile("<test>"), code)) {
+      Parser parser = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF);
+      Statement statement;
+      while ((statement = parser.next()) != null) {
+        interpreter.interpret(statement);
+      }
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package com.davidconneely.looplang.compiler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+import javax.tools.ToolProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JavaTranspilerTest {
+
+  private static final String PROGRAMS =
+      """
+      PROGRAM ADD(x1, x2) DO
+        x0 := 0; LOOP x1 DO x0 := x0 + 1 END
+        LOOP x2 DO x0 := x0 + 1 END
+      END
+      PROGRAM MULT(x1, x2) DO
+        LOOP x2 DO x0 := ADD(x1, x0) END
+      END
+      PROGRAM PRED(x1) DO
+        x2 := 0
+        LOOP x1 DO x0 := 0; LOOP x2 DO x0 := x0 + 1 END; x2 := x2 + 1 END
+      END
+      PROGRAM BAD(x1) DO
+        LOOP x1 DO x3 := 0 END
+        x3 := x3 + 1
+      END
+      """;
+
+  @TempDir Path tempDir;
+
+  private String transpile(String className, String code) throws IOException {
+    Location location = Location.newFile("<test>");
+    ParserContext context = ParserFactory.newContext(location);
+    JavaTranspiler transpiler = new JavaTranspiler(context, className);
+    try (Lexer lexer = LexerFactory.newLexer(location, code)) {
+      Parser parser = ParserFactory.newParser(lexer, context, Token.Kind.EOF);
+      Statement statement;
+      while ((statement = parser.next()) != null) {
+        transpiler.add(statement);
+      }
+    }
+    return transpiler.toSource();
+  }
+
+  private Class<?> compile(String className, String source) throws Exception {
+    Path sourcePath = tempDir.resolve(className.replace('.', '/') + ".java");
+    Files.createDirectories(sourcePath.getParent());
+    Files.writeString(sourcePath, source);
+    int status =
+        ToolProvider.getSystemJavaCompiler()
+            .run(null, null, null, "-d", tempDir.toString(), sourcePath.toString());
+    assertEquals(0, status);
+    URLClassLoader loader = new URLClassLoader(new URL[] {tempDir.toUri().toURL()});
+    return loader.loadClass(className);
+  }
+
+  @Test
+  void programs_becomeStaticIntMethods() throws Exception {
+    Class<?> compiled = compile("test.Programs", transpile("test.Programs", PROGRAMS));
+    Method add = compiled.getMethod("ADD", int.class, int.class);
+    Method mult = compiled.getMethod("MULT", int.class, int.class);
+    Method pred = compiled.getMethod("PRED", int.class);
+    assertEquals(12, add.invoke(null, 5, 7));
+    assertEquals(42, mult.invoke(null, 6, 7));
+    assertEquals(0, pred.invoke(null, 0));
+    assertEquals(4, pred.invoke(null, 5));
+  }
+
+  @Test
+  void undefinedVariable_failsAtRuntimeWithInterpreterMessage() throws Exception {
+    Method bad = compile("Programs", transpile("Programs", PROGRAMS)).getMethod("BAD", int.class);
+    InvocationTargetException e =
+        assertThrows(InvocationTargetException.class, () -> bad.invoke(null, 0));
+    assertEquals("variable `X3` has not been defined yet", e.getCause().getMessage());
+  }
+
+  @Test
+  void valueThatWrapsAroundToMinusOne_isStillDefined() throws Exception {
+    String source =
+        transpile(
+            "Wrapped",
+            """
+            PROGRAM WRAP(x1) DO
+              LOOP x1 DO x0 := x0 + 1 END; LOOP x1 DO x0 := x0 + 1 END; x0 := x0 + 1
+            END
+            PROGRAM NEXT(x1) DO
+              x2 := WRAP(x1); x2 := x2 + 1; x2 := x2 + 1; LOOP x2 DO x0 := x0 + 1 END
+            END
+            """);
+    Class<?> compiled = compile("Wrapped", source);
+    assertEquals(-1, compiled.getMethod("WRAP", int.class).invoke(null, Integer.MAX_VALUE));
+    assertEquals(1, compiled.getMethod("NEXT", int.class).invoke(null, Integer.MAX_VALUE));
+  }
+
+  @Test
+  void inlinedPrograms_keepTheirVariablesApart() throws Exception {
+    String source =
+        transpile(
+            "Inlined",
+            PROGRAMS
+                + """
+                PROGRAM TRIANGLE(x1) DO
+                  x0 := 0; LOOP x1 DO x0 := ADD(x0, x1); x1 := PRED(x1) END
+                END
+                PROGRAM LAST(x1) DO LOOP x1 DO x0 := TRIANGLE(x1) END END
+                """);
+    assertTrue(source.contains("TRIANGLE$X1"));
+    assertEquals(15, compile("Inlined", source).getMethod("LAST", int.class).invoke(null, 5));
+  }
+
+  @Test
+  void topLevelStatements_becomeMain() throws Exception {
+    String source = transpile("Script", "a := 0; a := a + 1; PRINT(\"a =\", a, b)");
+    assertTrue(source.contains("public static void main(final String[] args) {"));
+    compile("Script", source);
+  }
+
+  @Test
+  void scriptWithoutInput_isFoldedToItsOutput() throws Exception {
+    String source =
+        transpile(
+            "Folded",
+            PROGRAMS
+                + "a := 0; a := a + 1; a := a + 1; LOOP a DO b := MULT(a, a); PRINT(\"b =\", b)"
+                + " END");
+    int start = source.indexOf("void main(");
+    String main = source.substring(start, source.indexOf("private static", start));
+    String output = "println(new String[] {\"b =4\"}, new long[] {});";
+    // one line of output for each iteration of the loop, which is not run again.
+    assertEquals(2, main.split(Pattern.quote(output), -1).length - 1);
+    assertTrue(!main.contains("MULT(") && !main.contains("for ("));
+    compile("Folded", source);
+  }
+
+  @Test
+  void redefinedProgram_fails() {
+    assertThrows(
+        CompilerException.class, () -> transpile("Twice", "PROGRAM A() DO END PROGRAM A() DO END"));
+  }
+}
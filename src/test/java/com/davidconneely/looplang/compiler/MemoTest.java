@@ -0,0 +1,135 @@
+package com.davidconneely.looplang.compiler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.Definition;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+import org.junit.jupiter.api.Test;
+
+class MemoTest {
+  private static final int[] PARAM_SLOTS = {1, 2};
+
+  private int runs;
+
+  // adds its args, counting how often it runs.
+  private final ToIntFunction<long[]> add =
+      frame -> {
+        ++runs;
+        return (int) (frame[1] + frame[2]);
+      };
+
+  private static Map<String, Program> resolve(String code) throws IOException {
+    Map<String, Program> programs = new HashMap<>();
+    Location location = Location.newFile("<test>");
+    ParserContext context = ParserFactory.newContext(location);
+    try (Lexer lexer = LexerFactory.newLexer(location, code)) {
+      Parser parser = ParserFactory.newParser(lexer, context, Token.Kind.EOF);
+      Statement statement;
+      while ((statement = parser.next()) != null) {
+        Definition definition = (Definition) statement;
+        context.addDefinedProgram(definition.program());
+        programs.put(
+            definition.program(),
+            Resolver.resolveProgram(
+                definition.program(), definition.params(), definition.body(), programs::get));
+      }
+    }
+    return programs;
+  }
+
+  @Test
+  void repeatedCall_returnsRememberedResult() {
+    Memo memo = new Memo(PARAM_SLOTS, 0);
+    assertEquals(5, memo.call(new long[] {0, 2, 3}, add));
+    assertEquals(5, memo.call(new long[] {0, 2, 3}, add));
+    assertEquals(1, runs);
+    assertEquals(7, memo.call(new long[] {0, 2, 5}, add));
+    assertEquals(2, runs);
+  }
+
+  @Test
+  void shortCall_isNotRemembered() {
+    Memo memo = new Memo(PARAM_SLOTS, Long.MAX_VALUE);
+    memo.call(new long[] {0, 2, 3}, add);
+    memo.call(new long[] {0, 2, 3}, add);
+    assertEquals(2, runs);
+    assertEquals(0, memo.size());
+  }
+
+  @Test
+  void failingCall_isNotRemembered() {
+    Memo memo = new Memo(PARAM_SLOTS, 0);
+    ToIntFunction<long[]> fail =
+        _ -> {
+          ++runs;
+          throw new IllegalStateException();
+        };
+    assertThrows(IllegalStateException.class, () -> memo.call(new long[] {0, 2, 3}, fail));
+    assertThrows(IllegalStateException.class, () -> memo.call(new long[] {0, 2, 3}, fail));
+    assertEquals(2, runs);
+  }
+
+  @Test
+  void leastRecentlyUsedResults_areDropped() {
+    Memo memo = new Memo(PARAM_SLOTS, 0);
+    for (int i = 0; i < 1000; ++i) {
+      memo.call(new long[] {0, i, 0}, add);
+    }
+    assertEquals(256, memo.size());
+    memo.call(new long[] {0, 999, 0}, add);
+    memo.call(new long[] {0, 0, 0}, add);
+    assertEquals(1001, runs);
+  }
+
+  @Test
+  void lookingUpCalls_allocatesNothing() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    Memo memo = new Memo(PARAM_SLOTS, 0);
+    long[] frame = {0, 2, 3};
+    memo.call(frame, add);
+    long before = threads.getCurrentThreadAllocatedBytes();
+    for (int i = 0; i < 100_000; ++i) {
+      memo.call(frame, add);
+    }
+    long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+    assertEquals(1, runs);
+    assertTrue(allocated < 16 * 1024, () -> allocated + " bytes allocated by 100000 lookups");
+  }
+
+  @Test
+  void onlyPurePrograms_withoutClosedForms_haveMemos() throws IOException {
+    Map<String, Program> programs =
+        resolve(
+            """
+            PROGRAM MULTIPLY(x1, x2) DO x0 := 0; LOOP x1 DO LOOP x2 DO x0 := x0 + 1 END END END
+            PROGRAM FACTORIAL(x1) DO
+              x0 := 0; x0 := x0 + 1; x2 := 0
+              LOOP x1 DO x2 := x2 + 1; x0 := MULTIPLY(x0, x2) END
+            END
+            PROGRAM NOISY(x1) DO x0 := FACTORIAL(x1); PRINT(x0) END
+            PROGRAM QUIET(x1) DO x0 := NOISY(x1); x0 := FACTORIAL(x0) END
+            """);
+    assertNull(programs.get("MULTIPLY").memo());
+    assertNotNull(programs.get("MULTIPLY").closedForm());
+    assertNotNull(programs.get("FACTORIAL").memo());
+    assertNull(programs.get("NOISY").memo());
+    assertNull(programs.get("QUIET").memo());
+  }
+}
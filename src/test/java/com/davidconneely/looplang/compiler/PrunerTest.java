@@ -0,0 +1,121 @@
+package com.davidconneely.looplang.compiler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.Definition;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class PrunerTest {
+  private static final int[] NO_PARAMS = {};
+
+  @Test
+  void overwrittenStore_isRemoved() {
+    assertArrayEquals(
+        new Code[] {new Code.Set(1, 1), new Code.Copy(0, 1)},
+        Pruner.prune(
+            new Code[] {
+              new Code.Set(1, 3), new Code.Zero(1), new Code.Increment(1), new Code.Copy(0, 1)
+            },
+            NO_PARAMS));
+  }
+
+  @Test
+  void storeThatIsNeverRead_isRemoved() {
+    assertArrayEquals(
+        new Code[] {new Code.Set(0, 2)},
+        Pruner.prune(
+            new Code[] {new Code.Set(0, 2), new Code.Set(2, 5), new Code.Result(3, Program.RESULT)},
+            NO_PARAMS));
+  }
+
+  @Test
+  void deadCodeThatMightFail_isKept() {
+    Code[] body = {new Code.Increment(1), new Code.Copy(2, 1), new Code.Argument(3, 4)};
+    assertArrayEquals(body, Pruner.prune(body, NO_PARAMS));
+  }
+
+  @Test
+  void storesReadByPrint_areKept() {
+    Code[] body = {new Code.Set(1, 2), new Code.Print(new String[] {"", ""}, new int[] {1})};
+    assertArrayEquals(body, Pruner.prune(body, NO_PARAMS));
+  }
+
+  @Test
+  void storeReadInNextIteration_isKept() {
+    Code[] body = {
+      new Code.Zero(2),
+      new Code.Loop(1, new Code[] {new Code.AddVariable(0, 2), new Code.Set(2, 5)})
+    };
+    assertArrayEquals(body, Pruner.prune(body, NO_PARAMS));
+  }
+
+  @Test
+  void loopWithNothingLive_isReplacedByCheckOfItsCount() {
+    assertArrayEquals(
+        new Code[] {new Code.Copy(1, 1)},
+        Pruner.prune(new Code[] {new Code.Loop(1, new Code[] {new Code.Set(2, 1)})}, NO_PARAMS));
+  }
+
+  @Test
+  void deadIncrementsOfDefinedVariables_areRemoved() {
+    assertArrayEquals(
+        new Code[] {new Code.Copy(1, 1), new Code.Copy(1, 1), new Code.Set(0, 2)},
+        Pruner.prune(
+            new Code[] {
+              new Code.Loop(1, new Code[] {new Code.Add(2, 3), new Code.Argument(3, 2)}),
+              new Code.AddVariable(2, 1),
+              new Code.Increment(2),
+              new Code.Set(0, 2)
+            },
+            new int[] {1, 2}));
+  }
+
+  @Test
+  void deadIncrementOfVariableAssignedOnlyInLoop_isKept() {
+    Code[] body = {
+      new Code.Loop(1, new Code[] {new Code.Zero(2)}), new Code.Increment(2), new Code.Set(0, 2)
+    };
+    assertArrayEquals(body, Pruner.prune(body, new int[] {1}));
+  }
+
+  @Test
+  void zeroingResultBeforeCall_isRemoved() throws IOException {
+    Map<String, Program> programs = new HashMap<>();
+    Location location = Location.newFile("<test>");
+    ParserContext context = ParserFactory.newContext(location);
+    try (Lexer lexer =
+        LexerFactory.newLexer(
+            location,
+            """
+            PROGRAM ASSIGN(x1) DO x0 := 0; LOOP x1 DO x0 := x0 + 1 END END
+            PROGRAM COPY(x1) DO x0 := 0; x0 := ASSIGN(x1) END
+            """)) {
+      Parser parser = ParserFactory.newParser(lexer, context, Token.Kind.EOF);
+      Statement statement;
+      while ((statement = parser.next()) != null) {
+        Definition definition = (Definition) statement;
+        context.addDefinedProgram(definition.program());
+        programs.put(
+            definition.program(),
+            Resolver.resolveProgram(
+                definition.program(), definition.params(), definition.body(), programs::get));
+      }
+    }
+    Code[] body = programs.get("COPY").body();
+    assertEquals(1, body.length);
+    assertInstanceOf(Code.Call.class, body[0]);
+  }
+}
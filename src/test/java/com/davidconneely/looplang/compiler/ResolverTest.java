@@ -0,0 +1,138 @@
+package com.davidconneely.looplang.compiler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.Definition;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class ResolverTest {
+
+  private Statement parse(String code) throws IOException {
+    Location location = Location.newFile("<test>");
+    try (Lexer lexer = LexerFactory.newLexer(location, code)) {
+      ParserContext context = ParserFactory.newContext(location);
+      Parser parser = ParserFactory.newParser(lexer, context, Token.Kind.EOF);
+      return parser.next();
+    }
+  }
+
+  @Test
+  void scope_allocatesSlotsInOrderOfFirstAppearance() {
+    Scope scope = new Scope();
+    assertEquals(0, scope.slotOf("A"));
+    assertEquals(1, scope.slotOf("B"));
+    assertEquals(0, scope.slotOf("A"));
+    assertEquals(-1, scope.indexOf("C"));
+    assertEquals("B", scope.nameOf(1));
+    assertEquals(2, scope.size());
+  }
+
+  @Test
+  void loop_resolvesCountAndBodyInSameScope() throws IOException {
+    Scope scope = new Scope();
+    Code code = Resolver.resolve(parse("LOOP x1 DO x0 := x0 + 1; x1 := 0 END"), scope, _ -> null);
+    Code.Loop loop = assertInstanceOf(Code.Loop.class, code);
+    assertEquals(0, loop.slot());
+    assertEquals(new Code.Increment(1), loop.body()[0]);
+    assertEquals(new Code.Zero(0), loop.body()[1]);
+  }
+
+  @Test
+  void print_foldsLiteralsIntoTexts() throws IOException {
+    Scope scope = new Scope();
+    Code code = Resolver.resolve(parse("PRINT(\"a=\", a, 42, b, \"!\")"), scope, _ -> null);
+    Code.Print print = assertInstanceOf(Code.Print.class, code);
+    assertArrayEquals(new String[] {"a=", " 42 ", "!"}, print.texts());
+    assertArrayEquals(new int[] {0, 1}, print.slots());
+  }
+
+  @Test
+  void program_reservesResultSlotThenParams() throws IOException {
+    Definition definition =
+        assertInstanceOf(Definition.class, parse("PROGRAM ADD(x1, x2) DO x3 := INPUT() END"));
+    Program program =
+        Resolver.resolveProgram(
+            definition.program(), definition.params(), definition.body(), _ -> null);
+    assertEquals(Program.RESULT, program.scope().indexOf(Resolver.RESULT_VARIABLE));
+    assertArrayEquals(new int[] {1, 2}, program.paramSlots());
+    assertEquals(3, assertInstanceOf(Code.Input.class, program.body()[0]).slot());
+    assertEquals(4, program.frameSize());
+  }
+
+  @Test
+  void programsWithIdenticalBodies_shareOneResolution() throws IOException {
+    Location location = Location.newFile("<test>");
+    ParserContext context = ParserFactory.newContext(location);
+    Map<List<Statement>, Program> resolved = new IdentityHashMap<>();
+    List<Program> programs = new ArrayList<>();
+    try (Lexer lexer =
+        LexerFactory.newLexer(
+            location,
+            """
+            PROGRAM ID(x1) DO LOOP x1 DO x0 := x0 + 1 END END
+            PROGRAM COPY(x1) DO LOOP x1 DO x0 := x0 + 1 END END
+            PROGRAM COUNT(x2) DO LOOP x2 DO x0 := x0 + 1 END END
+            """)) {
+      Parser parser = ParserFactory.newParser(lexer, context, Token.Kind.EOF);
+      Statement statement;
+      while ((statement = parser.next()) != null) {
+        Definition definition = (Definition) statement;
+        programs.add(
+            Resolver.resolveProgram(
+                definition.program(), definition.params(), definition.body(), _ -> null, resolved));
+      }
+    }
+    assertEquals("COPY", programs.get(1).name());
+    assertSame(programs.get(0).body(), programs.get(1).body());
+    assertSame(programs.get(0).closedForm(), programs.get(1).closedForm());
+    assertNotSame(programs.get(0).body(), programs.get(2).body());
+  }
+
+  @Test
+  void call_isLinkedToProgramWithPositionalArgs() throws IOException {
+    Program add = Resolver.resolveProgram("ADD", List.of("X1", "X2"), List.of(), _ -> null);
+    ParserContext parserContext = ParserFactory.newContext(Location.newFile("<test>"));
+    parserContext.addDefinedProgram("ADD");
+    Statement statement;
+    try (Lexer lexer = LexerFactory.newLexer(Location.newFile("<test>"), "r := ADD(b, a)")) {
+      statement = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF).next();
+    }
+    Scope scope = new Scope();
+    scope.slotOf("A");
+    Code.Call call =
+        assertInstanceOf(Code.Call.class, Resolver.resolve(statement, scope, _ -> add));
+    assertSame(add, call.program());
+    assertArrayEquals(new int[] {2, 0}, call.args());
+    assertEquals(1, call.slot());
+  }
+
+  @Test
+  void call_withWrongArgCount_failsToLink() throws IOException {
+    Program add = Resolver.resolveProgram("ADD", List.of("X1", "X2"), List.of(), _ -> null);
+    ParserContext parserContext = ParserFactory.newContext(Location.newFile("<test>"));
+    parserContext.addDefinedProgram("ADD");
+    Statement statement;
+    try (Lexer lexer = LexerFactory.newLexer(Location.newFile("<test>"), "r := ADD(a)")) {
+      statement = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF).next();
+    }
+    assertThrows(CompilerException.class, () -> Resolver.resolve(statement, new Scope(), _ -> add));
+  }
+}
@@ -0,0 +1,93 @@
+package com.davidconneely.looplang.interpreter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class AllocationTest {
+  // bytes that running the benchmark may allocate in steady state, whatever its size.
+  private static final long BUDGET = 16 * 1024;
+
+  private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private ParserContext parserContext;
+  private GlobalContext interpreterContext;
+  private Interpreter interpreter;
+
+  private void setUp(Engine engine) throws IOException {
+    Location location = Location.newFile("<test>");
+    parserContext = ParserFactory.newContext(location);
+    interpreterContext = new GlobalContext(parserContext);
+    interpreter = InterpreterFactory.newInterpreter(interpreterContext, engine);
+    execute(
+        """
+        PROGRAM ADD(x1, x2) DO LOOP x1 DO x0 := x0 + 1 END; LOOP x2 DO x0 := x0 + 1 END END
+        PROGRAM MULTIPLY(x1, x2) DO LOOP x1 DO x0 := ADD(x0, x2) END END
+        PROGRAM FACTORIAL(x1) DO
+          x0 := x0 + 1; x2 := 0
+          LOOP x1 DO x2 := x2 + 1; x0 := MULTIPLY(x0, x2) END
+        END
+        """);
+  }
+
+  private void execute(String code) throws IOException {
+    Location location = Location.newFile("<test>");
+    try (Lexer lexer = LexerFactory.newLexer(location, code)) {
+      Parser parser = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF);
+      Statement stmt;
+      while ((stmt = parser.next()) != null) {
+        interpreter.interpret(stmt);
+      }
+    }
+  }
+
+  private Statement parse(String code) throws IOException {
+    Location location = Location.newFile("<test>");
+    try (Lexer lexer = LexerFactory.newLexer(location, code)) {
+      return ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF).next();
+    }
+  }
+
+  // bytes allocated by this thread summing `n` calls of `FACTORIAL(3)`, at the fewest of a few
+  // runs.
+  private long allocated(int n) throws IOException {
+    interpreterContext.setVariable("N", n);
+    interpreterContext.setVariable("K", 3);
+    Statement statement = parse("LOOP n DO f := FACTORIAL(k); r := ADD(r, f) END");
+    long fewest = Long.MAX_VALUE;
+    for (int i = 0; i < 5; ++i) {
+      interpreterContext.setVariable("R", 0);
+      long before = THREADS.getCurrentThreadAllocatedBytes();
+      interpreter.interpret(statement);
+      fewest = Math.min(fewest, THREADS.getCurrentThreadAllocatedBytes() - before);
+      assertEquals(6 * n, interpreterContext.getVariable("R").orElse(-1));
+    }
+    return fewest;
+  }
+
+  @ParameterizedTest
+  @EnumSource(Engine.class)
+  void hotPath_allocatesWithinBudget(Engine engine) throws IOException {
+    setUp(engine);
+    allocated(200_000); // warm up, so that anything compiled lazily has been.
+    // both loops run long enough to be replaced by the tiered engine, which compiles each one once.
+    long small = allocated(2_000);
+    long large = allocated(200_000);
+    assertTrue(
+        large - small < BUDGET,
+        engine + " allocated " + (large - small) + " bytes more for 100x the calls");
+  }
+}
@@ -15,6 +15,8 @@ import com.davidconneely.looplang.token.Token;
 import java.io.IOException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 
 class DefaultInterpreterTest {
 
@@ -175,6 +177,66 @@ class DefaultInterpreterTest {
         InterpreterException.class, () -> execute("x0 := 0; LOOP undefined DO x0 := x0 + 1 END"));
   }
 
+  @ParameterizedTest
+  @EnumSource(Engine.class)
+  void valueThatWrapsAroundToMinusOne_isStillDefined(Engine engine) throws IOException {
+    interpreter = InterpreterFactory.newInterpreter(interpreterContext, engine);
+    interpreterContext.setVariable("A", Integer.MAX_VALUE);
+    execute(
+        """
+                PROGRAM SUCC(x1) DO
+                    x1 := x1 + 1
+                    x0 := 0
+                    LOOP x1 DO x0 := x0 + 1 END
+                END
+                b := 0; LOOP a DO b := b + 1 END; LOOP a DO b := b + 1 END; b := b + 1
+                PRINT(b)
+                c := SUCC(b)
+                b := b + 1
+                """);
+    assertEquals(0, interpreterContext.getVariable("B").orElseThrow());
+    assertEquals(0, interpreterContext.getVariable("C").orElseThrow());
+    assertEquals("b = -1", Builtins.format(new String[] {"b = ", ""}, new long[] {-1}));
+  }
+
+  @ParameterizedTest
+  @EnumSource(Engine.class)
+  void variableAssignedOnlyInSkippedLoop_isCheckedAfterIt(Engine engine) throws IOException {
+    interpreter = InterpreterFactory.newInterpreter(interpreterContext, engine);
+    // x2 is assigned before the loop, so is defined after it, but x3 only is if the loop runs.
+    execute(
+        """
+                PROGRAM SKIP(x1) DO
+                    x2 := 0
+                    LOOP x1 DO x3 := 0; x3 := x3 + 1; x2 := x2 + 1 END
+                    x2 := x2 + 1
+                    LOOP x3 DO x0 := x0 + 1 END
+                    LOOP x2 DO x0 := x0 + 1 END
+                END
+                a := 0; b := 0; b := b + 1
+                c := SKIP(b)
+                """);
+    assertEquals(3, interpreterContext.getVariable("C").orElseThrow());
+    assertThrows(InterpreterException.class, () -> execute("c := SKIP(a)"));
+  }
+
+  @ParameterizedTest
+  @EnumSource(Engine.class)
+  void bodyTooLargeToCompile_givesSameResult(Engine engine) throws IOException {
+    interpreter = InterpreterFactory.newInterpreter(interpreterContext, engine);
+    // far more than the 64KB of bytecode a JVM method can have.
+    String increments = "x1 := x1 + 1; x2 := x2 + 1\n".repeat(12_000);
+    execute(
+        "PROGRAM BIG(x1, x2) DO\n"
+            + increments
+            + "LOOP x1 DO x0 := x0 + 1 END; LOOP x2 DO x0 := x0 + 1 END\nEND");
+    execute("a := 0; b := 0; n := 0; n := n + 1; n := n + 1; LOOP n DO a := BIG(a, b) END");
+    assertEquals(2 * 24_000, interpreterContext.getVariable("A").orElseThrow());
+    execute("LOOP n DO\n" + increments.replace("x1", "a").replace("x2", "b") + "END");
+    assertEquals(2 * 24_000 + 2 * 12_000, interpreterContext.getVariable("A").orElseThrow());
+    assertEquals(2 * 12_000, interpreterContext.getVariable("B").orElseThrow());
+  }
+
   @Test
   void multipleStatementsSeparatedBySemicolons() throws IOException {
     execute("x0 := 0; x1 := 0; x2 := 0; x0 := x0 + 1; x1 := x1 + 1; x2 := x2 + 1");
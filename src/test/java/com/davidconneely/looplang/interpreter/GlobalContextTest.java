@@ -3,13 +3,22 @@ package com.davidconneely.looplang.interpreter;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.davidconneely.looplang.compiler.CompilerException;
+import com.davidconneely.looplang.compiler.Program;
+import com.davidconneely.looplang.compiler.Resolver;
 import com.davidconneely.looplang.lexer.Location;
 import com.davidconneely.looplang.parser.ParserContext;
 import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.AssignCall;
+import com.davidconneely.looplang.statement.Statement;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.OptionalInt;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -120,6 +129,40 @@ class GlobalContextTest {
       assertTrue(body.isEmpty());
     }
 
+    @Test
+    @DisplayName("resolves program once, when first got")
+    void programResolvedOnce() {
+      context.setProgram("FOO", List.of("X1"), List.of());
+      Program program = context.getProgram("FOO");
+      assertEquals(List.of("X1"), program.params());
+      assertSame(program, context.getProgram("FOO"));
+    }
+
+    @Test
+    @DisplayName("throws on call with wrong number of args when defined")
+    void wrongArgCount() {
+      context.setProgram("FOO", List.of("X1"), List.of());
+      assertThrows(
+          CompilerException.class,
+          () ->
+              context.setProgram(
+                  "BAR", List.of(), List.of(new AssignCall("X0", "FOO", List.of()))));
+      assertFalse(context.containsProgram("BAR"));
+    }
+
+    @Test
+    @DisplayName("uses program already resolved from the same body")
+    void preresolvedProgram() {
+      List<Statement> body = new ArrayList<>();
+      Program foo = Resolver.resolveProgram("FOO", List.of("X1"), body, _ -> null);
+      Program bar = Resolver.resolveProgram("BAR", List.of(), new ArrayList<>(), _ -> null);
+      context = InterpreterFactory.newGlobalContext(parserContext, Map.of("FOO", foo, "BAR", bar));
+      context.setProgram("FOO", List.of("X1"), body);
+      context.setProgram("BAR", List.of(), new ArrayList<>());
+      assertSame(foo, context.getProgram("FOO"));
+      assertNotSame(bar, context.getProgram("BAR"));
+    }
+
     @Test
     @DisplayName("throws on program redefinition")
     void redefinition() {
@@ -0,0 +1,247 @@
+package com.davidconneely.looplang.interpreter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.davidconneely.looplang.compiler.Code;
+import com.davidconneely.looplang.compiler.Resolver;
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class LoopAcceleratorTest {
+
+  private ParserContext parserContext;
+  private GlobalContext interpreterContext;
+  private Interpreter interpreter;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    setUp(Engine.DEFAULT);
+  }
+
+  private void setUp(Engine engine) throws IOException {
+    Location location = Location.newFile("<test>");
+    parserContext = ParserFactory.newContext(location);
+    interpreterContext = new GlobalContext(parserContext);
+    interpreter = InterpreterFactory.newInterpreter(interpreterContext, engine);
+    execute(
+        """
+        PROGRAM ADD(x1, x2) DO x0 := 0; LOOP x1 DO x0 := x0 + 1 END; LOOP x2 DO x0 := x0 + 1 END END
+        PROGRAM MULT(x1, x2) DO LOOP x2 DO x0 := ADD(x1, x0) END END
+        PROGRAM NOT(x1) DO x0 := 0; x0 := x0 + 1; LOOP x1 DO x0 := 0 END END
+        """);
+  }
+
+  private void execute(String code) throws IOException {
+    Location location = Location.newFile("<test>");
+    try (Lexer lexer = LexerFactory.newLexer(location, code)) {
+      Parser parser = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF);
+      Statement stmt;
+      while ((stmt = parser.next()) != null) {
+        interpreter.interpret(stmt);
+      }
+    }
+  }
+
+  // resolves the loop against the global frame.
+  private Code.Loop resolve(String loop) throws IOException {
+    Location location = Location.newFile("<test>");
+    try (Lexer lexer = LexerFactory.newLexer(location, loop)) {
+      Parser parser = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF);
+      Frame frame = interpreterContext.frame();
+      return (Code.Loop)
+          Resolver.resolve(parser.next(), frame.scope(), interpreterContext::getProgram);
+    }
+  }
+
+  // resolves the loop against the global frame, and runs it with the given count.
+  private int accelerate(String loop, int count) throws IOException {
+    return LoopAccelerator.run(resolve(loop), count, interpreterContext.frame().values());
+  }
+
+  private int variable(String name) {
+    return interpreterContext.getVariable(name).orElse(-1);
+  }
+
+  @Test
+  void callInLoop_runsEveryIterationAtOnce() throws IOException {
+    execute("x := 0; k := 0; k := k + 1");
+    assertEquals(2_000_000_000, accelerate("LOOP n DO x := ADD(x, k) END", 2_000_000_000));
+    assertEquals(2_000_000_000, variable("X"));
+    assertEquals(1, variable("K"));
+  }
+
+  @Test
+  void growingLoop_runsOnlyAsFarAsValuesFitInAnInt() throws IOException {
+    execute("x := 0; x := x + 1; b := 0; b := b + 1; b := b + 1");
+    assertEquals(30, accelerate("LOOP n DO x := MULT(b, x) END", 100));
+    assertEquals(1 << 30, variable("X"));
+  }
+
+  @Test
+  void innerLoopWithConstantCount_isExponentiated() throws IOException {
+    execute("x := 0; x := x + 1; b := 0; b := b + 1; b := b + 1; b := b + 1");
+    assertEquals(19, accelerate("LOOP n DO x := MULT(x, b); y := 0 END", 100));
+    assertEquals(1_162_261_467, variable("X"));
+    assertEquals(0, variable("Y"));
+  }
+
+  @Test
+  void shortLoop_isNotAccelerated() throws IOException {
+    execute("x := 0");
+    assertEquals(0, accelerate("LOOP n DO x := x + 1; y := 0 END", LoopAccelerator.MIN_COUNT - 1));
+    assertEquals(0, variable("X"));
+  }
+
+  @Test
+  void negativeValueNotReadByLoop_doesNotStopAcceleration() throws IOException {
+    execute("x := 0; k := 0; k := k + 1");
+    interpreterContext.setVariable("Z", -1);
+    assertEquals(1000, accelerate("LOOP n DO x := ADD(x, k) END", 1000));
+    assertEquals(1000, variable("X"));
+    assertEquals(-1, variable("Z"));
+  }
+
+  @Test
+  void loopRejectedForItsValues_isAcceleratedOnceTheyChange() throws IOException {
+    Code.Loop loop = resolve("LOOP n DO x := ADD(x, k) END");
+    long[] frame = interpreterContext.frame().values();
+    execute("x := 0");
+    interpreterContext.setVariable("K", -1);
+    assertEquals(0, LoopAccelerator.run(loop, 1000, frame));
+    interpreterContext.setVariable("K", 1);
+    int done = 0;
+    for (int attempt = 0; attempt < 4 && done == 0; ++attempt) {
+      done = LoopAccelerator.run(loop, 1000, frame);
+    }
+    assertEquals(1000, done);
+    assertEquals(1000, variable("X"));
+  }
+
+  @Test
+  void loopWithOutput_isNotAccelerated() throws IOException {
+    execute("x := 0");
+    assertEquals(0, accelerate("LOOP n DO x := x + 1; PRINT(x) END", 1_000));
+  }
+
+  @Test
+  void loopWithVaryingInnerCount_isNotAccelerated() throws IOException {
+    execute("x := 0; y := 0");
+    assertEquals(0, accelerate("LOOP n DO LOOP x DO y := 0 END; x := x + 1 END", 1_000));
+  }
+
+  @Test
+  void varyingInnerCount_isAcceleratedWhenItOnlyAddsConstants() throws IOException {
+    execute("x := 0; y := 0; z := 0");
+    assertEquals(1_000, accelerate("LOOP n DO LOOP x DO y := y + 1; z := z + 1 END END", 1_000));
+    assertEquals(0, variable("Y"));
+    execute("x := x + 1; x := x + 1");
+    assertEquals(1_000, accelerate("LOOP n DO LOOP x DO y := y + 1; z := z + 1 END END", 1_000));
+    assertEquals(2_000, variable("Y"));
+    assertEquals(2_000, variable("Z"));
+  }
+
+  @Test
+  void undefinedVariable_isLeftToTheInterpreter() throws IOException {
+    interpreterContext.setVariable("N", 1_000);
+    assertEquals(0, accelerate("LOOP n DO x := x + 1; y := 0 END", 1_000));
+    InterpreterException e =
+        assertThrows(InterpreterException.class, () -> execute("LOOP n DO x := x + 1; y := 0 END"));
+    assertEquals("variable `X` has not been defined yet", e.getMessage());
+  }
+
+  @Test
+  void overflow_failsAsItWouldIteration() throws IOException {
+    interpreterContext.setVariable("A", 65_536);
+    InterpreterException e =
+        assertThrows(InterpreterException.class, () -> execute("b := MULT(a, a)"));
+    assertEquals("loop count for variable `X2` is negative: -2147483648", e.getMessage());
+  }
+
+  @Test
+  void togglingLoop_skipsToTheLastStateOfItsCycle() throws IOException {
+    execute("t := 0");
+    assertEquals(2_000_000_001, accelerate("LOOP n DO t := NOT(t) END", 2_000_000_001));
+    assertEquals(1, variable("T"));
+    assertEquals(2_000_000_000, accelerate("LOOP n DO t := NOT(t) END", 2_000_000_000));
+    assertEquals(1, variable("T"));
+  }
+
+  @Test
+  void rotatingLoop_skipsToTheLastStateOfItsCycle() throws IOException {
+    execute("a := 0; a := a + 1; b := 0; b := b + 1; b := b + 1; c := 0; c := c + 1; c := c + 1");
+    execute("c := c + 1");
+    // rotates (a, b, c) with a period of 3, which is affine, but does not only grow.
+    String rotate =
+        "LOOP n DO t := 0; LOOP a DO t := t + 1 END; a := 0; LOOP b DO a := a + 1 END; "
+            + "b := 0; LOOP c DO b := b + 1 END; c := 0; LOOP t DO c := c + 1 END END";
+    assertEquals(1_000, accelerate(rotate, 1_000));
+    assertEquals(2, variable("A"));
+    assertEquals(3, variable("B"));
+    assertEquals(1, variable("C"));
+  }
+
+  @Test
+  void loopThatNeverRepeats_isNotAccelerated() throws IOException {
+    execute("t := 0; x := 0");
+    assertEquals(0, accelerate("LOOP n DO t := NOT(t); x := x + 1 END", 1_000));
+    assertEquals(0, variable("T"));
+    assertEquals(0, variable("X"));
+  }
+
+  @Test
+  void loopThatNeverRepeats_isNotAnalysedAgain() throws IOException {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    execute("t := 0; x := 0");
+    Code.Loop loop = resolve("LOOP n DO t := NOT(t); x := x + 1 END");
+    long[] frame = interpreterContext.frame().values();
+    assertEquals(0, LoopAccelerator.run(loop, 1_000, frame));
+    long before = threads.getCurrentThreadAllocatedBytes();
+    for (int i = 0; i < 1_000; ++i) {
+      assertEquals(0, LoopAccelerator.run(loop, 1_000, frame));
+    }
+    long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+    assertTrue(allocated < 16 * 1024, () -> allocated + " bytes allocated by 1000 rejected loops");
+  }
+
+  @ParameterizedTest
+  @EnumSource(Engine.class)
+  void cyclingLoopOverHugeCount_runsQuicklyOnEveryEngine(Engine engine) throws IOException {
+    setUp(engine);
+    interpreterContext.setVariable("A", 2_000_000_000);
+    assertTimeoutPreemptively(
+        Duration.ofSeconds(10),
+        () -> execute("t := 0; LOOP a DO LOOP a DO t := NOT(t) END; u := NOT(a) END"));
+    assertEquals(0, variable("T"));
+    assertEquals(0, variable("U"));
+  }
+
+  @ParameterizedTest
+  @EnumSource(Engine.class)
+  void billionsOfIterations_runQuicklyOnEveryEngine(Engine engine) throws IOException {
+    setUp(engine);
+    interpreterContext.setVariable("A", 40_000);
+    interpreterContext.setVariable("B", 40_000);
+    assertTimeoutPreemptively(
+        Duration.ofSeconds(10),
+        () -> execute("c := 0; LOOP a DO LOOP b DO c := c + 1; d := 0 END END"));
+    assertEquals(1_600_000_000, variable("C"));
+    assertEquals(0, variable("D"));
+  }
+}
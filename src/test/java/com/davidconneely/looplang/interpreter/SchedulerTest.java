@@ -0,0 +1,98 @@
+package com.davidconneely.looplang.interpreter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.token.Token;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class SchedulerTest {
+
+  // the innermost loop's count grows with each iteration of its outer loop, so none of them can be
+  // accelerated, nor ever repeats its state.
+  private static final String GIANT_LOOP =
+      """
+      n := 0; n := n + 1; n := n + 1; n := n + 1; a := 0
+      LOOP n DO n := MULT(n, n) END
+      LOOP n DO LOOP n DO LOOP n DO LOOP a DO b := 0 END; a := a + 1 END END END
+      """;
+
+  private static final String PROGRAMS =
+      """
+      PROGRAM ADD(x1, x2) DO x0 := 0; LOOP x1 DO x0 := x0 + 1 END; LOOP x2 DO x0 := x0 + 1 END END
+      PROGRAM MULT(x1, x2) DO LOOP x2 DO x0 := ADD(x1, x0) END END
+      """;
+
+  private record Script(InterpreterContext context, Parser parser) {}
+
+  private Script script(String code) {
+    Location location = Location.newFile("<test>");
+    ParserContext parserContext = ParserFactory.newContext(location);
+    Lexer lexer = LexerFactory.newLexer(location, code);
+    return new Script(
+        InterpreterFactory.newGlobalContext(parserContext),
+        ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF));
+  }
+
+  @Test
+  void scripts_runToCompletion() throws Exception {
+    Script script =
+        script(PROGRAMS + "a := 0; a := a + 1; a := a + 1; a := a + 1; b := MULT(a, a)");
+    try (Scheduler scheduler = new Scheduler(1, 7)) {
+      scheduler.submit(script.parser(), script.context()).get(10, TimeUnit.SECONDS);
+    }
+    assertEquals(9, script.context().getVariable("B").orElse(-1));
+  }
+
+  @Test
+  void giantLoop_doesNotStarveOtherScripts() throws Exception {
+    Script giant = script(PROGRAMS + GIANT_LOOP);
+    Script small = script(PROGRAMS + "a := 0; a := a + 1; a := a + 1; b := MULT(a, a)");
+    try (Scheduler scheduler = new Scheduler(1, 1_000)) {
+      CompletableFuture<Void> giantResult = scheduler.submit(giant.parser(), giant.context());
+      scheduler.submit(small.parser(), small.context()).get(10, TimeUnit.SECONDS);
+      assertEquals(4, small.context().getVariable("B").orElse(-1));
+      assertFalse(giantResult.isDone());
+    }
+  }
+
+  @Test
+  void close_cancelsQueuedScripts() throws Exception {
+    List<CompletableFuture<Void>> results = new ArrayList<>();
+    try (Scheduler scheduler = new Scheduler(1, 1_000)) {
+      for (int i = 0; i < 3; ++i) {
+        Script giant = script(PROGRAMS + GIANT_LOOP);
+        results.add(scheduler.submit(giant.parser(), giant.context()));
+      }
+      Thread.sleep(100);
+    }
+    for (CompletableFuture<Void> result : results) {
+      assertThrows(CancellationException.class, () -> result.get(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  void failingScript_completesExceptionally() {
+    Script script = script("a := a + 1");
+    try (Scheduler scheduler = new Scheduler(2)) {
+      CompletableFuture<Void> result = scheduler.submit(script.parser(), script.context());
+      ExecutionException e =
+          assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+      assertInstanceOf(InterpreterException.class, e.getCause());
+    }
+  }
+}
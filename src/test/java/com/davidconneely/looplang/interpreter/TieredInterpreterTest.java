@@ -0,0 +1,213 @@
+package com.davidconneely.looplang.interpreter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TieredInterpreterTest {
+
+  private ParserContext parserContext;
+  private GlobalContext interpreterContext;
+  private Interpreter interpreter;
+
+  @TempDir Path tempDir;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    setUp(null);
+  }
+
+  // starts a new run, with the profile in `store` if it is not `null`.
+  private void setUp(ProfileStore store) throws IOException {
+    Location location = Location.newFile("<test>");
+    parserContext = ParserFactory.newContext(location);
+    interpreterContext = new GlobalContext(parserContext);
+    interpreter = new TieredInterpreter(interpreterContext, 10, store);
+    // INC also sums its running count in x2, which leaves it without a closed form to skip the
+    // body; its first (empty) sum, of a count only known to be zero when it runs, might read x2
+    // before it is assigned (by a loop of the same count), which keeps it from being inlined into
+    // callers.
+    execute(
+        """
+        PROGRAM ZERO(x1) DO x0 := 0 END
+        PROGRAM INC(x1) DO
+          x0 := 0; x3 := ZERO(x1); LOOP x3 DO x2 := 0 END; LOOP x3 DO x2 := x2 + 1 END; x2 := 0;
+          LOOP x1 DO x0 := x0 + 1; LOOP x0 DO x2 := x2 + 1 END END; x0 := x0 + 1
+        END
+        PROGRAM NOTHING() DO END
+        """);
+  }
+
+  private void execute(String code) throws IOException {
+    Location location = Location.newFile("<test>");
+    try (Lexer lexer = LexerFactory.newLexer(location, code)) {
+      Parser parser = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF);
+      Statement stmt;
+      while ((stmt = parser.next()) != null) {
+        interpreter.interpret(stmt);
+      }
+    }
+  }
+
+  private ProgramProfile profile(String program) {
+    return interpreterContext.profile(interpreterContext.getProgram(program));
+  }
+
+  @Test
+  void coldProgram_isInterpretedAndCounted() throws IOException {
+    execute("a := 0; a := INC(a); a := INC(a); b := NOTHING()");
+    assertEquals(2, interpreterContext.getVariable("A").orElse(-1));
+    assertEquals(2, profile("INC").calls);
+    assertNull(profile("INC").compiled);
+    assertNull(profile("NOTHING").compiled);
+  }
+
+  @Test
+  void hotProgram_isPromotedAndGivesSameResults() throws IOException {
+    execute("a := 0; a := INC(a)");
+    assertNull(profile("INC").compiled);
+    execute("n := 0; n := n + 1; n := n + 1; n := n + 1; n := n + 1; LOOP n DO a := INC(a) END");
+    assertNotNull(profile("INC").compiled);
+    execute("LOOP n DO a := INC(a) END");
+    assertEquals(9, interpreterContext.getVariable("A").orElse(-1));
+  }
+
+  @Test
+  void loopTrips_countTowardsHotness() throws IOException {
+    execute("a := 0; a := a + 1; a := a + 1; a := a + 1; a := a + 1; a := a + 1; b := INC(a)");
+    assertEquals(5, profile("INC").loopTrips);
+    execute("b := INC(a); b := INC(a)");
+    assertEquals(6, interpreterContext.getVariable("B").orElse(-1));
+    assertNotNull(profile("INC").compiled);
+  }
+
+  @Test
+  void longRunningLoop_isReplacedMidLoopWithCountCapturedAtEntry() throws IOException {
+    execute("k := 0; k := k + 1; k := k + 1; k := k + 1; k := k + 1; k := k + 1; n := 0");
+    execute("LOOP k DO LOOP k DO n := n + 1; z := 0 END END");
+    assertEquals(25, interpreterContext.getVariable("N").orElse(-1));
+    execute("a := 0; LOOP n DO a := a + 1; n := n + 1 END");
+    assertEquals(25, interpreterContext.getVariable("A").orElse(-1));
+    assertEquals(50, interpreterContext.getVariable("N").orElse(-1));
+  }
+
+  @Test
+  void longRunningLoopInProgram_isReplacedMidLoop() throws IOException {
+    execute(
+        """
+        PROGRAM TRIANGLE(x1) DO
+          x0 := 0; x2 := 0
+          LOOP x1 DO x2 := x2 + 1; LOOP x2 DO x0 := x0 + 1; x3 := 0 END END
+        END
+        a := 0; a := a + 1; a := a + 1; a := a + 1; a := a + 1; a := a + 1
+        a := INC(a); a := INC(a); a := INC(a); a := INC(a); a := INC(a); a := INC(a)
+        b := TRIANGLE(a)
+        """);
+    assertEquals(66, interpreterContext.getVariable("B").orElse(-1));
+  }
+
+  @Test
+  void programTooLargeToCompile_staysInterpreted() throws IOException {
+    // far more than the 64KB of bytecode a JVM method can have, as both variables are returned.
+    String increments = "x1 := x1 + 1; x2 := x2 + 1\n".repeat(12_000);
+    execute(
+        "PROGRAM BIG(x1, x2) DO\n"
+            + increments
+            + "LOOP x1 DO x0 := x0 + 1 END; LOOP x2 DO x0 := x0 + 1 END; x0 := INC(x0)\nEND");
+    execute(
+        "a := 0; b := 0; n := 0" + "; n := n + 1".repeat(12) + "; LOOP n DO a := BIG(a, b) END");
+    assertEquals(12 * 24_001, interpreterContext.getVariable("A").orElse(-1));
+    assertNull(profile("BIG").compiled);
+    assertTrue(profile("BIG").uncompilable);
+    assertEquals(12, profile("BIG").calls);
+    execute("a := BIG(a, b)");
+    assertEquals(13 * 24_001, interpreterContext.getVariable("A").orElse(-1));
+  }
+
+  @Test
+  void longRunningLoopTooLargeToCompile_staysInterpreted() throws IOException {
+    String increments = "a := a + 1; b := b + 1\n".repeat(12_000);
+    execute("a := 0; b := 0; n := 0" + "; n := n + 1".repeat(12));
+    execute("LOOP n DO\n" + increments + "END");
+    assertEquals(12 * 12_000, interpreterContext.getVariable("A").orElse(-1));
+    execute("LOOP n DO\n" + increments + "END");
+    assertEquals(24 * 12_000, interpreterContext.getVariable("B").orElse(-1));
+  }
+
+  @Test
+  void programHotInEarlierRun_isPromotedWhenDefined() throws IOException {
+    Path path = tempDir.resolve("test.profile");
+    setUp(ProfileStore.load(path));
+    assertNull(profile("INC").compiled);
+    execute(
+        "a := 0; n := 0; n := n + 1; n := n + 1; n := n + 1; LOOP n DO LOOP n DO a := INC(a) END"
+            + " END");
+    interpreter.close();
+    setUp(ProfileStore.load(path));
+    assertNotNull(profile("INC").compiled);
+    assertNull(profile("NOTHING").compiled);
+    execute("a := 0; a := INC(a)");
+    assertEquals(1, interpreterContext.getVariable("A").orElse(-1));
+    // the counts that promoted it are kept, as it has not been counted since.
+    interpreter.close();
+    setUp(ProfileStore.load(path));
+    assertNotNull(profile("INC").compiled);
+  }
+
+  @Test
+  void programDefinedInLoopHotInEarlierRun_isPromotedWhenDefined() throws IOException {
+    String definition =
+        """
+        one := 0; one := one + 1
+        LOOP one DO
+          PROGRAM INC2(x1) DO
+            x0 := 0; x3 := ZERO(x1); LOOP x3 DO x2 := 0 END; LOOP x3 DO x2 := x2 + 1 END; x2 := 0;
+            LOOP x1 DO x0 := x0 + 1; LOOP x0 DO x2 := x2 + 1 END END; x0 := x0 + 1
+          END
+        END
+        """;
+    Path path = tempDir.resolve("test.profile");
+    setUp(ProfileStore.load(path));
+    execute(definition);
+    assertNull(profile("INC2").compiled);
+    execute(
+        "a := 0; n := 0; n := n + 1; n := n + 1; n := n + 1; LOOP n DO LOOP n DO a := INC2(a) END"
+            + " END");
+    interpreter.close();
+    setUp(ProfileStore.load(path));
+    execute(definition);
+    assertNotNull(profile("INC2").compiled);
+    execute("a := 0; a := INC2(a)");
+    assertEquals(1, interpreterContext.getVariable("A").orElse(-1));
+  }
+
+  @Test
+  void programChangedSinceEarlierRun_isNotPromoted() throws IOException {
+    Path path = tempDir.resolve("test.profile");
+    setUp(ProfileStore.load(path));
+    execute(
+        "a := 0; n := 0; n := n + 1; n := n + 1; n := n + 1; LOOP n DO LOOP n DO a := INC(a) END"
+            + " END");
+    interpreter.close();
+    parserContext = ParserFactory.newContext(Location.newFile("<test>"));
+    interpreterContext = new GlobalContext(parserContext);
+    interpreter = new TieredInterpreter(interpreterContext, 10, ProfileStore.load(path));
+    execute("PROGRAM INC(x1) DO x0 := 0; LOOP x1 DO x0 := x0 + 1 END; x0 := x0 + 1 END");
+    assertNull(profile("INC").compiled);
+  }
+}
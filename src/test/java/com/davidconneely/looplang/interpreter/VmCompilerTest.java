@@ -0,0 +1,101 @@
+package com.davidconneely.looplang.interpreter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.davidconneely.looplang.compiler.Code;
+import com.davidconneely.looplang.compiler.Program;
+import com.davidconneely.looplang.compiler.Resolver;
+import com.davidconneely.looplang.compiler.Scope;
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class VmCompilerTest {
+
+  private final ParserContext parserContext = ParserFactory.newContext(Location.newFile("<test>"));
+
+  private Statement parse(String code) throws IOException {
+    Location location = Location.newFile("<test>");
+    try (Lexer lexer = LexerFactory.newLexer(location, code)) {
+      Parser parser = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF);
+      return parser.next();
+    }
+  }
+
+  @Test
+  void nestedLoops_encodeBodyLengthsAndCounterDepths() throws IOException {
+    Scope scope = new Scope();
+    Code code =
+        Resolver.resolve(
+            parse("LOOP a DO LOOP b DO c := c + 1; d := 0 END; c := 0 END"), scope, _ -> null);
+    VmCode vm = VmCompiler.compile(code, scope);
+    assertArrayEquals(
+        new int[] {
+          VmCode.LOOP,
+          0,
+          0,
+          17,
+          0,
+          VmCode.LOOP,
+          1,
+          1,
+          7,
+          1,
+          VmCode.INC,
+          2,
+          VmCode.ZERO,
+          3,
+          VmCode.END,
+          1,
+          7,
+          VmCode.ZERO,
+          2,
+          VmCode.END,
+          0,
+          17
+        },
+        vm.ops());
+    assertInstanceOf(Code.Loop.class, vm.constants()[0]);
+    assertInstanceOf(Code.Loop.class, vm.constants()[1]);
+    assertEquals(2, vm.loopDepth());
+    assertNull(vm.program());
+  }
+
+  @Test
+  void call_inlinesArgRegistersAndLeavesCalleeToBeLinked() throws IOException {
+    Program add = Resolver.resolveProgram("ADD", List.of("A", "B"), List.of(), _ -> null);
+    parserContext.addDefinedProgram("ADD");
+    Scope scope = new Scope();
+    VmCode first =
+        VmCompiler.compile(Resolver.resolve(parse("y := ADD(p, q)"), scope, _ -> add), scope);
+    VmCode second =
+        VmCompiler.compile(Resolver.resolve(parse("z := ADD(q, p)"), scope, _ -> add), scope);
+    assertArrayEquals(new int[] {VmCode.CALL, 0, 0, 2, 1, 2}, first.ops());
+    assertArrayEquals(new int[] {VmCode.CALL, 3, 0, 2, 2, 1}, second.ops());
+    assertSame(add, first.constants()[0]);
+    assertSame(add, second.constants()[0]);
+  }
+
+  @Test
+  void program_isCompiledOnce() {
+    Program add = Resolver.resolveProgram("ADD", List.of("A", "B"), List.of(), _ -> null);
+    Map<Program, VmCode> programs = new IdentityHashMap<>();
+    VmCode compiled = VmCompiler.compile(add, programs);
+    assertSame(add, compiled.program());
+    assertSame(compiled, VmCompiler.compile(add, programs));
+  }
+}
@@ -0,0 +1,65 @@
+package com.davidconneely.looplang.interpreter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.davidconneely.looplang.lexer.Lexer;
+import com.davidconneely.looplang.lexer.LexerFactory;
+import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.parser.Parser;
+import com.davidconneely.looplang.parser.ParserContext;
+import com.davidconneely.looplang.parser.ParserFactory;
+import com.davidconneely.looplang.statement.Statement;
+import com.davidconneely.looplang.token.Token;
+import java.io.IOException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class VmInterpreterTest {
+
+  private ParserContext parserContext;
+  private InterpreterContext interpreterContext;
+  private Interpreter interpreter;
+
+  @BeforeEach
+  void setUp() {
+    Location location = Location.newFile("<test>");
+    parserContext = ParserFactory.newContext(location);
+    interpreterContext = InterpreterFactory.newGlobalContext(parserContext);
+    interpreter = InterpreterFactory.newInterpreter(interpreterContext, Engine.VM);
+  }
+
+  private void execute(String code) throws IOException {
+    Location location = Location.newFile("<test>");
+    try (Lexer lexer = LexerFactory.newLexer(location, code)) {
+      Parser parser = ParserFactory.newParser(lexer, parserContext, Token.Kind.EOF);
+      Statement stmt;
+      while ((stmt = parser.next()) != null) {
+        interpreter.interpret(stmt);
+      }
+    }
+  }
+
+  @Test
+  void longChainOfCalls_doesNotRecurseOnJavaStack() throws IOException {
+    int depth = 100_000;
+    StringBuilder sb = new StringBuilder("PROGRAM P0(x1) DO x0 := x0 + 1 END\n");
+    for (int i = 1; i < depth; ++i) {
+      sb.append("PROGRAM P").append(i).append("(x1) DO x0 := P").append(i - 1).append("(x1) END\n");
+    }
+    sb.append("a := 0; a := P").append(depth - 1).append("(a)");
+    execute(sb.toString());
+    assertEquals(1, interpreterContext.getVariable("A").orElse(-1));
+  }
+
+  @Test
+  void callsInsideLoops_resumeTheCallerLoop() throws IOException {
+    execute(
+        """
+        PROGRAM INC(x1) DO x0 := 0; LOOP x1 DO x0 := x0 + 1 END; x0 := x0 + 1 END
+        n := 0; n := n + 1; n := n + 1; n := n + 1; a := 0
+        LOOP n DO LOOP n DO a := INC(a) END; b := INC(a) END
+        """);
+    assertEquals(9, interpreterContext.getVariable("A").orElse(-1));
+    assertEquals(10, interpreterContext.getVariable("B").orElse(-1));
+  }
+}
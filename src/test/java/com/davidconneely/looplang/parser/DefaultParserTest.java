@@ -1,16 +1,24 @@
 package com.davidconneely.looplang.parser;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.davidconneely.looplang.lexer.Lexer;
 import com.davidconneely.looplang.lexer.LexerFactory;
 import com.davidconneely.looplang.lexer.Location;
+import com.davidconneely.looplang.statement.AssignIncrement;
+import com.davidconneely.looplang.statement.AssignZero;
+import com.davidconneely.looplang.statement.Loop;
 import com.davidconneely.looplang.statement.Statement;
 import com.davidconneely.looplang.token.Token;
 import java.io.IOException;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 
 class DefaultParserTest {
@@ -110,6 +118,40 @@ class DefaultParserTest {
     assertThrows(ParserException.class, parser::next);
   }
 
+  @Test
+  void readOfUnassignedVariableInProgram_throwsExceptionWithLocation() {
+    Parser parser = createParser("PROGRAM P(x1) DO x0 := 0; x2 := x2 + 1 END");
+    ParserException e = assertThrows(ParserException.class, parser::next);
+    assertEquals("variable `X2` is not assigned before it is read", e.getMessage());
+    assertEquals("<test>:1:33-34: ", e.location().toString());
+  }
+
+  @Test
+  void readOfVariableAssignedInEarlierIteration_parsesCorrectly() throws IOException {
+    Parser parser =
+        createParser("PROGRAM P(x1) DO LOOP x1 DO LOOP x2 DO x0 := x0 + 1 END; x2 := 0 END END");
+    assertNotNull(parser.next());
+  }
+
+  @Test
+  void readOfVariableAssignedOnlyAfterLoop_throwsException() {
+    Parser parser = createParser("PROGRAM P(x1) DO LOOP x1 DO x2 := x2 + 1 END; x2 := 0 END");
+    assertThrows(ParserException.class, parser::next);
+  }
+
+  @Test
+  void printOfUnassignedVariableInProgram_parsesCorrectly() throws IOException {
+    Parser parser = createParser("PROGRAM P() DO PRINT(x1) END");
+    assertNotNull(parser.next());
+  }
+
+  @Test
+  void readOfUnassignedVariableAtTopLevel_parsesCorrectly() throws IOException {
+    // it may have been assigned by an earlier statement.
+    Parser parser = createParser("x := x + 1");
+    assertNotNull(parser.next());
+  }
+
   @Test
   void callToDefinedProgram_parsesCorrectly() throws IOException {
     Location location = Location.newFile("<test>");
@@ -149,4 +191,36 @@ class DefaultParserTest {
     assertTrue(str.contains("LOOP"));
     assertTrue(str.contains("END"));
   }
+
+  @Test
+  void identicalStatements_areInterned() throws IOException {
+    Parser parser =
+        createParser(
+            "LOOP x1 DO PRINT(\"x\", x0) END; LOOP x1 DO PRINT(\"x\", x0) END; LOOP x1 DO END");
+    Statement first = parser.next();
+    assertSame(first, parser.next());
+    assertNotSame(first, parser.next());
+  }
+
+  @Test
+  void parsedBody_isEqualToListOfItsStatements() throws IOException {
+    Parser parser = createParser("LOOP x1 DO x1 := x1 + 1; LOOP x2 DO x0 := 0 END END");
+    Loop loop = assertInstanceOf(Loop.class, parser.next());
+    List<Statement> body =
+        List.of(new AssignIncrement("X1"), new Loop("X2", List.of(new AssignZero("X0"))));
+    assertEquals(body, loop.body());
+    assertEquals(loop.body(), body);
+    assertEquals(body.hashCode(), loop.body().hashCode());
+    assertEquals(new Loop("X1", body), loop);
+  }
+
+  @Test
+  void names_areInterned() throws IOException {
+    Parser parser = createParser("x1 := 0; LOOP x1 DO x1 := x1 + 1 END");
+    AssignZero zero = assertInstanceOf(AssignZero.class, parser.next());
+    Loop loop = assertInstanceOf(Loop.class, parser.next());
+    AssignIncrement increment = assertInstanceOf(AssignIncrement.class, loop.body().get(0));
+    assertSame(zero.variable(), loop.variable());
+    assertSame(zero.variable(), increment.variable());
+  }
 }